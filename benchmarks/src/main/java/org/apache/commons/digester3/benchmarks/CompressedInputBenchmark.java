@@ -0,0 +1,128 @@
+package org.apache.commons.digester3.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.digester3.Digester;
+import org.apache.commons.digester3.Rule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.Attributes;
+
+/**
+ * Compares parsing a gzip compressed document through a <code>GZIPInputStream</code> wrapped by the caller, where
+ * inflating and parsing share one thread, with {@link Digester#parseCompressed(java.io.InputStream)}, which inflates
+ * on a separate thread.
+ *
+ * @since 3.3
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class CompressedInputBenchmark
+{
+
+    @Param( { "100000" } )
+    public int records;
+
+    private byte[] compressed;
+
+    @Setup
+    public void setUp()
+        throws Exception
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final OutputStream output = new GZIPOutputStream( bytes );
+        output.write( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<feed>\n".getBytes( "UTF-8" ) );
+        for ( int i = 0; i < records; i++ )
+        {
+            final StringBuilder xml = new StringBuilder();
+            xml.append( "  <record id=\"" ).append( i ).append( "\">" );
+            xml.append( "<title>Record " ).append( i ).append( "</title>" );
+            xml.append( "</record>\n" );
+            output.write( xml.toString().getBytes( "UTF-8" ) );
+        }
+        output.write( "</feed>\n".getBytes( "UTF-8" ) );
+        output.close();
+        compressed = bytes.toByteArray();
+    }
+
+    @Benchmark
+    public int singleThreaded()
+        throws Exception
+    {
+        final CountingRule counter = new CountingRule();
+        newDigester( counter ).parse( new GZIPInputStream( new ByteArrayInputStream( compressed ) ) );
+        return counter.count;
+    }
+
+    @Benchmark
+    public int pipelined()
+        throws Exception
+    {
+        final CountingRule counter = new CountingRule();
+        newDigester( counter ).parseCompressed( new ByteArrayInputStream( compressed ) );
+        return counter.count;
+    }
+
+    private static Digester newDigester( final CountingRule counter )
+    {
+        final Digester digester = new Digester();
+        digester.addRule( "feed/record", counter );
+        digester.addRule( "feed/record/title", counter );
+        return digester;
+    }
+
+    /**
+     * Counts the elements it fires for, so the mapped path cannot be optimized away.
+     */
+    private static final class CountingRule
+        extends Rule
+    {
+
+        int count;
+
+        @Override
+        public void begin( final String namespace, final String name, final Attributes attributes )
+        {
+            count++;
+        }
+
+    }
+
+}
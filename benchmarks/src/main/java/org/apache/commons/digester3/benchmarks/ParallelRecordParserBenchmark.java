@@ -0,0 +1,163 @@
+package org.apache.commons.digester3.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.apache.commons.digester3.binder.DigesterLoader.newLoader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.digester3.binder.AbstractRulesModule;
+import org.apache.commons.digester3.binder.ParallelRecordParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how the parse of a large document made of sibling records scales with the number of threads the
+ * {@link ParallelRecordParser} chunks are parsed on.
+ *
+ * @since 3.3
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ParallelRecordParserBenchmark
+{
+
+    @Param( { "1", "2", "4", "8" } )
+    public int threads;
+
+    @Param( { "200000" } )
+    public int records;
+
+    @Param( { "1048576" } )
+    public int chunkSize;
+
+    private File document;
+
+    private ForkJoinPool pool;
+
+    private ParallelRecordParser<Record> parser;
+
+    @Setup
+    public void setUp()
+        throws Exception
+    {
+        document = File.createTempFile( "records", ".xml" );
+        final OutputStream output = new FileOutputStream( document );
+        try
+        {
+            output.write( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<feed>\n".getBytes( "UTF-8" ) );
+            for ( int i = 0; i < records; i++ )
+            {
+                final StringBuilder xml = new StringBuilder();
+                xml.append( "  <record id=\"" ).append( i ).append( "\">" );
+                xml.append( "<title>Record " ).append( i ).append( "</title>" );
+                xml.append( "</record>\n" );
+                output.write( xml.toString().getBytes( "UTF-8" ) );
+            }
+            output.write( "</feed>\n".getBytes( "UTF-8" ) );
+        }
+        finally
+        {
+            output.close();
+        }
+
+        pool = new ForkJoinPool( threads );
+        parser = newLoader( new AbstractRulesModule()
+        {
+
+            @Override
+            protected void configure()
+            {
+                forPattern( "feed/record" ).createObject().ofType( Record.class )
+                    .then()
+                    .setProperties();
+                forPattern( "feed/record/title" ).setBeanProperty();
+            }
+
+        } ).newParallelRecordParser( "feed/record", Record.class ).setChunkSize( chunkSize );
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        pool.shutdownNow();
+        document.delete();
+    }
+
+    @Benchmark
+    public int parse()
+        throws Exception
+    {
+        final List<Record> parsed = parser.parse( document, pool );
+        return parsed.size();
+    }
+
+    /**
+     * The record the benchmark document is made of.
+     */
+    public static final class Record
+    {
+
+        private int id;
+
+        private String title;
+
+        public int getId()
+        {
+            return id;
+        }
+
+        public void setId( final int id )
+        {
+            this.id = id;
+        }
+
+        public String getTitle()
+        {
+            return title;
+        }
+
+        public void setTitle( final String title )
+        {
+            this.title = title;
+        }
+
+    }
+
+}
@@ -0,0 +1,141 @@
+package org.apache.commons.digester3.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.digester3.Digester;
+import org.apache.commons.digester3.Rule;
+import org.apache.commons.digester3.Rules;
+import org.apache.commons.digester3.RulesBase;
+import org.apache.commons.digester3.TrieRules;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.Attributes;
+
+/**
+ * Measures the per-element overhead of the Digester on documents where most elements are not matched by any rule,
+ * which is the common case when only a few fields of a large feed are mapped.
+ *
+ * Every record of the generated document contains one mapped field and eighteen unmapped ones, so that together with
+ * the record element itself 90% of the elements are unmatched.
+ *
+ * @since 3.3
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class UnmatchedElementsBenchmark
+{
+
+    private static final int UNMATCHED_FIELDS = 18;
+
+    @Param( { "RulesBase", "TrieRules" } )
+    public String rules;
+
+    @Param( { "1000" } )
+    public int records;
+
+    private byte[] document;
+
+    private CountingRule counter;
+
+    private Digester digester;
+
+    @Setup
+    public void setUp()
+        throws Exception
+    {
+        final StringBuilder xml = new StringBuilder( "<?xml version=\"1.0\"?>\n<feed>\n" );
+        for ( int i = 0; i < records; i++ )
+        {
+            xml.append( "  <record id=\"" ).append( i ).append( "\">\n" );
+            xml.append( "    <title>Record " ).append( i ).append( "</title>\n" );
+            for ( int j = 0; j < UNMATCHED_FIELDS; j++ )
+            {
+                xml.append( "    <field" ).append( j ).append( '>' );
+                xml.append( "value " ).append( j );
+                xml.append( "</field" ).append( j ).append( ">\n" );
+            }
+            xml.append( "  </record>\n" );
+        }
+        xml.append( "</feed>\n" );
+        document = xml.toString().getBytes();
+
+        // the Digester and its SAX parser are built once, so that only the parse itself is measured
+        counter = new CountingRule();
+        digester = new Digester();
+        digester.setRules( newRules() );
+        digester.addRule( "feed/record", counter );
+        digester.addRule( "feed/record/title", counter );
+        digester.getXMLReader();
+    }
+
+    @Benchmark
+    public int parse()
+        throws Exception
+    {
+        digester.clear();
+        digester.resetRoot();
+        counter.count = 0;
+        digester.parse( new ByteArrayInputStream( document ) );
+        return counter.count;
+    }
+
+    private Rules newRules()
+    {
+        if ( "TrieRules".equals( rules ) )
+        {
+            return new TrieRules();
+        }
+        return new RulesBase();
+    }
+
+    /**
+     * Counts the elements it fires for, so the mapped path cannot be optimized away.
+     */
+    private static final class CountingRule
+        extends Rule
+    {
+
+        int count;
+
+        @Override
+        public void begin( final String namespace, final String name, final Attributes attributes )
+        {
+            count++;
+        }
+
+    }
+
+}
@@ -20,8 +20,9 @@ package org.apache.commons.digester3;
  */
 
 import static java.lang.String.format;
-import static org.apache.commons.beanutils.MethodUtils.invokeExactMethod;
-import static org.apache.commons.beanutils.MethodUtils.invokeMethod;
+
+import java.util.HashMap;
+import java.util.Map;
 
 import org.xml.sax.Attributes;
 
@@ -61,6 +62,28 @@ public abstract class AbstractMethodRule
      */
     protected boolean fireOnBegin = false;
 
+    /**
+     * The parameter types loaded from {@link #paramTypeName}, with the class loader they have been loaded from.
+     */
+    private Class<?>[] declaredParamTypes;
+
+    private ClassLoader declaredParamTypesLoader;
+
+    /**
+     * The parameter types built from the class of the last child, when no parameter type has been declared.
+     */
+    private Class<?>[] childParamTypes;
+
+    /**
+     * The method invoked by the last call.
+     */
+    private MethodInvoker invoker;
+
+    /**
+     * The methods resolved so far, per parent class and parameter type.
+     */
+    private final Map<InvokerKey, MethodInvoker> invokers = new HashMap<InvokerKey, MethodInvoker>();
+
     /**
      * Construct a "set next" rule with the specified method name. The method's argument type is assumed to be the class
      * of the child object.
@@ -165,6 +188,8 @@ public abstract class AbstractMethodRule
     public void setExactMatch( final boolean useExactMatch )
     {
         this.useExactMatch = useExactMatch;
+        invoker = null;
+        invokers.clear();
     }
 
     /**
@@ -201,6 +226,18 @@ public abstract class AbstractMethodRule
     private void invoke()
         throws Exception
     {
+        if ( getDigester().isDetachingCurrentObject() )
+        {
+            // the object of this element is streamed, it must not be retained by another one
+            if ( getDigester().getLogger().isDebugEnabled() )
+            {
+                getDigester().getLogger().debug( format( "[%s]{%s} Not linking the streamed object",
+                                                         getClass().getSimpleName(),
+                                                         getDigester().getMatch() ) );
+            }
+            return;
+        }
+
         // Identify the objects to be used
         final Object child = getChild();
         final Object parent = getParent();
@@ -225,25 +262,52 @@ public abstract class AbstractMethodRule
             }
         }
 
-        // Call the specified method
-        final Class<?> paramTypes[] = new Class<?>[1];
-        if ( paramType != null )
+        // Call the specified method, resolved once per parent class and parameter type
+        final Class<?>[] paramTypes = getParamTypes( child );
+        final Class<?> parentType = parent.getClass();
+        MethodInvoker methodInvoker = invoker;
+        if ( methodInvoker == null || !methodInvoker.isFor( parentType, methodName, paramTypes, useExactMatch ) )
         {
-            paramTypes[0] = getDigester().getClassLoader().loadClass( paramTypeName );
-        }
-        else
-        {
-            paramTypes[0] = child.getClass();
+            final InvokerKey key = new InvokerKey( parentType, paramTypes[0] );
+            methodInvoker = invokers.get( key );
+            if ( methodInvoker == null )
+            {
+                methodInvoker = MethodInvoker.resolve( parentType, methodName, paramTypes, useExactMatch );
+                invokers.put( key, methodInvoker );
+            }
+            invoker = methodInvoker;
         }
+        methodInvoker.invoke( parent, new Object[] { child } );
+    }
 
-        if ( useExactMatch )
+    /**
+     * Returns the parameter types the method is looked up with: the declared parameter type, if any, otherwise the
+     * class of the child. The same array is returned as long as the types don't change.
+     *
+     * @param child the object passed to the method
+     * @return the parameter types the method is looked up with
+     * @throws ClassNotFoundException if the declared parameter type can't be loaded
+     */
+    private Class<?>[] getParamTypes( final Object child )
+        throws ClassNotFoundException
+    {
+        if ( paramType != null )
         {
-            invokeExactMethod( parent, methodName, new Object[] { child }, paramTypes );
+            final ClassLoader classLoader = getDigester().getClassLoader();
+            if ( declaredParamTypes == null || declaredParamTypesLoader != classLoader )
+            {
+                declaredParamTypes = new Class<?>[] { classLoader.loadClass( paramTypeName ) };
+                declaredParamTypesLoader = classLoader;
+            }
+            return declaredParamTypes;
         }
-        else
+
+        final Class<?> childType = child.getClass();
+        if ( childParamTypes == null || childParamTypes[0] != childType )
         {
-            invokeMethod( parent, methodName, new Object[] { child }, paramTypes );
+            childParamTypes = new Class<?>[] { childType };
         }
+        return childParamTypes;
     }
 
     /**
@@ -270,4 +334,43 @@ public abstract class AbstractMethodRule
                        getClass().getSimpleName(), methodName, paramType, paramTypeName, useExactMatch, fireOnBegin );
     }
 
+    /**
+     * Key of a resolved method: the parent class and the parameter type.
+     */
+    private static final class InvokerKey
+    {
+
+        private final Class<?> parentType;
+
+        private final Class<?> paramType;
+
+        InvokerKey( final Class<?> parentType, final Class<?> paramType )
+        {
+            this.parentType = parentType;
+            this.paramType = paramType;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * parentType.hashCode() + paramType.hashCode();
+        }
+
+        @Override
+        public boolean equals( final Object obj )
+        {
+            if ( this == obj )
+            {
+                return true;
+            }
+            if ( !( obj instanceof InvokerKey ) )
+            {
+                return false;
+            }
+            final InvokerKey other = (InvokerKey) obj;
+            return parentType == other.parentType && paramType == other.paramType;
+        }
+
+    }
+
 }
@@ -0,0 +1,161 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Arrays;
+import java.util.EmptyStackException;
+import java.util.Stack;
+
+/**
+ * A {@link Stack} whose push/pop/peek operations are not synchronized.
+ *
+ * The stacks maintained by the {@link Digester} are only ever touched by the thread running the parse, so the monitor
+ * acquired by every {@link java.util.Vector} method is pure overhead on the per-element path. This subclass keeps the
+ * {@link Stack} type (which is exposed by {@link Digester#getMatches()}) and overrides the operations used while
+ * parsing to work on the backing array directly.
+ *
+ * @param <E> the type of elements held in this stack
+ * @since 3.3
+ */
+final class ArrayStack<E>
+    extends Stack<E>
+{
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public E push( E item )
+    {
+        if ( elementCount == elementData.length )
+        {
+            elementData = Arrays.copyOf( elementData, Math.max( 10, elementCount << 1 ) );
+        }
+        elementData[elementCount++] = item;
+        modCount++;
+        return item;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public E pop()
+    {
+        if ( elementCount == 0 )
+        {
+            throw new EmptyStackException();
+        }
+        E item = elementDataAt( --elementCount );
+        elementData[elementCount] = null;
+        modCount++;
+        return item;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public E peek()
+    {
+        if ( elementCount == 0 )
+        {
+            throw new EmptyStackException();
+        }
+        return elementDataAt( elementCount - 1 );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean empty()
+    {
+        return elementCount == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty()
+    {
+        return elementCount == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size()
+    {
+        return elementCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public E get( int index )
+    {
+        if ( index >= elementCount )
+        {
+            throw new ArrayIndexOutOfBoundsException( index );
+        }
+        return elementDataAt( index );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public E set( int index, E element )
+    {
+        final E previous = get( index );
+        elementData[index] = element;
+        return previous;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear()
+    {
+        Arrays.fill( elementData, 0, elementCount, null );
+        elementCount = 0;
+        modCount++;
+    }
+
+    /**
+     * Unchecked access to the backing array.
+     *
+     * @param index the index of the element to return, must be lower than the current size
+     * @return the element at the given index
+     */
+    @SuppressWarnings( "unchecked" )
+    private E elementDataAt( int index )
+    {
+        return (E) elementData[index];
+    }
+
+}
@@ -0,0 +1,43 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * <code>Rules</code> implementations whose matches may depend on the attributes of the elements, not only on their
+ * namespace URI and nesting pattern. The matches of such elements are never cached by {@link CachingRules}.
+ *
+ * @since 3.3
+ */
+public interface AttributeDependentRules
+    extends Rules
+{
+
+    /**
+     * Tells whether the rules matched by the elements with the given namespace URI and nesting pattern may depend on
+     * their attributes.
+     *
+     * @param namespaceURI Namespace URI for which to select matching rules, or <code>null</code> to match regardless of
+     *            namespace URI
+     * @param pattern Nesting pattern to be matched
+     * @return true, if the matched rules may depend on the attributes of the elements
+     */
+    boolean isAttributeDependent( String namespaceURI, String pattern );
+
+}
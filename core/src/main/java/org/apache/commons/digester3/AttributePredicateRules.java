@@ -0,0 +1,363 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.xml.sax.Attributes;
+
+/**
+ * <p>
+ * <code>Rules</code> <em>Decorator</em> that adds attribute predicates to the patterns of the wrapped implementation.
+ * A pattern may end with a predicate on an attribute of the matched element, e.g.
+ * <code>catalog/item[@type='book']</code>: its rules fire only for the elements matching the pattern without the
+ * predicate whose attribute has the given value.
+ * </p>
+ * <p>
+ * For example,
+ *
+ * <pre>
+ *   digester.setRules( new AttributePredicateRules( new RulesBase() ) );
+ *   digester.addObjectCreate( "catalog/item[@type='book']", Book.class );
+ *   digester.addObjectCreate( "catalog/item[@type='cd']", CompactDisc.class );
+ * </pre>
+ *
+ * creates a <code>Book</code> for <code>&lt;item type="book"&gt;</code> elements, a <code>CompactDisc</code> for
+ * <code>&lt;item type="cd"&gt;</code> elements, and nothing for other items.
+ * </p>
+ * <p>
+ * The value may be quoted with single or double quotes, and the attribute is looked up by qualified name. Only the last
+ * step of a pattern can have a predicate, and a pattern with a predicate takes part in the matching policy of the
+ * wrapped implementation like the pattern without it: for example, with <code>RulesBase</code>, the rules of
+ * <code>catalog/item[@type='book']</code> prevent the rules of <code>&#42;/item</code> from firing for all the
+ * <code>catalog/item</code> elements.
+ * </p>
+ * <p>
+ * The predicates are not evaluated one by one: the rules added in a row for the same pattern and attribute are
+ * registered in the wrapped implementation as a single rule, replaced on match by the rules registered for the value of
+ * the attribute, looked up in a hash table. The wrapped implementation can therefore be a {@link CachingRules}. This
+ * wrapper can be wrapped by one too: as an {@link AttributeDependentRules}, it lets the cache match the elements named
+ * like the last step of a pattern with a predicate through this wrapper every time, and caches the others.
+ * </p>
+ *
+ * @since 3.3
+ */
+public class AttributePredicateRules
+    implements AttributeDependentRules
+{
+
+    // --------------------------------------------------------- Fields
+
+    /** The Rules implementation that this class wraps. */
+    private final Rules wrappedRules;
+
+    /** All rules (preserves order in which they were originally added) */
+    private final List<Rule> allRules = new ArrayList<Rule>();
+
+    /** The rules standing for the rules with a predicate in the wrapped implementation. */
+    private final List<PredicateDispatch> dispatches = new ArrayList<PredicateDispatch>();
+
+    /** The dispatch the next rule with a predicate is added to, if it is added for the same pattern and attribute. */
+    private PredicateDispatch lastDispatch;
+
+    /** The names of the elements matched by patterns with a predicate. */
+    private final Set<String> predicatedNames = new HashSet<String>();
+
+    /** Whether patterns with a predicate may match elements of any name, the last step not being a literal name. */
+    private boolean predicatedWildcard;
+
+    // --------------------------------------------------------- Constructor
+
+    /**
+     * Base constructor.
+     *
+     * @param wrappedRules the wrapped <code>Rules</code> implementation, not null
+     */
+    public AttributePredicateRules( final Rules wrappedRules )
+    {
+        if ( wrappedRules == null )
+        {
+            throw new IllegalArgumentException( "Wrapped rules must not be null" );
+        }
+        this.wrappedRules = wrappedRules;
+    }
+
+    // --------------------------------------------------------- Properties
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Digester getDigester()
+    {
+        return wrappedRules.getDigester();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setDigester( final Digester digester )
+    {
+        wrappedRules.setDigester( digester );
+        for ( final PredicateDispatch dispatch : dispatches )
+        {
+            for ( final List<Rule> rules : dispatch.rules.values() )
+            {
+                for ( final Rule rule : rules )
+                {
+                    rule.setDigester( digester );
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getNamespaceURI()
+    {
+        return wrappedRules.getNamespaceURI();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setNamespaceURI( final String namespaceURI )
+    {
+        wrappedRules.setNamespaceURI( namespaceURI );
+    }
+
+    // --------------------------------------------------------- Public Methods
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void add( final String pattern, final Rule rule )
+    {
+        final int predicateStart = pattern.endsWith( "]" ) ? pattern.lastIndexOf( '[' ) : -1;
+        if ( predicateStart == -1 )
+        {
+            wrappedRules.add( pattern, rule );
+            allRules.add( rule );
+            lastDispatch = null;
+            return;
+        }
+
+        final String basePattern = pattern.substring( 0, predicateStart );
+        final String predicate = pattern.substring( predicateStart + 1, pattern.length() - 1 );
+        final int equals = predicate.indexOf( '=' );
+        final int valueLength = predicate.length() - equals - 3;
+        if ( basePattern.isEmpty() || !predicate.startsWith( "@" ) || equals < 2 || valueLength < 0
+            || ( predicate.charAt( equals + 1 ) != '\'' && predicate.charAt( equals + 1 ) != '"' )
+            || predicate.charAt( predicate.length() - 1 ) != predicate.charAt( equals + 1 ) )
+        {
+            throw new IllegalArgumentException( "Invalid attribute predicate in pattern '" + pattern
+                + "', expected [@name='value']" );
+        }
+        final String attributeName = predicate.substring( 1, equals ).trim();
+        final String value = predicate.substring( equals + 2, predicate.length() - 1 );
+
+        // set up rule
+        if ( wrappedRules.getDigester() != null )
+        {
+            rule.setDigester( wrappedRules.getDigester() );
+        }
+        final String namespaceURI = wrappedRules.getNamespaceURI();
+        if ( namespaceURI != null )
+        {
+            rule.setNamespaceURI( namespaceURI );
+        }
+
+        if ( lastDispatch == null || !lastDispatch.continues( basePattern, attributeName, namespaceURI ) )
+        {
+            lastDispatch = new PredicateDispatch( basePattern, attributeName, namespaceURI );
+            wrappedRules.add( basePattern, lastDispatch );
+            dispatches.add( lastDispatch );
+
+            final String name = basePattern.substring( basePattern.lastIndexOf( '/' ) + 1 );
+            if ( !isLiteralName( name ) )
+            {
+                predicatedWildcard = true;
+            }
+            else
+            {
+                predicatedNames.add( name );
+            }
+        }
+        lastDispatch.add( value, rule );
+        allRules.add( rule );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Rule> match( final String namespaceURI, final String pattern, final String name, final Attributes attributes )
+    {
+        final List<Rule> matches = wrappedRules.match( namespaceURI, pattern, name, attributes );
+        if ( dispatches.isEmpty() || matches == null )
+        {
+            return matches;
+        }
+
+        List<Rule> selected = null;
+        for ( int i = 0; i < matches.size(); i++ )
+        {
+            final Rule rule = matches.get( i );
+            if ( rule instanceof PredicateDispatch )
+            {
+                if ( selected == null )
+                {
+                    selected = new ArrayList<Rule>( matches.subList( 0, i ) );
+                }
+                ( (PredicateDispatch) rule ).select( attributes, selected );
+            }
+            else if ( selected != null )
+            {
+                selected.add( rule );
+            }
+        }
+        return selected != null ? selected : matches;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isAttributeDependent( final String namespaceURI, final String pattern )
+    {
+        if ( dispatches.isEmpty() )
+        {
+            return false;
+        }
+        return predicatedWildcard || predicatedNames.contains( pattern.substring( pattern.lastIndexOf( '/' ) + 1 ) );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Rule> rules()
+    {
+        return allRules;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear()
+    {
+        wrappedRules.clear();
+        allRules.clear();
+        dispatches.clear();
+        lastDispatch = null;
+        predicatedNames.clear();
+        predicatedWildcard = false;
+    }
+
+    /**
+     * Tells whether the last step of a pattern only matches the elements with that name. Steps with any character
+     * which is not a letter, a digit, <code>'-'</code>, <code>'_'</code> or <code>':'</code> may be wildcards or
+     * expressions of the wrapped implementation, such as the ones of {@link ExtendedBaseRules} or {@link RegexRules},
+     * and are assumed to match elements of any name.
+     *
+     * @param name the last step of a pattern
+     * @return true, if the step only matches the elements with that name
+     */
+    private static boolean isLiteralName( final String name )
+    {
+        for ( int i = 0; i < name.length(); i++ )
+        {
+            final char c = name.charAt( i );
+            if ( !Character.isLetterOrDigit( c ) && c != '-' && c != '_' && c != ':' )
+            {
+                return false;
+            }
+        }
+        return !name.isEmpty();
+    }
+
+    /**
+     * Stands in the wrapped implementation for rules added in a row with predicates on the same pattern and
+     * attribute, and selects them by the value of the attribute. Never fired.
+     */
+    private static final class PredicateDispatch
+        extends Rule
+    {
+
+        private final String pattern;
+
+        private final String attributeName;
+
+        private final String namespaceURI;
+
+        /** The rules keyed by attribute value, in the order they were originally added. */
+        private final Map<String, List<Rule>> rules = new HashMap<String, List<Rule>>();
+
+        PredicateDispatch( final String pattern, final String attributeName, final String namespaceURI )
+        {
+            this.pattern = pattern;
+            this.attributeName = attributeName;
+            this.namespaceURI = namespaceURI;
+        }
+
+        boolean continues( final String pattern, final String attributeName, final String namespaceURI )
+        {
+            return this.pattern.equals( pattern ) && this.attributeName.equals( attributeName )
+                && ( this.namespaceURI == null ? namespaceURI == null : this.namespaceURI.equals( namespaceURI ) );
+        }
+
+        void add( final String value, final Rule rule )
+        {
+            List<Rule> valueRules = rules.get( value );
+            if ( valueRules == null )
+            {
+                valueRules = new ArrayList<Rule>( 1 );
+                rules.put( value, valueRules );
+            }
+            valueRules.add( rule );
+        }
+
+        void select( final Attributes attributes, final List<Rule> selected )
+        {
+            final String value = attributes != null ? attributes.getValue( attributeName ) : null;
+            if ( value != null )
+            {
+                final List<Rule> valueRules = rules.get( value );
+                if ( valueRules != null )
+                {
+                    selected.addAll( valueRules );
+                }
+            }
+        }
+
+    }
+
+}
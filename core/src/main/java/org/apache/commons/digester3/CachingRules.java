@@ -0,0 +1,296 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static java.util.Collections.unmodifiableList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.xml.sax.Attributes;
+
+/**
+ * <p>
+ * <code>Rules</code> <em>Decorator</em> that caches the rules matched by the wrapped implementation for each namespace
+ * URI and nesting pattern, so that the matching policy is evaluated only the first time a path is seen.
+ * </p>
+ * <p>
+ * For example,
+ *
+ * <pre>
+ *   CachingRules rules = new CachingRules( new ExtendedBaseRules() );
+ *   ...
+ *   digester.setRules( rules );
+ * </pre>
+ * </p>
+ * <p>
+ * The cache is bounded (see {@link #DEFAULT_CACHE_SIZE}) and safe to use from several threads; once it is full, every
+ * new entry evicts an older one. It is dropped when rules are added or cleared through this wrapper, so the wrapped
+ * implementation must not be modified directly while wrapped. The wrapped matches must depend only on the namespace
+ * URI and nesting pattern of the elements, unless the wrapped implementation is an {@link AttributeDependentRules}, in
+ * which case the elements whose matches depend on their attributes are always matched by the wrapped implementation.
+ * </p>
+ * <p>
+ * The lists returned by {@link #match(String, String, String, Attributes)} are unmodifiable. The wrapper does not
+ * implement {@link IncrementalRules}, which already avoid matching full patterns, even if the wrapped implementation
+ * does.
+ * </p>
+ *
+ * @since 3.3
+ */
+public class CachingRules
+    implements Rules
+{
+
+    /**
+     * The default maximum number of paths whose matched rules are cached.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+
+    // --------------------------------------------------------- Fields
+
+    /** The Rules implementation that this class wraps. */
+    private final Rules wrappedRules;
+
+    /** The wrapped implementation, if its matches may depend on the attributes. */
+    private final AttributeDependentRules attributeDependentRules;
+
+    /** The rules matched by the wrapped implementation, keyed by namespace URI and pattern. */
+    private final MatchCache<Key> cache;
+
+    // --------------------------------------------------------- Constructors
+
+    /**
+     * Creates a wrapper caching the matches of {@link #DEFAULT_CACHE_SIZE} paths.
+     *
+     * @param wrappedRules the wrapped <code>Rules</code> implementation, not null
+     */
+    public CachingRules( final Rules wrappedRules )
+    {
+        this( wrappedRules, DEFAULT_CACHE_SIZE );
+    }
+
+    /**
+     * Creates a wrapper caching the matches of the given number of paths.
+     *
+     * @param wrappedRules the wrapped <code>Rules</code> implementation, not null
+     * @param cacheSize the maximum number of paths whose matched rules are cached, strictly positive
+     */
+    public CachingRules( final Rules wrappedRules, final int cacheSize )
+    {
+        if ( wrappedRules == null )
+        {
+            throw new IllegalArgumentException( "Wrapped rules must not be null" );
+        }
+        if ( cacheSize <= 0 )
+        {
+            throw new IllegalArgumentException( "Cache size must be strictly positive, was " + cacheSize );
+        }
+        this.wrappedRules = wrappedRules;
+        this.attributeDependentRules =
+            wrappedRules instanceof AttributeDependentRules ? (AttributeDependentRules) wrappedRules : null;
+        this.cache = new MatchCache<Key>( cacheSize );
+    }
+
+    // --------------------------------------------------------- Properties
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Digester getDigester()
+    {
+        return wrappedRules.getDigester();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setDigester( final Digester digester )
+    {
+        wrappedRules.setDigester( digester );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getNamespaceURI()
+    {
+        return wrappedRules.getNamespaceURI();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setNamespaceURI( final String namespaceURI )
+    {
+        wrappedRules.setNamespaceURI( namespaceURI );
+    }
+
+    /**
+     * Returns the maximum number of paths whose matched rules are cached.
+     *
+     * @return the maximum number of paths whose matched rules are cached
+     */
+    public int getCacheSize()
+    {
+        return cache.getMaxSize();
+    }
+
+    /**
+     * Returns the number of matches answered by the cache.
+     *
+     * @return the number of matches answered by the cache
+     */
+    public long getHits()
+    {
+        return cache.getHits();
+    }
+
+    /**
+     * Returns the number of matches delegated to the wrapped implementation for lack of a cached result. The matches
+     * depending on the attributes are not counted.
+     *
+     * @return the number of matches not answered by the cache
+     */
+    public long getMisses()
+    {
+        return cache.getMisses();
+    }
+
+    /**
+     * Returns the number of cached results evicted to make room for new ones. Frequent evictions mean the cache is
+     * too small for the number of distinct paths of the parsed documents.
+     *
+     * @return the number of evicted results
+     */
+    public long getEvictions()
+    {
+        return cache.getEvictions();
+    }
+
+    // --------------------------------------------------------- Public Methods
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Rule> match( final String namespaceURI, final String pattern, final String name, final Attributes attributes )
+    {
+        if ( attributeDependentRules != null && attributeDependentRules.isAttributeDependent( namespaceURI, pattern ) )
+        {
+            return wrappedRules.match( namespaceURI, pattern, name, attributes );
+        }
+
+        final Key key = new Key( namespaceURI, pattern );
+        List<Rule> matches = cache.get( key );
+        if ( matches == null )
+        {
+            matches = wrappedRules.match( namespaceURI, pattern, name, attributes );
+            if ( matches == null || matches.isEmpty() )
+            {
+                matches = Collections.emptyList();
+            }
+            else
+            {
+                matches = unmodifiableList( new ArrayList<Rule>( matches ) );
+            }
+            cache.put( key, matches );
+        }
+        return matches;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Rule> rules()
+    {
+        return wrappedRules.rules();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear()
+    {
+        wrappedRules.clear();
+        cache.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void add( final String pattern, final Rule rule )
+    {
+        wrappedRules.add( pattern, rule );
+        cache.clear();
+    }
+
+    /**
+     * The namespace URI and nesting pattern the cached matches are keyed by.
+     */
+    private static final class Key
+    {
+
+        private final String namespaceURI;
+
+        private final String pattern;
+
+        private final int hashCode;
+
+        Key( final String namespaceURI, final String pattern )
+        {
+            this.namespaceURI = namespaceURI;
+            this.pattern = pattern;
+            this.hashCode = 31 * pattern.hashCode() + ( namespaceURI == null ? 0 : namespaceURI.hashCode() );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals( final Object obj )
+        {
+            if ( this == obj )
+            {
+                return true;
+            }
+            if ( !( obj instanceof Key ) )
+            {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return pattern.equals( other.pattern )
+                && ( namespaceURI == null ? other.namespaceURI == null : namespaceURI.equals( other.namespaceURI ) );
+        }
+
+    }
+
+}
@@ -22,8 +22,6 @@ package org.apache.commons.digester3;
 import static java.lang.String.format;
 import static java.util.Arrays.fill;
 import static org.apache.commons.beanutils.ConvertUtils.convert;
-import static org.apache.commons.beanutils.MethodUtils.invokeExactMethod;
-import static org.apache.commons.beanutils.MethodUtils.invokeMethod;
 
 import java.util.Formatter;
 
@@ -247,6 +245,11 @@ public class CallMethodRule
 
     // ----------------------------------------------------- Instance Variables
 
+    /**
+     * The arguments of methods without parameters.
+     */
+    private static final Object[] NO_PARAMETERS = new Object[0];
+
     /**
      * The body text collected from this element.
      */
@@ -285,6 +288,13 @@ public class CallMethodRule
      */
     private boolean useExactMatch = false;
 
+    /**
+     * The method resolved by the last call, reused as long as the target class and parameter types don't change.
+     *
+     * @since 3.3
+     */
+    private MethodInvoker invoker = null;
+
     // --------------------------------------------------------- Public Methods
 
     /**
@@ -418,24 +428,23 @@ public class CallMethodRule
             }
 
             parameters = new Object[] { bodyText };
-            if ( paramTypes.length == 0 )
-            {
-                paramTypes = new Class[] { String.class };
-            }
         }
         else
         {
             // When paramCount is zero and paramTypes.length is zero it
             // means that we truly are calling a method with no parameters.
             // Nothing special needs to be done here.
-            parameters = new Object[0];
-            paramTypes = new Class<?>[0];
+            parameters = NO_PARAMETERS;
+            if ( paramTypes == null )
+            {
+                paramTypes = new Class<?>[0];
+            }
         }
 
         // Construct the parameter values array we will need
         // We only do the conversion if the param value is a String and
         // the specified paramType is not String.
-        final Object[] paramValues = new Object[paramTypes.length];
+        final Object[] paramValues = paramTypes.length == 0 ? NO_PARAMETERS : new Object[paramTypes.length];
         for ( int i = 0; i < paramTypes.length; i++ )
         {
             // convert nulls and convert stringy parameters
@@ -484,18 +493,14 @@ public class CallMethodRule
             getDigester().getLogger().debug( formatter.toString() );
         }
 
-        Object result = null;
-        if ( useExactMatch )
-        {
-            // invoke using exact match
-            result = invokeExactMethod( target, methodName, paramValues, paramTypes );
-
-        }
-        else
+        // resolve the method once per target class, then invoke it without further lookups
+        MethodInvoker methodInvoker = invoker;
+        if ( methodInvoker == null || !methodInvoker.isFor( target.getClass(), methodName, paramTypes, useExactMatch ) )
         {
-            // invoke using fuzzier match
-            result = invokeMethod( target, methodName, paramValues, paramTypes );
+            methodInvoker = MethodInvoker.resolve( target.getClass(), methodName, paramTypes, useExactMatch );
+            invoker = methodInvoker;
         }
+        final Object result = methodInvoker.invoke( target, paramValues );
 
         processMethodCallResult( result );
     }
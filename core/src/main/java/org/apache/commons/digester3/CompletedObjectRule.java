@@ -0,0 +1,134 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Queue;
+
+/**
+ * Marks the pattern whose completed objects are collected: the <code>Digester</code> takes the object on top of the
+ * stack before firing the <code>end</code> events of an element matching both this rule and some of its own rules, and
+ * hands it to this rule once all of them have fired, regardless of the order the rules have been added in. This rule is
+ * matched by the <code>Digester</code> apart from its <code>Rules</code>, so that it never shadows the rules of the
+ * user, and none of its events is ever fired.
+ *
+ * The objects are added to the queue of the current iteration, if any, and handed to the stream consumer, if any. The
+ * objects handed to a stream consumer are detached: the rules linking them to other objects are not fired.
+ *
+ * @since 3.3
+ */
+final class CompletedObjectRule
+    extends Rule
+{
+
+    private Queue<Object> completed;
+
+    private ObjectConsumer<Object> consumer;
+
+    /**
+     * Sets the queue the completed objects are added to, for the current iteration.
+     *
+     * @param completed the queue the completed objects are added to, or null to stop collecting them
+     */
+    void setCompleted( final Queue<Object> completed )
+    {
+        this.completed = completed;
+    }
+
+    /**
+     * Stops collecting the completed objects in the given queue, unless another queue has been set since.
+     *
+     * @param completed the queue of the iteration to stop
+     */
+    void stopCollecting( final Queue<Object> completed )
+    {
+        if ( this.completed == completed )
+        {
+            this.completed = null;
+        }
+    }
+
+    /**
+     * Sets the consumer the completed objects are handed to, until another one is set.
+     *
+     * @param <T> the type of the consumed objects
+     * @param type the type of the consumed objects
+     * @param consumer the consumer the completed objects are handed to, or null to stop streaming them
+     */
+    <T> void setConsumer( final Class<T> type, final ObjectConsumer<? super T> consumer )
+    {
+        if ( consumer == null )
+        {
+            this.consumer = null;
+            return;
+        }
+
+        this.consumer = new ObjectConsumer<Object>()
+        {
+
+            @Override
+            public void accept( final Object object )
+                throws Exception
+            {
+                consumer.accept( type.cast( object ) );
+            }
+
+        };
+    }
+
+    /**
+     * Tells whether the completed objects are currently collected.
+     *
+     * @return true if the completed objects are currently collected
+     */
+    boolean isActive()
+    {
+        return completed != null || consumer != null;
+    }
+
+    /**
+     * Tells whether the completed objects are detached from the objects they would be linked to.
+     *
+     * @return true if the completed objects are detached from the objects they would be linked to
+     */
+    boolean isDetaching()
+    {
+        return consumer != null;
+    }
+
+    /**
+     * Collects an object completed at the pattern of this rule.
+     *
+     * @param object the completed object
+     * @throws Exception if the stream consumer fails
+     */
+    void complete( final Object object )
+        throws Exception
+    {
+        if ( completed != null )
+        {
+            completed.add( object );
+        }
+        if ( consumer != null )
+        {
+            consumer.accept( object );
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Recognizes gzip and zlib compressed documents by their magic bytes, and inflates them on a producer thread while
+ * they are being parsed.
+ *
+ * @since 3.3
+ */
+final class CompressedInput
+{
+
+    /**
+     * The size of the buffers the compressed and the inflated bytes are read through, in bytes.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The number of inflated buffers the producer thread may fill ahead of the parser.
+     */
+    private static final int READ_AHEAD_BUFFERS = 4;
+
+    private static final int GZIP_MAGIC_1 = 0x1f;
+
+    private static final int GZIP_MAGIC_2 = 0x8b;
+
+    private static final int ZLIB_DEFLATE_METHOD = 8;
+
+    private CompressedInput()
+    {
+        // static helpers only
+    }
+
+    /**
+     * Returns a stream of the document read from the given input: if it starts with the gzip magic bytes or with a
+     * zlib header, the document is inflated on a producer thread, otherwise it is read as is. A document starting with
+     * a byte order mark, a markup character or white space is never mistaken for a compressed one.
+     *
+     * @param input the stream the possibly compressed document is read from
+     * @return the stream the uncompressed document is read from
+     * @throws IOException if the stream cannot be read, or if its compression header is corrupted
+     */
+    static InputStream open( final InputStream input )
+        throws IOException
+    {
+        final BufferedInputStream buffered = new BufferedInputStream( input, BUFFER_SIZE );
+        buffered.mark( 2 );
+        final int first = buffered.read();
+        final int second = buffered.read();
+        buffered.reset();
+
+        final InputStream inflating;
+        if ( first == GZIP_MAGIC_1 && second == GZIP_MAGIC_2 )
+        {
+            inflating = new GZIPInputStream( buffered, BUFFER_SIZE );
+        }
+        else if ( first >= 0 && second >= 0 && ( first & 0x0f ) == ZLIB_DEFLATE_METHOD
+            && ( ( first << 8 ) | second ) % 31 == 0 )
+        {
+            inflating = new InflaterInputStream( buffered, new Inflater(), BUFFER_SIZE )
+            {
+
+                @Override
+                public void close()
+                    throws IOException
+                {
+                    try
+                    {
+                        super.close();
+                    }
+                    finally
+                    {
+                        // not released by close() when the Inflater is not the default one
+                        inf.end();
+                    }
+                }
+
+            };
+        }
+        else
+        {
+            return buffered;
+        }
+        return new ReadAheadInputStream( inflating, "digester-inflater", BUFFER_SIZE, READ_AHEAD_BUFFERS );
+    }
+
+}
@@ -21,6 +21,7 @@ package org.apache.commons.digester3;
 
 import static java.lang.String.format;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -30,20 +31,29 @@ import java.lang.reflect.InvocationTargetException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EmptyStackException;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Stack;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.validation.Schema;
 
 import org.apache.commons.logging.Log;
@@ -132,14 +142,41 @@ public class Digester
     // --------------------------------------------------- Instance Variables
 
     /**
-     * The body text of the current element.
+     * The largest body text buffer retained by {@link #clear()} for reuse in the next parse.
+     */
+    private static final int MAX_POOLED_BODY_TEXT_CAPACITY = 8192;
+
+    /**
+     * The size of the buffer files smaller than the memory mapping threshold are read through, in bytes.
+     */
+    private static final int FILE_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The default size from which the files parsed by {@link #parse(Path)} are memory mapped, in bytes.
+     *
+     * @since 3.3
+     */
+    public static final long DEFAULT_MEMORY_MAPPING_THRESHOLD = 8 * 1024 * 1024;
+
+    /**
+     * The body text buffers of the current element and its surrounding elements, indexed by nesting depth. Buffers are
+     * reused by every element opened at the same depth, instead of allocating a new one per element.
+     *
+     * @since 3.3
+     */
+    private final List<StringBuilder> bodyTexts = new ArrayList<StringBuilder>();
+
+    /**
+     * The nesting depth of the current element, i.e. the index of its buffer in {@link #bodyTexts}.
+     *
+     * @since 3.3
      */
-    private StringBuilder bodyText = new StringBuilder();
+    private int bodyTextDepth = 0;
 
     /**
-     * The stack of body text string buffers for surrounding elements.
+     * The body text of the current element.
      */
-    private final Stack<StringBuilder> bodyTexts = new Stack<StringBuilder>();
+    private StringBuilder bodyText = bodyTextAt( 0 );
 
     /**
      * Stack whose elements are List objects, each containing a list of Rule objects as returned from Rules.getMatch().
@@ -149,7 +186,31 @@ public class Digester
      *
      * @since 1.6
      */
-    private final Stack<List<Rule>> matches = new Stack<List<Rule>>();
+    private final Stack<List<Rule>> matches = new ArrayStack<List<Rule>>();
+
+    /**
+     * Stack whose elements are the states reached by {@link IncrementalRules} for each open element, parallel to
+     * {@link #matches}. An element has a <code>null</code> state when its rules were matched through the nesting
+     * pattern instead.
+     *
+     * @since 3.3
+     */
+    private final Stack<MatchState> matchStates = new ArrayStack<MatchState>();
+
+    /**
+     * Whether the children of the current element are skipped, because no rule can match any of them (see
+     * {@link MatchState#canMatchDescendants()}).
+     *
+     * @since 3.3
+     */
+    private boolean skippingChildren = false;
+
+    /**
+     * The number of elements currently open inside the skipped subtree.
+     *
+     * @since 3.3
+     */
+    private int skippedDepth = 0;
 
     /**
      * The class loader to use for instantiating application objects. If not specified, the context class loader, or the
@@ -189,9 +250,20 @@ public class Digester
     private Locator locator = null;
 
     /**
-     * The current match pattern for nested element processing.
+     * The names of the currently open elements, i.e. the segments of the current match pattern for nested element
+     * processing.
+     *
+     * @since 3.3
      */
-    private String match = "";
+    private final Stack<String> matchSegments = new ArrayStack<String>();
+
+    /**
+     * The match patterns of the currently open elements, parallel to {@link #matchSegments}. Patterns are only
+     * materialized when needed, an element whose pattern was never requested has a <code>null</code> entry.
+     *
+     * @since 3.3
+     */
+    private final Stack<String> matchPaths = new ArrayStack<String>();
 
     /**
      * Do we want a "namespace aware" parser.
@@ -222,7 +294,7 @@ public class Digester
      *
      * @since 2.0
      */
-    private final Stack<Object[]> params = new Stack<Object[]>();
+    private final Stack<Object[]> params = new ArrayStack<Object[]>();
 
     /**
      * The SAXParser we will use to parse the input stream.
@@ -260,7 +332,7 @@ public class Digester
     /**
      * The object stack being constructed.
      */
-    private final Stack<Object> stack = new Stack<Object>();
+    private final Stack<Object> stack = new ArrayStack<Object>();
 
     /**
      * Do we want to use the Context ClassLoader when loading classes for instantiating new objects. Default is
@@ -311,6 +383,43 @@ public class Digester
      */
     private StackAction stackAction = null;
 
+    /**
+     * The rules collecting the objects completed at a pattern, registered on demand by
+     * {@link #iterate(XMLStreamReader, String, Class)} and {@link #stream(String, Class, ObjectConsumer)}, indexed by
+     * pattern.
+     */
+    private final HashMap<String, CompletedObjectRule> completedObjectRules =
+        new HashMap<String, CompletedObjectRule>();
+
+    /**
+     * The rules of {@link #completedObjectRules} registered with their pattern. They are kept apart from the rules
+     * of {@link #getRules()}, so that they never shadow or get mixed with the rules of the user.
+     */
+    private final RulesBase completedObjectRulesMatcher = new RulesBase();
+
+    /**
+     * Whether the rules currently firing belong to an element whose object is streamed, and must not be linked to
+     * other objects.
+     */
+    private boolean detachingCurrentObject = false;
+
+    /**
+     * The asynchronous parse being performed by this Digester, if any, checked for cancellation at every element
+     * boundary. Only accessed by the parsing thread.
+     */
+    private ParseFuture<?> asyncParse = null;
+
+    /**
+     * The current iteration started by {@link #iterate(XMLStreamReader, String, Class)}, if any, ended when another one
+     * starts or when this Digester is cleared.
+     */
+    private XMLStreamIterator<?> iteration = null;
+
+    /**
+     * The size from which the files parsed by {@link #parse(Path)} are memory mapped.
+     */
+    private long memoryMappingThreshold = DEFAULT_MEMORY_MAPPING_THRESHOLD;
+
     // ------------------------------------------------------------- Properties
 
     /**
@@ -393,13 +502,11 @@ public class Digester
      */
     public String getCurrentElementName()
     {
-        String elementName = match;
-        final int lastSlash = elementName.lastIndexOf( '/' );
-        if ( lastSlash >= 0 )
+        if ( matchSegments.isEmpty() )
         {
-            elementName = elementName.substring( lastSlash + 1 );
+            return "";
         }
-        return ( elementName );
+        return ( matchSegments.peek() );
     }
 
     /**
@@ -520,13 +627,20 @@ public class Digester
     }
 
     /**
-     * Return the current rule match path
+     * Return the current rule match path. The path is kept as a stack of element names, and only built when needed:
+     * for every element when the {@link Rules} match on the path, only when this method is called when they implement
+     * {@link IncrementalRules}, such as {@link TrieRules}.
      *
      * @return the current rule match path
      */
     public String getMatch()
     {
-        return match;
+        final int depth = matchSegments.size();
+        if ( depth == 0 )
+        {
+            return "";
+        }
+        return matchPathAt( depth - 1 );
     }
 
     /**
@@ -785,6 +899,37 @@ public class Digester
         this.validating = validating;
     }
 
+    /**
+     * Returns the size from which the files parsed by {@link #parse(Path)} are memory mapped.
+     *
+     * @return the size from which the parsed files are memory mapped, in bytes
+     * @since 3.3
+     */
+    public long getMemoryMappingThreshold()
+    {
+        return memoryMappingThreshold;
+    }
+
+    /**
+     * Sets the size from which the files parsed by {@link #parse(Path)} are memory mapped, rather than read through a
+     * buffer. Mapping large files saves the read system calls and a copy of every byte, while the cost of setting up
+     * the mapping outweighs these savings on small files. By default files of
+     * {@link #DEFAULT_MEMORY_MAPPING_THRESHOLD} bytes or more are mapped; <code>Long.MAX_VALUE</code> disables the
+     * memory mapping.
+     *
+     * @param memoryMappingThreshold the size from which the parsed files are memory mapped, in bytes
+     * @since 3.3
+     */
+    public void setMemoryMappingThreshold( final long memoryMappingThreshold )
+    {
+        if ( memoryMappingThreshold < 0 )
+        {
+            throw new IllegalArgumentException( "Memory mapping threshold must be not negative, was "
+                + memoryMappingThreshold );
+        }
+        this.memoryMappingThreshold = memoryMappingThreshold;
+    }
+
     /**
      * Return the XMLReader to be used for parsing the input document.
      *
@@ -964,7 +1109,13 @@ public class Digester
     }
 
     /**
-     * Sets the executor service to run asynchronous parse method.
+     * Sets the executor service to run asynchronous parse method. When none is set, the asynchronous parses run on a
+     * shared default executor service, which starts a virtual thread per parse when the JVM offers them, and otherwise
+     * runs at most {@link ParseFuture#DEFAULT_MAX_THREADS} parses at a time on daemon threads, queuing the others; the
+     * publishers and the sessions (see {@link #publish(InputSource, String, Class)} and {@link #newSession()}), which
+     * hold their thread while waiting for their subscriber or for input, run on another default executor service that
+     * never queues them. Before 3.3, the asynchronous parse methods threw an
+     * <code>IllegalStateException</code> when no executor service had been set.
      *
      * @param executorService the executor service to run asynchronous parse method
      * @since 3.1
@@ -990,6 +1141,12 @@ public class Digester
             return;
         }
 
+        if ( skippedDepth > 0 )
+        {
+            // text of a skipped element
+            return;
+        }
+
         if ( saxLog.isDebugEnabled() )
         {
             saxLog.debug( "characters(" + new String( buffer, start, length ) + ")" );
@@ -1047,6 +1204,8 @@ public class Digester
     public void endElement( final String namespaceURI, final String localName, final String qName )
         throws SAXException
     {
+        checkCancelled();
+
         if ( customContentHandler != null )
         {
             // forward calls instead of handling them here
@@ -1054,6 +1213,14 @@ public class Digester
             return;
         }
 
+        if ( skippedDepth > 0 )
+        {
+            skippedDepth--;
+            return;
+        }
+        // the end of the current element closes the skipped subtree, if any
+        skippingChildren = false;
+
         final boolean debug = log.isDebugEnabled();
 
         if ( debug )
@@ -1062,7 +1229,7 @@ public class Digester
             {
                 saxLog.debug( "endElement(" + namespaceURI + "," + localName + "," + qName + ")" );
             }
-            log.debug( "  match='" + match + "'" );
+            log.debug( "  match='" + getMatch() + "'" );
             log.debug( "  bodyText='" + bodyText + "'" );
         }
 
@@ -1075,16 +1242,26 @@ public class Digester
         }
 
         // Fire "body" events for all relevant rules
+        matchStates.pop();
         final List<Rule> rules = matches.pop();
         if ( ( rules != null ) && ( !rules.isEmpty() ) )
         {
-            String bodyText = this.bodyText.toString();
-            final Substitutor substitutor = getSubstitutor();
-            if ( substitutor != null )
-            {
-                bodyText = substitutor.substitute( bodyText );
-            }
+            // the body text is only materialized for the rules which consume it
+            String bodyText = null;
             for (final Rule rule : rules) {
+                if ( !rule.isBodyTextRequired() )
+                {
+                    continue;
+                }
+                if ( bodyText == null )
+                {
+                    bodyText = this.bodyText.toString();
+                    final Substitutor substitutor = getSubstitutor();
+                    if ( substitutor != null )
+                    {
+                        bodyText = substitutor.substitute( bodyText );
+                    }
+                }
                 try
                 {
                     if ( debug )
@@ -1109,12 +1286,12 @@ public class Digester
         {
             if ( debug )
             {
-                log.debug( "  No rules found matching '" + match + "'." );
+                log.debug( "  No rules found matching '" + getMatch() + "'." );
             }
         }
 
         // Recover the body text from the surrounding element
-        bodyText = bodyTexts.pop();
+        bodyText = bodyTexts.get( --bodyTextDepth );
         if ( debug )
         {
             log.debug( "  Popping body text '" + bodyText.toString() + "'" );
@@ -1123,6 +1300,13 @@ public class Digester
         // Fire "end" events for all relevant rules in reverse order
         if ( rules != null )
         {
+            // the object built for the element, if collected, is complete once all end events have fired
+            final CompletedObjectRule completedObjectRule =
+                rules.isEmpty() ? null : getCompletedObjectRule( namespaceURI, name );
+            final Object completedObject =
+                completedObjectRule != null && !stack.isEmpty() ? stack.peek() : null;
+            detachingCurrentObject = completedObjectRule != null && completedObjectRule.isDetaching();
+
             for ( int i = 0; i < rules.size(); i++ )
             {
                 final int j = ( rules.size() - i ) - 1;
@@ -1146,18 +1330,34 @@ public class Digester
                     throw e;
                 }
             }
+            detachingCurrentObject = false;
+
+            if ( completedObject != null )
+            {
+                try
+                {
+                    completedObjectRule.complete( completedObject );
+                }
+                catch ( final CancellationException e )
+                {
+                    // the consumer stopped the parse on purpose, for instance a cancelled subscription
+                    if ( debug )
+                    {
+                        log.debug( "  Completed object consumer cancelled the parse", e );
+                    }
+                    throw createSAXException( e );
+                }
+                catch ( final Exception e )
+                {
+                    log.error( "Completed object consumer threw exception", e );
+                    throw createSAXException( e );
+                }
+            }
         }
 
         // Recover the previous match expression
-        final int slash = match.lastIndexOf( '/' );
-        if ( slash >= 0 )
-        {
-            match = match.substring( 0, slash );
-        }
-        else
-        {
-            match = "";
-        }
+        matchSegments.pop();
+        matchPaths.pop();
     }
 
     /**
@@ -1293,6 +1493,8 @@ public class Digester
     public void startElement( final String namespaceURI, final String localName, final String qName, Attributes list )
         throws SAXException
     {
+        checkCancelled();
+
         final boolean debug = log.isDebugEnabled();
 
         if ( customContentHandler != null )
@@ -1302,18 +1504,25 @@ public class Digester
             return;
         }
 
+        if ( skippingChildren )
+        {
+            // no rule can match in this subtree, just track the depth until it ends
+            skippedDepth++;
+            return;
+        }
+
         if ( saxLog.isDebugEnabled() )
         {
             saxLog.debug( "startElement(" + namespaceURI + "," + localName + "," + qName + ")" );
         }
 
         // Save the body text accumulated for our surrounding element
-        bodyTexts.push( bodyText );
         if ( debug )
         {
             log.debug( "  Pushing body text '" + bodyText.toString() + "'" );
         }
-        bodyText = new StringBuilder();
+        bodyText = bodyTextAt( ++bodyTextDepth );
+        bodyText.setLength( 0 );
 
         // the actual element name is either in localName or qName, depending
         // on whether the parser is namespace aware
@@ -1324,20 +1533,35 @@ public class Digester
         }
 
         // Compute the current matching rule
-        final StringBuilder sb = new StringBuilder( match );
-        if ( !match.isEmpty() )
-        {
-            sb.append( '/' );
-        }
-        sb.append( name );
-        match = sb.toString();
+        matchSegments.push( name );
+        matchPaths.push( null );
         if ( debug )
         {
-            log.debug( "  New match='" + match + "'" );
+            log.debug( "  New match='" + getMatch() + "'" );
         }
 
         // Fire "begin" events for all relevant rules
-        final List<Rule> rules = getRules().match( namespaceURI, match, localName, list );
+        final Rules currentRules = getRules();
+        MatchState state = null;
+        if ( currentRules instanceof IncrementalRules )
+        {
+            final IncrementalRules incrementalRules = (IncrementalRules) currentRules;
+            final MatchState parentState = matchStates.isEmpty() ? incrementalRules.getRootState() : matchStates.peek();
+            if ( parentState != null )
+            {
+                state = incrementalRules.getChildState( parentState, name );
+            }
+        }
+        final List<Rule> rules;
+        if ( state != null )
+        {
+            rules = state.match( namespaceURI, localName, list );
+        }
+        else
+        {
+            rules = currentRules.match( namespaceURI, getMatch(), localName, list );
+        }
+        matchStates.push( state );
         matches.push( rules );
         if ( ( rules != null ) && ( !rules.isEmpty() ) )
         {
@@ -1346,6 +1570,8 @@ public class Digester
             {
                 list = substitutor.substitute( list );
             }
+            final CompletedObjectRule completedObjectRule = getCompletedObjectRule( namespaceURI, name );
+            detachingCurrentObject = completedObjectRule != null && completedObjectRule.isDetaching();
             for (final Rule rule : rules) {
                 try
                 {
@@ -1366,13 +1592,26 @@ public class Digester
                     throw e;
                 }
             }
+            detachingCurrentObject = false;
         }
         else
         {
             if ( debug )
             {
-                log.debug( "  No rules found matching '" + match + "'." );
+                log.debug( "  No rules found matching '" + getMatch() + "'." );
+            }
+        }
+
+        // unless a rule took control of the events, or replaced the rules matching the children, skip the subtree
+        // when nothing can match in it
+        if ( state != null && customContentHandler == null && getRules() == currentRules
+            && !state.canMatchDescendants() )
+        {
+            if ( debug )
+            {
+                log.debug( "  No rules can match below '" + getMatch() + "', skipping its children." );
             }
+            skippingChildren = true;
         }
     }
 
@@ -1392,7 +1631,7 @@ public class Digester
         Stack<String> stack = namespaces.get( prefix );
         if ( stack == null )
         {
-            stack = new Stack<String>();
+            stack = new ArrayStack<String>();
             namespaces.put( prefix, stack );
         }
         stack.push( namespaceURI );
@@ -1581,16 +1820,173 @@ public class Digester
         return ( this.<T> parse( input ) );
     }
 
+    /**
+     * Parse the content of the specified file using this Digester. Returns the root element from the object stack (if
+     * any).
+     *
+     * The file is read through its <code>FileChannel</code>: files smaller than the memory mapping threshold (see
+     * {@link #setMemoryMappingThreshold(long)}) are read through a large buffer, larger ones are memory mapped and the
+     * parser reads straight from the mapping.
+     *
+     * @param <T> the type used to auto-cast the returned object to the assigned variable type
+     * @param path Path of the file containing the XML data to be parsed
+     * @return the root element from the object stack (if any)
+     * @throws IOException if an input/output error occurs
+     * @throws SAXException if a parsing exception occurs
+     * @since 3.3
+     */
+    public <T> T parse( final Path path )
+        throws IOException, SAXException
+    {
+        if ( path == null )
+        {
+            throw new IllegalArgumentException( "Path to parse is null" );
+        }
+
+        final FileChannel channel = FileChannel.open( path, StandardOpenOption.READ );
+        final InputStream stream;
+        try
+        {
+            if ( channel.size() >= memoryMappingThreshold )
+            {
+                stream = new MappedFileInputStream( channel );
+            }
+            else
+            {
+                stream = new BufferedInputStream( Channels.newInputStream( channel ), FILE_BUFFER_SIZE );
+            }
+        }
+        catch ( final IOException e )
+        {
+            channel.close();
+            throw e;
+        }
+
+        try
+        {
+            final InputSource input = new InputSource( stream );
+            input.setSystemId( path.toUri().toString() );
+
+            return ( this.<T> parse( input ) );
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+
+    /**
+     * Creates a Callable instance that parse the content of the specified file using this Digester.
+     *
+     * @param <T> The result type returned by the returned Future's {@code get} method
+     * @param path Path of the file containing the XML data to be parsed
+     * @return a {@link ParseFuture} that can be used to track when the parse has been fully processed, or to cancel it
+     * @see Digester#parse(Path)
+     * @see #setExecutorService(ExecutorService)
+     * @since 3.3
+     */
+    public <T> ParseFuture<T> asyncParse( final Path path )
+    {
+        return asyncParse( new Callable<T>()
+        {
+
+            @Override
+            public T call()
+                throws Exception
+            {
+                return Digester.this.<T> parse( path );
+            }
+
+        } );
+    }
+
+    /**
+     * Parse the content of the specified, possibly compressed, input stream using this Digester. Returns the root
+     * element from the object stack (if any).
+     *
+     * Documents compressed with gzip, or with a zlib header, are recognized by their first bytes and inflated on a
+     * separate thread, a few buffers ahead of the parser, so that inflating and parsing overlap. Other documents are
+     * parsed as is. The stream is closed once the document has been parsed.
+     *
+     * @param <T> the type used to auto-cast the returned object to the assigned variable type
+     * @param input Input stream containing the possibly compressed XML data to be parsed
+     * @return the root element from the object stack (if any)
+     * @throws IOException if an input/output error occurs
+     * @throws SAXException if a parsing exception occurs
+     * @since 3.3
+     */
+    public <T> T parseCompressed( final InputStream input )
+        throws IOException, SAXException
+    {
+        if ( input == null )
+        {
+            throw new IllegalArgumentException( "InputStream to parse is null" );
+        }
+
+        return ( this.<T> parseCompressed( new InputSource(), input ) );
+    }
+
+    /**
+     * Parse the content of the specified, possibly compressed, file using this Digester. Returns the root element from
+     * the object stack (if any).
+     *
+     * @param <T> the type used to auto-cast the returned object to the assigned variable type
+     * @param path Path of the file containing the possibly compressed XML data to be parsed
+     * @return the root element from the object stack (if any)
+     * @throws IOException if an input/output error occurs
+     * @throws SAXException if a parsing exception occurs
+     * @see #parseCompressed(InputStream)
+     * @since 3.3
+     */
+    public <T> T parseCompressed( final Path path )
+        throws IOException, SAXException
+    {
+        if ( path == null )
+        {
+            throw new IllegalArgumentException( "Path to parse is null" );
+        }
+
+        final InputSource input = new InputSource();
+        input.setSystemId( path.toUri().toString() );
+        return ( this.<T> parseCompressed( input, Files.newInputStream( path ) ) );
+    }
+
+    private <T> T parseCompressed( final InputSource input, final InputStream stream )
+        throws IOException, SAXException
+    {
+        final InputStream uncompressed;
+        try
+        {
+            uncompressed = CompressedInput.open( stream );
+        }
+        catch ( final IOException e )
+        {
+            stream.close();
+            throw e;
+        }
+
+        try
+        {
+            input.setByteStream( uncompressed );
+            return ( this.<T> parse( input ) );
+        }
+        finally
+        {
+            uncompressed.close();
+        }
+    }
+
     /**
      * Creates a Callable instance that parse the content of the specified reader using this Digester.
      *
      * @param <T> The result type returned by the returned Future's {@code get} method
      * @param file File containing the XML data to be parsed
-     * @return a Future that can be used to track when the parse has been fully processed.
+     * @return a {@link ParseFuture} that can be used to track when the parse has been fully processed, or to cancel it
      * @see Digester#parse(File)
+     * @see #setExecutorService(ExecutorService)
      * @since 3.1
      */
-    public <T> Future<T> asyncParse( final File file )
+    public <T> ParseFuture<T> asyncParse( final File file )
     {
         return asyncParse( new Callable<T>()
         {
@@ -1648,13 +2044,18 @@ public class Digester
     /**
      * Creates a Callable instance that parse the content of the specified reader using this Digester.
      *
+     * The parse runs on the executor service of this Digester or, if none has been set, on a default one (see
+     * {@link #setExecutorService(ExecutorService)}); before 3.3, this method threw an
+     * <code>IllegalStateException</code> when no executor service had been set.
+     *
      * @param <T> The result type returned by the returned Future's {@code get} method
      * @param input Input source containing the XML data to be parsed
-     * @return a Future that can be used to track when the parse has been fully processed.
+     * @return a {@link ParseFuture} that can be used to track when the parse has been fully processed, or to cancel it
      * @see Digester#parse(InputSource)
+     * @see #setExecutorService(ExecutorService)
      * @since 3.1
      */
-    public <T> Future<T> asyncParse( final InputSource input )
+    public <T> ParseFuture<T> asyncParse( final InputSource input )
     {
         return asyncParse( new Callable<T>()
         {
@@ -1695,11 +2096,12 @@ public class Digester
      *
      * @param <T> The result type returned by the returned Future's {@code get} method
      * @param input Input stream containing the XML data to be parsed
-     * @return a Future that can be used to track when the parse has been fully processed.
+     * @return a {@link ParseFuture} that can be used to track when the parse has been fully processed, or to cancel it
      * @see Digester#parse(InputStream)
+     * @see #setExecutorService(ExecutorService)
      * @since 3.1
      */
-    public <T> Future<T> asyncParse( final InputStream input )
+    public <T> ParseFuture<T> asyncParse( final InputStream input )
     {
         return asyncParse( new Callable<T>()
         {
@@ -1740,11 +2142,12 @@ public class Digester
      *
      * @param <T> The result type returned by the returned Future's {@code get} method
      * @param reader Reader containing the XML data to be parsed
-     * @return a Future that can be used to track when the parse has been fully processed.
+     * @return a {@link ParseFuture} that can be used to track when the parse has been fully processed, or to cancel it
      * @see Digester#parse(Reader)
+     * @see #setExecutorService(ExecutorService)
      * @since 3.1
      */
-    public <T> Future<T> asyncParse( final Reader reader )
+    public <T> ParseFuture<T> asyncParse( final Reader reader )
     {
         return asyncParse( new Callable<T>()
         {
@@ -1785,11 +2188,12 @@ public class Digester
      *
      * @param <T> The result type returned by the returned Future's {@code get} method
      * @param uri URI containing the XML data to be parsed
-     * @return a Future that can be used to track when the parse has been fully processed.
+     * @return a {@link ParseFuture} that can be used to track when the parse has been fully processed, or to cancel it
      * @see Digester#parse(String)
+     * @see #setExecutorService(ExecutorService)
      * @since 3.1
      */
-    public <T> Future<T> asyncParse( final String uri )
+    public <T> ParseFuture<T> asyncParse( final String uri )
     {
         return asyncParse( new Callable<T>()
         {
@@ -1831,11 +2235,12 @@ public class Digester
      *
      * @param <T> The result type returned by the returned Future's {@code get} method
      * @param url URL containing the XML data to be parsed
-     * @return a Future that can be used to track when the parse has been fully processed.
+     * @return a {@link ParseFuture} that can be used to track when the parse has been fully processed, or to cancel it
      * @see Digester#parse(URL)
+     * @see #setExecutorService(ExecutorService)
      * @since 3.1
      */
-    public <T> Future<T> asyncParse( final URL url )
+    public <T> ParseFuture<T> asyncParse( final URL url )
     {
         return asyncParse( new Callable<T>()
         {
@@ -1850,22 +2255,288 @@ public class Digester
         } );
     }
 
+    /**
+     * Parse the content of the specified StAX reader using this Digester, firing the same rules as when the document is
+     * parsed by the SAX parser. Returns the root element from the object stack (if any).
+     *
+     * The events are pulled from the current position of the reader up to the end of the document, or up to the end
+     * of the element the reader is positioned on. The reader is not closed, and the parser related settings of this
+     * Digester (validation, schema, entity resolution) don't apply: they belong to the factory of the reader.
+     *
+     * @param <T> the type used to auto-cast the returned object to the assigned variable type
+     * @param reader the StAX reader the events are pulled from
+     * @return the root element from the object stack (if any)
+     * @throws SAXException if a parsing exception occurs
+     * @since 3.3
+     */
+    public <T> T parse( final XMLStreamReader reader )
+        throws SAXException
+    {
+        if ( reader == null )
+        {
+            throw new IllegalArgumentException( "XMLStreamReader to parse is null" );
+        }
+
+        new XMLStreamDriver( this, reader ).drive();
+        cleanup();
+        return this.<T> getRoot();
+    }
+
+    /**
+     * Returns an iterator over the objects completed at the given pattern, in document order: each object is returned
+     * once its end tag has been processed, and the events of the StAX reader are pulled only as far as needed to
+     * complete the next object. The rules are fired exactly as in {@link #parse(XMLStreamReader)}, so the completed
+     * objects are still linked to their parents by the configured rules.
+     *
+     * The completed object of an element is the object on top of the stack when its end tag is reached, so a rule
+     * matching the pattern must create it. A parse failure is reported by the iterator as an
+     * <code>IllegalStateException</code> caused by the <code>SAXException</code>.
+     *
+     * The iteration ends, the objects are no longer collected and {@link #cleanup()} is called, once the document has
+     * been completely processed or has failed. An iteration dropped before its end is ended when the next one starts,
+     * along with its document, or when this Digester is cleared.
+     *
+     * @param <T> the type of the completed objects
+     * @param reader the StAX reader the events are pulled from
+     * @param pattern the pattern matching the elements whose objects are iterated
+     * @param type the type of the completed objects
+     * @return an iterator over the objects completed at the given pattern
+     * @since 3.3
+     */
+    public <T> Iterator<T> iterate( final XMLStreamReader reader, final String pattern, final Class<T> type )
+    {
+        if ( reader == null )
+        {
+            throw new IllegalArgumentException( "XMLStreamReader to parse is null" );
+        }
+        if ( pattern == null )
+        {
+            throw new IllegalArgumentException( "Pattern is null" );
+        }
+        if ( type == null )
+        {
+            throw new IllegalArgumentException( "Type of the completed objects is null" );
+        }
+
+        if ( iteration != null && !iteration.isEnded() )
+        {
+            // dropped in the middle of its document, which is abandoned as well
+            clear();
+        }
+
+        final Queue<Object> completed = new ArrayDeque<Object>();
+        final CompletedObjectRule completedObjectRule = getCompletedObjectRule( pattern );
+        completedObjectRule.setCompleted( completed );
+
+        final XMLStreamIterator<T> iterator =
+            new XMLStreamIterator<T>( this, new XMLStreamDriver( this, reader ), completedObjectRule, completed, type );
+        iteration = iterator;
+        return iterator;
+    }
+
+    /**
+     * Streams the objects completed at the given pattern to the given consumer, for all the documents parsed from now
+     * on by this Digester. Each object is handed to the consumer as soon as all the rules matching its element have
+     * fired their <code>end</code> event, and is then dropped: the rules that would link it to another object
+     * (<code>SetNextRule</code>, <code>SetTopRule</code> and <code>SetRootRule</code>) are not fired for its element,
+     * so that neither the stack nor the object graph retains it, and the memory used by the parse doesn't depend on the
+     * number of streamed objects.
+     *
+     * The completed object of an element is the object on top of the stack when its end tag is reached, so a rule
+     * matching the pattern must create it.
+     *
+     * @param <T> the type of the streamed objects
+     * @param pattern the pattern matching the elements whose objects are streamed
+     * @param type the type of the streamed objects
+     * @param consumer the consumer the completed objects are handed to, or null to stop streaming the pattern
+     * @since 3.3
+     */
+    public <T> void stream( final String pattern, final Class<T> type, final ObjectConsumer<? super T> consumer )
+    {
+        if ( pattern == null )
+        {
+            throw new IllegalArgumentException( "Pattern is null" );
+        }
+        if ( type == null )
+        {
+            throw new IllegalArgumentException( "Type of the completed objects is null" );
+        }
+
+        getCompletedObjectRule( pattern ).setConsumer( type, consumer );
+    }
+
+    /**
+     * Returns a publisher of the objects completed at the given pattern of the given document. The parse starts on the
+     * <code>ExecutorService</code> of this Digester, or on the default one for long running parses (see
+     * {@link #setExecutorService(ExecutorService)}), when the publisher is subscribed to, and is paused whenever the
+     * subscriber has received all the objects it requested. The objects are streamed (see
+     * {@link #stream(String, Class, ObjectConsumer)}), and this Digester must not be used for anything else until the
+     * subscription has completed, failed or been cancelled.
+     *
+     * @param <T> the type of the published objects
+     * @param input Input source containing the XML data to be parsed
+     * @param pattern the pattern matching the elements whose objects are published
+     * @param type the type of the published objects
+     * @return a publisher of the objects completed at the given pattern
+     * @see #setExecutorService(ExecutorService)
+     * @since 3.3
+     */
+    public <T> DigesterPublisher<T> publish( final InputSource input, final String pattern, final Class<T> type )
+    {
+        if ( input == null )
+        {
+            throw new IllegalArgumentException( "InputSource to parse is null" );
+        }
+        if ( pattern == null )
+        {
+            throw new IllegalArgumentException( "Pattern is null" );
+        }
+        if ( type == null )
+        {
+            throw new IllegalArgumentException( "Type of the completed objects is null" );
+        }
+        return new DigesterPublisher<T>( this, input, pattern, type );
+    }
+
+    /**
+     * Starts a push-style parse of a document fed in chunks, as they are received, without ever waiting for input.
+     *
+     * @param <T> the type used to auto-cast the root object to the assigned variable type
+     * @return a session the document is fed to
+     * @see DigesterSession
+     * @since 3.3
+     */
+    public <T> DigesterSession<T> newSession()
+    {
+        return newSession( null );
+    }
+
+    /**
+     * Starts a push-style parse of a document fed in chunks, as they are received, without ever waiting for input.
+     *
+     * @param <T> the type used to auto-cast the root object to the assigned variable type
+     * @param systemId the system identifier of the document, used to resolve relative URIs and to report errors, or
+     *            null
+     * @return a session the document is fed to
+     * @see DigesterSession
+     * @since 3.3
+     */
+    public <T> DigesterSession<T> newSession( final String systemId )
+    {
+        return new DigesterSession<T>( this, systemId );
+    }
+
+    /**
+     * Returns the rule collecting the objects completed at the given pattern, registering it if needed. The rule is
+     * matched by this Digester itself, and is never added to its {@link Rules}.
+     *
+     * @param pattern the pattern matching the elements whose objects are collected
+     * @return the rule collecting the objects completed at the given pattern
+     */
+    private CompletedObjectRule getCompletedObjectRule( final String pattern )
+    {
+        CompletedObjectRule completedObjectRule = completedObjectRules.get( pattern );
+        if ( completedObjectRule == null )
+        {
+            completedObjectRule = new CompletedObjectRule();
+            completedObjectRule.setNamespaceURI( getRuleNamespaceURI() );
+            completedObjectRulesMatcher.add( pattern, completedObjectRule );
+            completedObjectRules.put( pattern, completedObjectRule );
+        }
+        return completedObjectRule;
+    }
+
+    /**
+     * Returns the active rule collecting the objects completed at the current element, if any.
+     *
+     * @param namespaceURI the namespace URI of the current element
+     * @param name the name of the current element
+     * @return the active rule collecting the objects completed at the current element, or null
+     */
+    private CompletedObjectRule getCompletedObjectRule( final String namespaceURI, final String name )
+    {
+        if ( completedObjectRules.isEmpty() )
+        {
+            return null;
+        }
+        for ( final Rule rule : completedObjectRulesMatcher.match( namespaceURI, getMatch(), name, null ) )
+        {
+            if ( ( (CompletedObjectRule) rule ).isActive() )
+            {
+                return (CompletedObjectRule) rule;
+            }
+        }
+        return null;
+    }
+
     /**
      * Execute the parse in async mode.
      *
      * @param <T> the type used to auto-cast the returned object to the assigned variable type
      * @param callable
-     * @return a Future that can be used to track when the parse has been fully processed.
+     * @return a ParseFuture that can be used to track when the parse has been fully processed.
      * @since 3.1
      */
-    private <T> Future<T> asyncParse( final Callable<T> callable )
+    private <T> ParseFuture<T> asyncParse( final Callable<T> callable )
+    {
+        final ParseFuture<T> future = new ParseFuture<T>( this, callable );
+        getAsyncExecutorService().execute( future );
+        return future;
+    }
+
+    /**
+     * Returns the executor service the asynchronous parses are run on: the one set on this Digester, if any,
+     * otherwise the default one (see {@link ParseFuture}).
+     *
+     * @return the executor service the asynchronous parses are run on
+     */
+    ExecutorService getAsyncExecutorService()
     {
         if ( executorService == null )
         {
-            throw new IllegalStateException( "ExecutorService not set" );
+            return ParseFuture.getDefaultExecutorService();
         }
+        return executorService;
+    }
+
+    /**
+     * Returns the executor service the long running parses, which hold their thread for as long as their input is
+     * being fed or their subscriber is not requesting objects, are run on: the one set on this Digester, if any,
+     * otherwise the default one (see {@link ParseFuture}), which never makes them wait for each other.
+     *
+     * @return the executor service the long running parses are run on
+     */
+    ExecutorService getLongRunningExecutorService()
+    {
+        if ( executorService == null )
+        {
+            return ParseFuture.getDefaultLongRunningExecutorService();
+        }
+        return executorService;
+    }
 
-        return executorService.submit( callable );
+    /**
+     * Sets the asynchronous parse being performed by this Digester, on the parsing thread.
+     *
+     * @param asyncParse the asynchronous parse being performed, or null once it is over
+     */
+    void setAsyncParse( final ParseFuture<?> asyncParse )
+    {
+        this.asyncParse = asyncParse;
+    }
+
+    /**
+     * Aborts the parse at the current element boundary if it is an asynchronous parse that has been cancelled.
+     *
+     * @throws SAXException if the asynchronous parse has been cancelled
+     */
+    private void checkCancelled()
+        throws SAXException
+    {
+        if ( asyncParse != null && asyncParse.isCancelled() )
+        {
+            throw createSAXException( "Parse cancelled" );
+        }
     }
 
     /**
@@ -2597,13 +3268,39 @@ public class Digester
      */
     public void clear()
     {
-        match = "";
-        bodyTexts.clear();
+        matchSegments.clear();
+        matchPaths.clear();
+        matchStates.clear();
+        skippingChildren = false;
+        skippedDepth = 0;
+        matches.clear();
+        namespaces.clear();
+        bodyTextDepth = 0;
+        for ( int i = 0; i < bodyTexts.size(); i++ )
+        {
+            // don't hold on to the buffers grown by large text nodes
+            if ( bodyTexts.get( i ).capacity() > MAX_POOLED_BODY_TEXT_CAPACITY )
+            {
+                bodyTexts.set( i, new StringBuilder() );
+            }
+        }
+        bodyText = bodyTextAt( 0 );
+        bodyText.setLength( 0 );
         params.clear();
         publicId = null;
         stack.clear();
         stacksByName.clear();
         customContentHandler = null;
+        if ( iteration != null )
+        {
+            iteration.end();
+            iteration = null;
+        }
+        for ( final CompletedObjectRule completedObjectRule : completedObjectRules.values() )
+        {
+            completedObjectRule.setCompleted( null );
+        }
+        detachingCurrentObject = false;
     }
 
     /**
@@ -2718,7 +3415,7 @@ public class Digester
         Stack<Object> namedStack = stacksByName.get( stackName );
         if ( namedStack == null )
         {
-            namedStack = new Stack<Object>();
+            namedStack = new ArrayStack<Object>();
             stacksByName.put( stackName, namedStack );
         }
         namedStack.push( value );
@@ -2877,6 +3574,20 @@ public class Digester
         root = null;
     }
 
+    /**
+     * Restores the per-parse state of this Digester, so that the instance can be reused to parse another document even
+     * after a failed parse: the stacks are cleared (see {@link #clear()}), the root object is reset, and the input
+     * streams opened by the Digester itself are closed. Configuration, rules and parser are retained.
+     *
+     * @since 3.3
+     */
+    public void reset()
+    {
+        cleanup();
+        clear();
+        resetRoot();
+    }
+
     // ------------------------------------------------ Parameter Stack Methods
 
     // ------------------------------------------------------ Protected Methods
@@ -2972,6 +3683,29 @@ public class Digester
 
     // -------------------------------------------------------- Package Methods
 
+    /**
+     * Tells whether the children of the current element are skipped, because no rule can match any of them.
+     *
+     * @return true if the children of the current element are skipped
+     * @since 3.3
+     */
+    boolean isSkippingChildren()
+    {
+        return skippingChildren;
+    }
+
+    /**
+     * Tells whether the rules currently firing belong to an element whose object is streamed, so that they must not
+     * link it to other objects (see {@link #stream(String, Class, ObjectConsumer)}).
+     *
+     * @return true if the object of the current element must not be linked to other objects
+     * @since 3.3
+     */
+    boolean isDetachingCurrentObject()
+    {
+        return detachingCurrentObject;
+    }
+
     /**
      * Return the set of DTD URL registrations, keyed by public identifier. NOTE: the returned map is in read-only mode.
      *
@@ -3170,4 +3904,55 @@ public class Digester
         return result;
     }
 
+    /**
+     * Returns the match pattern of the open element at the given depth, materializing it from the nearest ancestor
+     * whose pattern is already known.
+     *
+     * @since 3.3
+     * @param depth the depth of the open element, starting from 0 for the root element
+     * @return the match pattern of the open element at the given depth
+     */
+    private String matchPathAt( final int depth )
+    {
+        String path = matchPaths.get( depth );
+        if ( path != null )
+        {
+            return path;
+        }
+
+        int known = depth - 1;
+        while ( known >= 0 && matchPaths.get( known ) == null )
+        {
+            known--;
+        }
+        final StringBuilder sb = new StringBuilder( known >= 0 ? matchPaths.get( known ) : "" );
+        for ( int i = known + 1; i <= depth; i++ )
+        {
+            if ( i > 0 )
+            {
+                sb.append( '/' );
+            }
+            sb.append( matchSegments.get( i ) );
+        }
+        path = sb.toString();
+        matchPaths.set( depth, path );
+        return path;
+    }
+
+    /**
+     * Returns the pooled body text buffer for the given nesting depth, creating it on first use.
+     *
+     * @since 3.3
+     * @param depth the nesting depth, at most one more than the deepest buffer created so far
+     * @return the body text buffer for the given depth
+     */
+    private StringBuilder bodyTextAt( final int depth )
+    {
+        if ( depth == bodyTexts.size() )
+        {
+            bodyTexts.add( new StringBuilder() );
+        }
+        return bodyTexts.get( depth );
+    }
+
 }
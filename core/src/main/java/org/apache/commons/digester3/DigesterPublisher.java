@@ -0,0 +1,370 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.xml.sax.InputSource;
+
+/**
+ * Publishes the objects completed at a pattern of a document to a single subscriber, honouring its demand: the parse
+ * runs on the <code>ExecutorService</code> of the {@link Digester}, or on the default one for long running parses (see
+ * {@link ParseFuture}), and the parsing thread is paused as soon as all the requested objects have been delivered, so
+ * that a slow subscriber never causes unbounded buffering.
+ *
+ * The SAX parsers push their events from the stack of the parsing thread, so a paused parse keeps its thread until the
+ * subscriber requests more objects or cancels the subscription: a virtual thread when the JVM offers them, which a
+ * paused parse does not pin since it waits on a <code>Condition</code>, and otherwise a platform thread. A cancelled
+ * subscription stops the parse at the next element boundary.
+ *
+ * The {@link Subscriber} and {@link Subscription} interfaces have the shape and the semantics of the Reactive Streams
+ * ones (<code>java.util.concurrent.Flow</code> on Java 9 and later), so that adapting them is a matter of delegation.
+ * The objects are streamed (see {@link Digester#stream(String, Class, ObjectConsumer)}), and the Digester must not be
+ * used for anything else until the subscription has completed, failed or been cancelled.
+ *
+ * @param <T> the type of the published objects
+ * @since 3.3
+ */
+public final class DigesterPublisher<T>
+{
+
+    /**
+     * Receives the objects published by a {@link DigesterPublisher}, as requested through its {@link Subscription}.
+     *
+     * @param <T> the type of the received objects
+     */
+    public interface Subscriber<T>
+    {
+
+        /**
+         * Invoked once, before any other method, with the subscription through which objects are requested.
+         *
+         * @param subscription the subscription through which objects are requested
+         */
+        void onSubscribe( Subscription subscription );
+
+        /**
+         * Invoked with the next completed object, never more times than requested.
+         *
+         * @param item the next completed object
+         */
+        void onNext( T item );
+
+        /**
+         * Invoked once if the parse fails; no other method is invoked afterwards.
+         *
+         * @param throwable the failure
+         */
+        void onError( Throwable throwable );
+
+        /**
+         * Invoked once when the whole document has been parsed; no other method is invoked afterwards.
+         */
+        void onComplete();
+
+    }
+
+    /**
+     * The link between a {@link DigesterPublisher} and its {@link Subscriber}.
+     */
+    public interface Subscription
+    {
+
+        /**
+         * Adds the given number of objects to the demand of the subscriber. The parse resumes if it was paused.
+         *
+         * @param n the number of additional objects the subscriber can receive, strictly positive
+         */
+        void request( long n );
+
+        /**
+         * Stops the delivery of objects and the parse, at the latest at the next element boundary.
+         */
+        void cancel();
+
+    }
+
+    private final Digester digester;
+
+    private final InputSource input;
+
+    private final String pattern;
+
+    private final Class<T> type;
+
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    DigesterPublisher( final Digester digester, final InputSource input, final String pattern, final Class<T> type )
+    {
+        this.digester = digester;
+        this.input = input;
+        this.pattern = pattern;
+        this.type = type;
+    }
+
+    /**
+     * Subscribes the given subscriber and starts the parse on the <code>ExecutorService</code> of the Digester. Only
+     * one subscriber is supported: any further one is immediately signalled an <code>IllegalStateException</code>. If
+     * the executor service rejects the parse, the subscriber is signalled the
+     * <code>RejectedExecutionException</code>.
+     *
+     * @param subscriber the subscriber of the completed objects
+     */
+    public void subscribe( final Subscriber<? super T> subscriber )
+    {
+        if ( subscriber == null )
+        {
+            throw new NullPointerException( "Subscriber is null" );
+        }
+
+        if ( !subscribed.compareAndSet( false, true ) )
+        {
+            subscriber.onSubscribe( new Subscription()
+            {
+
+                @Override
+                public void request( final long n )
+                {
+                    // nothing will ever be published
+                }
+
+                @Override
+                public void cancel()
+                {
+                    // nothing to cancel
+                }
+
+            } );
+            subscriber.onError( new IllegalStateException( "Only one subscriber is supported" ) );
+            return;
+        }
+
+        final ParseSubscription subscription = new ParseSubscription( subscriber );
+        subscriber.onSubscribe( subscription );
+        try
+        {
+            digester.getLongRunningExecutorService().execute( subscription.parse );
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            subscription.rejected( e );
+        }
+    }
+
+    /**
+     * Runs the parse, streaming the completed objects to the subscriber as long as it has demand. The parse runs as a
+     * {@link ParseFuture}, which is cancelled with the subscription, so that the Digester stops at the next element
+     * boundary.
+     */
+    private final class ParseSubscription
+        implements Subscription, ObjectConsumer<T>, Callable<Void>
+    {
+
+        private final Subscriber<? super T> subscriber;
+
+        private final ParseFuture<Void> parse;
+
+        private final Lock lock = new ReentrantLock();
+
+        /**
+         * Signalled whenever the demand grows or the subscription is cancelled.
+         */
+        private final Condition changed = lock.newCondition();
+
+        /** Guarded by {@link #lock}. */
+        private long demand;
+
+        /** Guarded by {@link #lock}. */
+        private boolean cancelled;
+
+        /** Guarded by {@link #lock}. */
+        private IllegalArgumentException invalidRequest;
+
+        ParseSubscription( final Subscriber<? super T> subscriber )
+        {
+            this.subscriber = subscriber;
+            this.parse = new ParseFuture<Void>( digester, this );
+        }
+
+        @Override
+        public void request( final long n )
+        {
+            lock.lock();
+            try
+            {
+                if ( n <= 0 )
+                {
+                    // signalled by the parsing thread, once the parse has stopped at the next object
+                    invalidRequest =
+                        new IllegalArgumentException( "The number of requested objects must be positive: " + n );
+                    cancelled = true;
+                }
+                else
+                {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+                changed.signalAll();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void cancel()
+        {
+            lock.lock();
+            try
+            {
+                cancelled = true;
+                changed.signalAll();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+            parse.cancel( false );
+        }
+
+        /**
+         * Signals the rejection of the parse by the executor service, unless the subscription has been cancelled.
+         *
+         * @param e the rejection
+         */
+        void rejected( final RejectedExecutionException e )
+        {
+            if ( !isCancelled() )
+            {
+                subscriber.onError( e );
+            }
+        }
+
+        @Override
+        public void accept( final T object )
+            throws Exception
+        {
+            lock.lock();
+            try
+            {
+                while ( demand == 0 && !cancelled )
+                {
+                    changed.await();
+                }
+                if ( cancelled )
+                {
+                    throw new CancellationException( "Subscription cancelled" );
+                }
+                if ( demand != Long.MAX_VALUE )
+                {
+                    demand--;
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+
+            try
+            {
+                subscriber.onNext( object );
+            }
+            catch ( final RuntimeException e )
+            {
+                // a subscriber failing in onNext is considered to have cancelled its subscription
+                cancel();
+                throw e;
+            }
+        }
+
+        private boolean isCancelled()
+        {
+            lock.lock();
+            try
+            {
+                return cancelled;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public Void call()
+        {
+            Throwable failure = null;
+            if ( !isCancelled() )
+            {
+                digester.stream( pattern, type, this );
+                try
+                {
+                    digester.parse( input );
+                }
+                catch ( final Exception e )
+                {
+                    failure = e;
+                    digester.reset();
+                }
+                finally
+                {
+                    digester.stream( pattern, type, null );
+                }
+            }
+
+            final IllegalArgumentException invalid;
+            final boolean signal;
+            lock.lock();
+            try
+            {
+                invalid = invalidRequest;
+                signal = !cancelled;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+            if ( invalid != null )
+            {
+                subscriber.onError( invalid );
+            }
+            else if ( signal )
+            {
+                if ( failure != null )
+                {
+                    subscriber.onError( failure );
+                }
+                else
+                {
+                    subscriber.onComplete();
+                }
+            }
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,497 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * A push-style parse: the document is fed in chunks as they are received, for instance by a non-blocking server.
+ * {@link #feed(ByteBuffer)} copies the given bytes to the input of the parse and returns at once, the rules of the
+ * elements they complete being fired on another thread; {@link #endOfInput()} waits for the bytes fed so far to be
+ * parsed, but none of them ever waits for input. A failure of the parse is reported by the next call to
+ * {@link #feed(ByteBuffer)} or {@link #endOfInput()}.
+ *
+ * The SAX parsers pull their input from a stream, so the parse runs on a thread of the <code>ExecutorService</code> of
+ * the Digester, or of the default one for long running parses (see {@link ParseFuture}), which waits for the next
+ * bytes whenever it has parsed all the fed ones. A session therefore holds a thread until it ends, and the executor
+ * service must be able to run one task per open session: the default one starts a virtual thread per session when the
+ * JVM offers them, which is suited to many thousands of concurrent sessions, and otherwise a platform thread per
+ * session, which limits the number of concurrent sessions to the number of threads the JVM can afford. The waiting
+ * thread is parked on a <code>Condition</code>, so it does not pin the carrier of a virtual thread. A session whose
+ * executor service is saturated simply buffers the fed bytes until a thread is available; it fails with a
+ * <code>RejectedExecutionException</code> when the executor service rejects the parse or runs it on the feeding thread.
+ *
+ * The fed bytes are buffered until parsed: a caller feeding faster than the parse can apply back-pressure according to
+ * {@link #getBufferedBytes()}.
+ *
+ * The Digester must not be used for anything else until the session has ended, failed or been closed; after a failure
+ * or a close, it must be reset (see {@link Digester#reset()}) before being reused.
+ *
+ * @param <T> the type of the root object
+ * @since 3.3
+ */
+public final class DigesterSession<T>
+{
+
+    private final Digester digester;
+
+    private final String systemId;
+
+    private final Lock lock = new ReentrantLock();
+
+    /**
+     * Signalled whenever bytes are fed, the input ends, or the parse ends.
+     */
+    private final Condition changed = lock.newCondition();
+
+    /**
+     * The copies of the fed bytes not parsed yet, guarded by {@link #lock}.
+     */
+    private final Queue<ByteBuffer> pending = new ArrayDeque<ByteBuffer>();
+
+    /**
+     * The number of bytes of {@link #pending}, guarded by {@link #lock}.
+     */
+    private long bufferedBytes;
+
+    /**
+     * Whether all the bytes have been fed, guarded by {@link #lock}.
+     */
+    private boolean endOfInput;
+
+    /**
+     * Whether the session has been closed before the end of the input, guarded by {@link #lock}.
+     */
+    private boolean closed;
+
+    /**
+     * Whether the parse has been submitted to the executor service, guarded by {@link #lock}.
+     */
+    private boolean started;
+
+    /**
+     * The thread submitting the parse to the executor service while it does, guarded by {@link #lock}.
+     */
+    private Thread startingThread;
+
+    /**
+     * The thread running the parse, guarded by {@link #lock}.
+     */
+    private Thread parsingThread;
+
+    /**
+     * Whether the parse is over, guarded by {@link #lock}.
+     */
+    private boolean done;
+
+    /**
+     * The exception that made the parse fail, guarded by {@link #lock}.
+     */
+    private Exception failure;
+
+    /**
+     * The root object, guarded by {@link #lock}.
+     */
+    private T root;
+
+    DigesterSession( final Digester digester, final String systemId )
+    {
+        this.digester = digester;
+        this.systemId = systemId;
+    }
+
+    /**
+     * Feeds the next bytes of the document, which are parsed on the thread of the session. The bytes are copied, so
+     * the buffer is fully consumed when this method returns, and can be reused. This method never waits for the parse.
+     *
+     * @param bytes the next bytes of the document, from the position to the limit of the buffer
+     * @throws IOException if the session has been closed
+     * @throws SAXException if the bytes fed so far are not well-formed, or a rule failed
+     * @throws RejectedExecutionException if the executor service can't run the parse on another thread
+     */
+    public void feed( final ByteBuffer bytes )
+        throws IOException, SAXException
+    {
+        if ( bytes == null )
+        {
+            throw new IllegalArgumentException( "Parameter 'bytes' must be not null" );
+        }
+
+        lock.lock();
+        try
+        {
+            if ( endOfInput )
+            {
+                throw new IllegalStateException( "End of input already signalled" );
+            }
+            checkOpen();
+            checkFailure();
+            if ( !bytes.hasRemaining() )
+            {
+                return;
+            }
+
+            final ByteBuffer copy = ByteBuffer.allocate( bytes.remaining() );
+            copy.put( bytes ).flip();
+            pending.add( copy );
+            bufferedBytes += copy.remaining();
+            changed.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        start();
+    }
+
+    /**
+     * Signals that the whole document has been fed, and waits for the parse of the bytes fed so far to complete.
+     *
+     * @return the root element from the object stack (if any)
+     * @throws IOException if the session has been closed, or the thread is interrupted while completing the parse
+     * @throws SAXException if the document is not well-formed or incomplete, or a rule fails
+     * @throws RejectedExecutionException if the executor service can't run the parse on another thread
+     */
+    public T endOfInput()
+        throws IOException, SAXException
+    {
+        lock.lock();
+        try
+        {
+            checkOpen();
+            endOfInput = true;
+            changed.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        start();
+
+        lock.lock();
+        try
+        {
+            while ( !done )
+            {
+                try
+                {
+                    changed.await();
+                }
+                catch ( final InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException( "Interrupted while completing the parse" );
+                }
+            }
+            checkFailure();
+            return root;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of bytes fed but not parsed yet.
+     *
+     * @return the number of bytes fed but not parsed yet
+     */
+    public long getBufferedBytes()
+    {
+        lock.lock();
+        try
+        {
+            return bufferedBytes;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Aborts the parse, unless the whole document has already been fed, and waits for the parsing thread to be done
+     * with the Digester. The bytes not parsed yet are dropped, the parsing thread fails as soon as it needs more bytes,
+     * and the Digester must be reset before being reused. If the thread calling this method is interrupted, it returns
+     * without waiting, keeping the interrupted status.
+     */
+    public void close()
+    {
+        lock.lock();
+        try
+        {
+            if ( !endOfInput )
+            {
+                closed = true;
+                pending.clear();
+                bufferedBytes = 0;
+                changed.signalAll();
+            }
+            if ( Thread.currentThread() == parsingThread )
+            {
+                // called by a rule, the parse ends when the rule returns
+                return;
+            }
+            while ( started && !done )
+            {
+                changed.await();
+            }
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private void checkOpen()
+        throws IOException
+    {
+        if ( closed )
+        {
+            throw new IOException( "Session closed" );
+        }
+    }
+
+    private void checkFailure()
+        throws IOException, SAXException
+    {
+        if ( failure instanceof IOException )
+        {
+            throw (IOException) failure;
+        }
+        if ( failure instanceof SAXException )
+        {
+            throw (SAXException) failure;
+        }
+        if ( failure instanceof RuntimeException )
+        {
+            throw (RuntimeException) failure;
+        }
+    }
+
+    /**
+     * Submits the parse to the executor service, the first time only, without waiting for it to start.
+     */
+    private void start()
+    {
+        lock.lock();
+        try
+        {
+            if ( started )
+            {
+                return;
+            }
+            started = true;
+            startingThread = Thread.currentThread();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        RejectedExecutionException rejected = null;
+        try
+        {
+            digester.getLongRunningExecutorService().execute( new Parse() );
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            rejected = e;
+        }
+
+        lock.lock();
+        try
+        {
+            startingThread = null;
+            if ( rejected != null )
+            {
+                abandon( rejected );
+            }
+            if ( failure instanceof RejectedExecutionException )
+            {
+                throw (RejectedExecutionException) failure;
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ends the session before the parse has started: the parse task does nothing if it is run later.
+     */
+    private void abandon( final Exception cause )
+    {
+        failure = cause;
+        done = true;
+        pending.clear();
+        bufferedBytes = 0;
+        changed.signalAll();
+    }
+
+    /**
+     * Runs the parse, reading the fed bytes.
+     */
+    private final class Parse
+        implements Runnable
+    {
+
+        @Override
+        public void run()
+        {
+            lock.lock();
+            try
+            {
+                if ( done )
+                {
+                    // abandoned before it could start
+                    return;
+                }
+                if ( Thread.currentThread() == startingThread )
+                {
+                    // the parse would wait for bytes on the very thread that has to feed them
+                    abandon( new RejectedExecutionException( "The executor service ran the parse on the feeding "
+                        + "thread, it must run it on another thread" ) );
+                    return;
+                }
+                parsingThread = Thread.currentThread();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+
+            T parsed = null;
+            Exception parseFailure = null;
+            try
+            {
+                final InputSource input = new InputSource( new FedInputStream() );
+                input.setSystemId( systemId );
+                parsed = digester.<T> parse( input );
+            }
+            catch ( final Exception e )
+            {
+                parseFailure = e;
+            }
+
+            lock.lock();
+            try
+            {
+                root = parsed;
+                failure = parseFailure;
+                parsingThread = null;
+                done = true;
+                pending.clear();
+                bufferedBytes = 0;
+                changed.signalAll();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+    }
+
+    /**
+     * The stream the parser reads the fed bytes from, waiting for the next ones whenever they have all been read.
+     */
+    private final class FedInputStream
+        extends InputStream
+    {
+
+        @Override
+        public int read()
+            throws IOException
+        {
+            final byte[] b = new byte[1];
+            return read( b, 0, 1 ) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read( final byte[] b, final int off, final int len )
+            throws IOException
+        {
+            if ( len == 0 )
+            {
+                return 0;
+            }
+
+            lock.lock();
+            try
+            {
+                while ( pending.isEmpty() )
+                {
+                    if ( endOfInput )
+                    {
+                        return -1;
+                    }
+                    if ( closed )
+                    {
+                        throw new IOException( "Session closed" );
+                    }
+                    try
+                    {
+                        changed.await();
+                    }
+                    catch ( final InterruptedException e )
+                    {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException( "Interrupted while waiting for the next bytes" );
+                    }
+                }
+
+                final ByteBuffer chunk = pending.peek();
+                final int read = Math.min( len, chunk.remaining() );
+                chunk.get( b, off, read );
+                if ( !chunk.hasRemaining() )
+                {
+                    pending.remove();
+                }
+                bufferedBytes -= read;
+                return read;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+    }
+
+}
@@ -20,12 +20,14 @@ package org.apache.commons.digester3;
  */
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.xml.sax.Attributes;
 
@@ -158,6 +160,45 @@ public class ExtendedBaseRules
      */
     private final Map<Rule, Integer> order = new HashMap<Rule, Integer>();
 
+    /**
+     * Orders the matched rules by entry number.
+     */
+    private final Comparator<Rule> entryOrder = new Comparator<Rule>()
+    {
+
+        @Override
+        public int compare( final Rule r1, final Rule r2 )
+        {
+            // Get the entry order from the map
+            final Integer i1 = order.get( r1 );
+            final Integer i2 = order.get( r2 );
+
+            // and use that to perform the comparison
+            if ( i1 == null )
+            {
+                if ( i2 == null )
+                {
+
+                    return 0;
+
+                }
+                return -1;
+            }
+            else if ( i2 == null )
+            {
+                return 1;
+            }
+
+            return ( i1.intValue() - i2.intValue() );
+        }
+    };
+
+    /**
+     * The wildcard patterns, indexed by the part of the element pattern they can match, or null if patterns have been
+     * registered since the index was built.
+     */
+    private WildcardIndex wildcardIndex;
+
     // --------------------------------------------------------- Public Methods
 
     /**
@@ -169,6 +210,17 @@ public class ExtendedBaseRules
         super.registerRule( pattern, rule );
         counter++;
         order.put( rule, counter );
+        wildcardIndex = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear()
+    {
+        super.clear();
+        wildcardIndex = null;
     }
 
     /**
@@ -195,7 +247,7 @@ public class ExtendedBaseRules
         }
 
         // we keep the list of universal matches separate
-        final List<Rule> universalList = new ArrayList<Rule>( counter );
+        final List<Rule> universalList = new ArrayList<Rule>();
 
         // Universal wildcards ('*') in the middle of the pattern-string
         List<Rule> recList = null;
@@ -290,123 +342,75 @@ public class ExtendedBaseRules
         // OK - we're ready for the big loop!
         // Unlike the basic rules case,
         // we have to go through for all those universal rules in all cases.
+        // Only the wildcard patterns which can match, looked up from the parts of the pattern, are tested.
+
+        if ( wildcardIndex == null )
+        {
+            wildcardIndex = new WildcardIndex( this.cache.keySet() );
+        }
 
         // Find the longest key, ie more discriminant
         int longKeyLength = 0;
+        String longKey = null;
 
-        for ( String key : this.cache.keySet() )
+        for ( final String candidate : wildcardIndex.candidates( pattern, lastIndex ) )
         {
 
             // find out if it's a univeral pattern
             // set a flag
-            final boolean isUniversal = key.startsWith( "!" );
-            if ( isUniversal )
-            {
-                // and find the underlying key
-                key = key.substring( 1, key.length() );
-            }
+            final boolean isUniversal = candidate.startsWith( "!" );
+            // and find the underlying key
+            final String key = isUniversal ? candidate.substring( 1 ) : candidate;
 
-            // don't need to check exact matches
             final boolean wildcardMatchStart = key.startsWith( "*/" );
             final boolean wildcardMatchEnd = key.endsWith( "/*" );
-            if ( wildcardMatchStart || ( isUniversal && wildcardMatchEnd ) )
-            {
-
-                boolean parentMatched = false;
-                boolean basicMatched = false;
-                boolean ancesterMatched = false;
+            final boolean parentMatchEnd = key.endsWith( "/?" );
 
-                final boolean parentMatchEnd = key.endsWith( "/?" );
-                if ( parentMatchEnd )
+            if ( wildcardMatches( key, wildcardMatchStart, wildcardMatchEnd, parentMatchEnd, pattern, parentPattern ) )
+            {
+                if ( isUniversal )
                 {
-                    // try for a parent match
-                    parentMatched = parentMatch( key, parentPattern );
+                    // universal rules go straight in
+                    // (no longest matching rule)
+                    tempList = this.cache.get( candidate );
+                    if ( tempList != null )
+                    {
+                        universalList.addAll( tempList );
+                    }
 
                 }
-                else if ( wildcardMatchEnd )
+                else
                 {
-                    // check for ancester match
-                    if ( wildcardMatchStart )
+                    if ( !ignoreBasicMatches )
                     {
-                        final String patternBody = key.substring( 2, key.length() - 2 );
-                        if ( pattern.endsWith( patternBody ) )
+                        // ensure that all parent matches are SHORTER
+                        // than rules with same level of matching.
+                        //
+                        // the calculations below don't work for universal
+                        // matching, but we don't care because in that case
+                        // this if-stmt is not entered.
+                        int keyLength = key.length();
+                        if ( wildcardMatchStart )
                         {
-                            ancesterMatched = true;
+                            --keyLength;
                         }
-                        else
+                        if ( wildcardMatchEnd )
                         {
-                            ancesterMatched = ( pattern.indexOf( patternBody + "/" ) > -1 );
+                            --keyLength;
                         }
-                    }
-                    else
-                    {
-                        final String bodyPattern = key.substring( 0, key.length() - 2 );
-                        if ( pattern.startsWith( bodyPattern ) )
+                        else if ( parentMatchEnd )
                         {
-                            if ( pattern.length() == bodyPattern.length() )
-                            {
-                                // exact match
-                                ancesterMatched = true;
-                            }
-                            else
-                            {
-                                ancesterMatched = ( pattern.charAt( bodyPattern.length() ) == '/' );
-                            }
+                            --keyLength;
                         }
-                        else
-                        {
-                            ancesterMatched = false;
-                        }
-                    }
-                }
-                else
-                {
-                    // try for a base match
-                    basicMatched = basicMatch( key, pattern );
-                }
 
-                if ( parentMatched || basicMatched || ancesterMatched )
-                {
-                    if ( isUniversal )
-                    {
-                        // universal rules go straight in
-                        // (no longest matching rule)
-                        tempList = this.cache.get( "!" + key );
-                        if ( tempList != null )
+                        // among patterns as long, keep the first one of the whole set of patterns
+                        if ( keyLength > longKeyLength
+                            || ( keyLength == longKeyLength && keyLength > 0
+                                && wildcardIndex.rank( key ) < wildcardIndex.rank( longKey ) ) )
                         {
-                            universalList.addAll( tempList );
-                        }
-
-                    }
-                    else
-                    {
-                        if ( !ignoreBasicMatches )
-                        {
-                            // ensure that all parent matches are SHORTER
-                            // than rules with same level of matching.
-                            //
-                            // the calculations below don't work for universal
-                            // matching, but we don't care because in that case
-                            // this if-stmt is not entered.
-                            int keyLength = key.length();
-                            if ( wildcardMatchStart )
-                            {
-                                --keyLength;
-                            }
-                            if ( wildcardMatchEnd )
-                            {
-                                --keyLength;
-                            }
-                            else if ( parentMatchEnd )
-                            {
-                                --keyLength;
-                            }
-
-                            if ( keyLength > longKeyLength )
-                            {
-                                rulesList = this.cache.get( key );
-                                longKeyLength = keyLength;
-                            }
+                            rulesList = this.cache.get( key );
+                            longKeyLength = keyLength;
+                            longKey = key;
                         }
                     }
                 }
@@ -442,39 +446,65 @@ public class ExtendedBaseRules
             }
         }
 
+        if ( universalList.isEmpty() )
+        {
+            return Collections.emptyList();
+        }
+
         // need to make sure that the collection is sort in the order
         // of addition. We use a custom comparator for this
-        Collections.sort( universalList, new Comparator<Rule>()
-        {
+        Collections.sort( universalList, entryOrder );
 
-            @Override
-            public int compare( final Rule r1, final Rule r2 )
-            {
-                // Get the entry order from the map
-                final Integer i1 = order.get( r1 );
-                final Integer i2 = order.get( r2 );
+        return universalList;
+    }
 
-                // and use that to perform the comparison
-                if ( i1 == null )
+    /**
+     * Checks if a pattern starting with <code>*&#47;</code>, or a universal pattern ending with <code>/*</code>,
+     * matches the element.
+     *
+     * @param key The pattern, without the universal prefix
+     * @param wildcardMatchStart Whether the pattern starts with <code>*&#47;</code>
+     * @param wildcardMatchEnd Whether the pattern ends with <code>/*</code>
+     * @param parentMatchEnd Whether the pattern ends with <code>/?</code>
+     * @param pattern The element pattern
+     * @param parentPattern The pattern of the parent element
+     * @return true, if the pattern matches the element
+     */
+    private boolean wildcardMatches( final String key, final boolean wildcardMatchStart,
+                                     final boolean wildcardMatchEnd, final boolean parentMatchEnd,
+                                     final String pattern, final String parentPattern )
+    {
+        if ( parentMatchEnd )
+        {
+            // try for a parent match
+            return parentMatch( key, parentPattern );
+        }
+        if ( wildcardMatchEnd )
+        {
+            // check for ancester match
+            if ( wildcardMatchStart )
+            {
+                final String patternBody = key.substring( 2, key.length() - 2 );
+                if ( pattern.endsWith( patternBody ) )
                 {
-                    if ( i2 == null )
-                    {
-
-                        return 0;
-
-                    }
-                    return -1;
+                    return true;
                 }
-                else if ( i2 == null )
+                return ( pattern.indexOf( patternBody + "/" ) > -1 );
+            }
+            final String bodyPattern = key.substring( 0, key.length() - 2 );
+            if ( pattern.startsWith( bodyPattern ) )
+            {
+                if ( pattern.length() == bodyPattern.length() )
                 {
-                    return 1;
+                    // exact match
+                    return true;
                 }
-
-                return ( i1.intValue() - i2.intValue() );
+                return ( pattern.charAt( bodyPattern.length() ) == '/' );
             }
-        } );
-
-        return universalList;
+            return false;
+        }
+        // try for a base match
+        return basicMatch( key, pattern );
     }
 
     /**
@@ -526,4 +556,191 @@ public class ExtendedBaseRules
         return null;
     }
 
+    /**
+     * The patterns tested against every element, that is the patterns starting with <code>*&#47;</code> and the
+     * universal patterns ending with <code>/*</code>, indexed by the part of an element pattern they can match, so that
+     * the candidate patterns of an element are found with a number of lookups depending on its depth rather than on
+     * the number of registered patterns. The candidates still have to be tested.
+     */
+    private static final class WildcardIndex
+    {
+
+        /** The <code>*&#47;a/b</code> patterns, keyed by <code>a/b</code>, a suffix of the element pattern. */
+        private final Map<String, List<String>> suffixes = new HashMap<String, List<String>>();
+
+        /** The <code>*&#47;a/b/?</code> patterns, keyed by <code>a/b</code>, a suffix of the parent pattern. */
+        private final Map<String, List<String>> parentSuffixes = new HashMap<String, List<String>>();
+
+        /** The <code>!a/b/*</code> patterns, keyed by <code>a/b</code>, a prefix of the element pattern. */
+        private final Map<String, List<String>> prefixes = new HashMap<String, List<String>>();
+
+        /**
+         * The <code>*&#47;a/b/*</code> patterns, keyed by <code>b</code>, an element of the pattern, since
+         * <code>a</code> only has to be the end of an element name.
+         */
+        private final Map<String, List<String>> lastNames = new HashMap<String, List<String>>();
+
+        /** The <code>*&#47;a/*</code> patterns, keyed by <code>a</code>, the end of an element name. */
+        private final Map<String, List<String>> nameEnds = new HashMap<String, List<String>>();
+
+        /** The lengths of the keys of {@link #nameEnds}. */
+        private final BitSet nameEndLengths = new BitSet();
+
+        /** The patterns which cannot be indexed, tested against every element. */
+        private final List<String> unindexed = new ArrayList<String>();
+
+        /** The position of the patterns in the set they have been indexed from. */
+        private final Map<String, Integer> ranks = new HashMap<String, Integer>();
+
+        WildcardIndex( final Set<String> patterns )
+        {
+            for ( final String pattern : patterns )
+            {
+                ranks.put( pattern, ranks.size() );
+                final boolean isUniversal = pattern.startsWith( "!" );
+                final String key = isUniversal ? pattern.substring( 1 ) : pattern;
+                final boolean wildcardMatchStart = key.startsWith( "*/" );
+                final boolean wildcardMatchEnd = key.endsWith( "/*" );
+                if ( !wildcardMatchStart && !( isUniversal && wildcardMatchEnd ) )
+                {
+                    // looked up directly, or not a valid pattern
+                    continue;
+                }
+
+                if ( key.endsWith( "/?" ) )
+                {
+                    index( parentSuffixes, key.length() > 4 ? key.substring( 2, key.length() - 2 ) : null, pattern );
+                }
+                else if ( wildcardMatchEnd && wildcardMatchStart )
+                {
+                    final String body = key.length() > 4 ? key.substring( 2, key.length() - 2 ) : "";
+                    final int lastSlash = body.lastIndexOf( '/' );
+                    if ( lastSlash == -1 )
+                    {
+                        if ( index( nameEnds, body.length() > 0 ? body : null, pattern ) )
+                        {
+                            nameEndLengths.set( body.length() );
+                        }
+                    }
+                    else
+                    {
+                        final String lastName = body.substring( lastSlash + 1 );
+                        index( lastNames, lastName.length() > 0 ? lastName : null, pattern );
+                    }
+                }
+                else if ( wildcardMatchEnd )
+                {
+                    index( prefixes, key.substring( 0, key.length() - 2 ), pattern );
+                }
+                else
+                {
+                    index( suffixes, key.substring( 2 ), pattern );
+                }
+            }
+        }
+
+        /**
+         * Returns the position of a pattern in the set it has been indexed from.
+         *
+         * @param pattern The indexed pattern
+         * @return the position of the pattern
+         */
+        int rank( final String pattern )
+        {
+            return ranks.get( pattern ).intValue();
+        }
+
+        private boolean index( final Map<String, List<String>> index, final String part, final String pattern )
+        {
+            if ( part == null )
+            {
+                unindexed.add( pattern );
+                return false;
+            }
+            List<String> patterns = index.get( part );
+            if ( patterns == null )
+            {
+                patterns = new ArrayList<String>( 1 );
+                index.put( part, patterns );
+            }
+            patterns.add( pattern );
+            return true;
+        }
+
+        /**
+         * Returns the patterns which may match the given element pattern, each of them once.
+         *
+         * @param pattern The element pattern
+         * @param lastIndex The position of the last '/' in the element pattern, -1 if none
+         * @return the patterns which may match the given element pattern
+         */
+        List<String> candidates( final String pattern, final int lastIndex )
+        {
+            final List<String> candidates = new ArrayList<String>( unindexed );
+
+            // the element pattern itself is a suffix and a prefix of the element pattern
+            addAll( candidates, suffixes.get( pattern ) );
+            addAll( candidates, prefixes.get( pattern ) );
+
+            int nameStart = 0;
+            while ( nameStart <= pattern.length() )
+            {
+                int nameEnd = pattern.indexOf( '/', nameStart );
+                if ( nameEnd == -1 )
+                {
+                    nameEnd = pattern.length();
+                }
+                else
+                {
+                    addAll( candidates, suffixes.get( pattern.substring( nameEnd + 1 ) ) );
+                    addAll( candidates, prefixes.get( pattern.substring( 0, nameEnd ) ) );
+                    if ( nameEnd < lastIndex )
+                    {
+                        addAll( candidates, parentSuffixes.get( pattern.substring( nameEnd + 1, lastIndex ) ) );
+                    }
+                }
+
+                if ( !lastNames.isEmpty() )
+                {
+                    addAllOnce( candidates, lastNames.get( pattern.substring( nameStart, nameEnd ) ) );
+                }
+                for ( int length = nameEndLengths.nextSetBit( 1 ); length != -1 && length <= nameEnd - nameStart;
+                      length = nameEndLengths.nextSetBit( length + 1 ) )
+                {
+                    addAllOnce( candidates, nameEnds.get( pattern.substring( nameEnd - length, nameEnd ) ) );
+                }
+
+                nameStart = nameEnd + 1;
+            }
+            return candidates;
+        }
+
+        private static void addAll( final List<String> candidates, final List<String> patterns )
+        {
+            if ( patterns != null )
+            {
+                candidates.addAll( patterns );
+            }
+        }
+
+        /**
+         * Adds patterns which may be found more than once, the same element name appearing several times in the
+         * element pattern.
+         */
+        private static void addAllOnce( final List<String> candidates, final List<String> patterns )
+        {
+            if ( patterns != null )
+            {
+                for ( final String pattern : patterns )
+                {
+                    if ( !candidates.contains( pattern ) )
+                    {
+                        candidates.add( pattern );
+                    }
+                }
+            }
+        }
+
+    }
+
 }
@@ -0,0 +1,53 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * <code>Rules</code> implementations whose matching policy can be evaluated one element at a time. The
+ * <code>Digester</code> keeps the {@link MatchState} reached for every open element and advances it by the name of each
+ * nested element, instead of calling {@link Rules#match(String, String, String, org.xml.sax.Attributes)} with the
+ * full nesting pattern.
+ *
+ * @since 3.3
+ */
+public interface IncrementalRules
+    extends Rules
+{
+
+    /**
+     * Return the state that precedes the document element, i.e. the parent state of the states reached for root
+     * elements.
+     *
+     * @return the state that precedes the document element
+     */
+    MatchState getRootState();
+
+    /**
+     * Advances the given state by one nested element.
+     *
+     * @param parent the state reached for the parent element
+     * @param name the element name, as used to build nesting patterns
+     * @return the state reached for the nested element, or <code>null</code> if the parent state has not been created
+     *         by the current configuration of this instance (for example because rules have been added since), in which
+     *         case the caller has to fall back to {@link Rules#match(String, String, String, org.xml.sax.Attributes)}
+     */
+    MatchState getChildState( MatchState parent, String name );
+
+}
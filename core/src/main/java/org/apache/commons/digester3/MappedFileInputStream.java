@@ -0,0 +1,188 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * An input stream reading a file through read-only memory mappings of its channel, so that the parser copies the bytes
+ * straight from the page cache, without read system calls nor intermediate buffers. Files larger than a mapping
+ * window are mapped one window at a time.
+ *
+ * @since 3.3
+ */
+final class MappedFileInputStream
+    extends InputStream
+{
+
+    /**
+     * The default size of the mapping windows, in bytes.
+     */
+    private static final long DEFAULT_WINDOW_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+
+    private final long windowSize;
+
+    private final long size;
+
+    /**
+     * The position, in the file, of the current window.
+     */
+    private long windowPosition;
+
+    private MappedByteBuffer window;
+
+    /**
+     * Creates a new input stream reading the given channel from its start.
+     *
+     * @param channel the channel of the file to read, closed with this stream
+     * @throws IOException if the size of the file cannot be read
+     */
+    MappedFileInputStream( final FileChannel channel )
+        throws IOException
+    {
+        this( channel, DEFAULT_WINDOW_SIZE );
+    }
+
+    /**
+     * Creates a new input stream reading the given channel from its start, through windows of the given size.
+     *
+     * @param channel the channel of the file to read, closed with this stream
+     * @param windowSize the size of the mapping windows, in bytes
+     * @throws IOException if the size of the file cannot be read
+     */
+    MappedFileInputStream( final FileChannel channel, final long windowSize )
+        throws IOException
+    {
+        this.channel = channel;
+        this.windowSize = windowSize;
+        this.size = channel.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read()
+        throws IOException
+    {
+        if ( !hasRemaining() )
+        {
+            return -1;
+        }
+        return window.get() & 0xFF;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read( final byte[] b, final int off, final int len )
+        throws IOException
+    {
+        if ( off < 0 || len < 0 || len > b.length - off )
+        {
+            throw new IndexOutOfBoundsException();
+        }
+        if ( len == 0 )
+        {
+            return 0;
+        }
+        if ( !hasRemaining() )
+        {
+            return -1;
+        }
+        final int read = Math.min( len, window.remaining() );
+        window.get( b, off, read );
+        return read;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long skip( final long n )
+        throws IOException
+    {
+        if ( n <= 0 || !hasRemaining() )
+        {
+            return 0;
+        }
+        final int skipped = (int) Math.min( n, window.remaining() );
+        window.position( window.position() + skipped );
+        return skipped;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int available()
+        throws IOException
+    {
+        if ( window == null )
+        {
+            return (int) Math.min( size, Integer.MAX_VALUE );
+        }
+        return (int) Math.min( size - windowPosition - window.position(), Integer.MAX_VALUE );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close()
+        throws IOException
+    {
+        // the mapping is released once the buffer is garbage collected
+        window = null;
+        channel.close();
+    }
+
+    /**
+     * Makes sure the current window has bytes left, mapping the next one if needed.
+     *
+     * @return true, if there are bytes left to read
+     * @throws IOException if the next window cannot be mapped
+     */
+    private boolean hasRemaining()
+        throws IOException
+    {
+        if ( window != null && window.hasRemaining() )
+        {
+            return true;
+        }
+
+        final long next = window == null ? 0 : windowPosition + window.capacity();
+        if ( next >= size )
+        {
+            return false;
+        }
+        window = channel.map( MapMode.READ_ONLY, next, Math.min( windowSize, size - next ) );
+        windowPosition = next;
+        return true;
+    }
+
+}
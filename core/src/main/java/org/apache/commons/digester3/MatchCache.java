@@ -0,0 +1,152 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, thread-safe cache of the rules matched by the elements, keyed by whatever the match depends on. Once the
+ * cache is full, every new entry evicts an arbitrary older one: the distinct paths of a document are usually few, so
+ * the bound only protects from documents with unbounded sets of paths.
+ *
+ * @param <K> the type of the keys
+ * @since 3.3
+ */
+final class MatchCache<K>
+{
+
+    private final int maxSize;
+
+    private final ConcurrentMap<K, List<Rule>> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a new cache holding at most the given number of entries.
+     *
+     * @param maxSize the maximum number of entries, strictly positive
+     */
+    MatchCache( final int maxSize )
+    {
+        this.maxSize = maxSize;
+        this.entries = new ConcurrentHashMap<K, List<Rule>>( Math.min( maxSize, 256 ) );
+    }
+
+    /**
+     * Returns the maximum number of entries.
+     *
+     * @return the maximum number of entries
+     */
+    int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * Returns the rules cached for the given key, counting a hit or a miss.
+     *
+     * @param key the key
+     * @return the cached rules, or null
+     */
+    List<Rule> get( final K key )
+    {
+        final List<Rule> rules = entries.get( key );
+        ( rules != null ? hits : misses ).incrementAndGet();
+        return rules;
+    }
+
+    /**
+     * Caches the rules matched for the given key, evicting an older entry if the cache is full.
+     *
+     * @param key the key
+     * @param rules the matched rules, which must not be modified afterwards
+     */
+    void put( final K key, final List<Rule> rules )
+    {
+        if ( entries.size() >= maxSize )
+        {
+            final Iterator<K> keys = entries.keySet().iterator();
+            if ( keys.hasNext() )
+            {
+                keys.next();
+                keys.remove();
+                evictions.incrementAndGet();
+            }
+        }
+        entries.put( key, rules );
+    }
+
+    /**
+     * Drops all the entries, keeping the statistics.
+     */
+    void clear()
+    {
+        entries.clear();
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return the number of entries
+     */
+    int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of lookups answered by the cache.
+     *
+     * @return the number of lookups answered by the cache
+     */
+    long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups not answered by the cache.
+     *
+     * @return the number of lookups not answered by the cache
+     */
+    long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of entries evicted to make room for new ones.
+     *
+     * @return the number of evicted entries
+     */
+    long getEvictions()
+    {
+        return evictions.get();
+    }
+
+}
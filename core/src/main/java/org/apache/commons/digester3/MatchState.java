@@ -0,0 +1,58 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.List;
+
+import org.xml.sax.Attributes;
+
+/**
+ * A position reached while walking the element nesting of a document through an {@link IncrementalRules}
+ * implementation. Each state stands for a whole nesting pattern, so the rules matching an element can be selected
+ * without building or scanning the pattern string.
+ *
+ * @since 3.3
+ */
+public interface MatchState
+{
+
+    /**
+     * Return a List of all registered Rule instances that match the element this state has been reached for, or a
+     * zero-length List if there are no matches. The matching policy of the <code>Rules</code> implementation that
+     * created this state applies.
+     *
+     * @param namespaceURI Namespace URI for which to select matching rules, or <code>null</code> to match regardless of
+     *            namespace URI
+     * @param name the local name if the parser is namespace aware, or just the element name otherwise
+     * @param attributes The attribute list of the current matching element
+     * @return a List of all registered Rule instances that match this state
+     */
+    List<Rule> match( String namespaceURI, String name, Attributes attributes );
+
+    /**
+     * Tells whether any element nested, at any depth, in the element this state has been reached for may be matched by
+     * a registered rule. When none can, the <code>Digester</code> skips the whole subtree of the element, unless a rule
+     * has taken control of the SAX events.
+     *
+     * @return false if no element nested in the element this state has been reached for can be matched
+     */
+    boolean canMatchDescendants();
+
+}
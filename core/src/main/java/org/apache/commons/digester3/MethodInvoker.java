@@ -0,0 +1,299 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.apache.commons.beanutils.MethodUtils.getAccessibleMethod;
+import static org.apache.commons.beanutils.MethodUtils.getMatchingAccessibleMethod;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * A method resolved once, through the same <code>MethodUtils</code> lookups the rules used to perform on every call,
+ * for a given target class and parameter types, and invoked through a {@link MethodHandle}.
+ *
+ * Instances are immutable, so rules can cache them in a plain field and check with
+ * {@link #isFor(Class, String, Class[], boolean)} whether the cached invoker still applies to the current call.
+ *
+ * @since 3.3
+ */
+final class MethodInvoker
+{
+
+    /**
+     * The generic type every handle is adapted to: the target, then the spread arguments.
+     */
+    private static final MethodType INVOKER_TYPE = MethodType.methodType( Object.class, Object.class, Object[].class );
+
+    private final Class<?> targetType;
+
+    private final String methodName;
+
+    private final Class<?>[] paramTypes;
+
+    private final boolean exact;
+
+    private final Method method;
+
+    private final MethodHandle handle;
+
+    private MethodInvoker( final Class<?> targetType, final String methodName, final Class<?>[] paramTypes,
+                           final boolean exact, final Method method )
+    {
+        this.targetType = targetType;
+        this.methodName = methodName;
+        this.paramTypes = paramTypes;
+        this.exact = exact;
+        this.method = method;
+        this.handle = toHandle( method );
+    }
+
+    /**
+     * Wraps an already resolved, accessible method.
+     *
+     * @param method the method to invoke
+     * @return the invoker of the given method
+     */
+    static MethodInvoker of( final Method method )
+    {
+        return new MethodInvoker( method.getDeclaringClass(), method.getName(), method.getParameterTypes(), true,
+                                  method );
+    }
+
+    /**
+     * Resolves the named method of the given class.
+     *
+     * @param targetType the class of the objects the method will be invoked on
+     * @param methodName the method name
+     * @param paramTypes the parameter types the method is looked up with
+     * @param exact true to look for a method with exactly the given parameter types, as
+     *            <code>MethodUtils.invokeExactMethod</code> does, false to accept compatible ones, as
+     *            <code>MethodUtils.invokeMethod</code> does
+     * @return the resolved invoker
+     * @throws NoSuchMethodException if there is no such accessible method
+     */
+    static MethodInvoker resolve( final Class<?> targetType, final String methodName, final Class<?>[] paramTypes,
+                                  final boolean exact )
+        throws NoSuchMethodException
+    {
+        final Method method;
+        if ( exact )
+        {
+            method = getAccessibleMethod( targetType, methodName, paramTypes );
+        }
+        else
+        {
+            method = getMatchingAccessibleMethod( targetType, methodName, paramTypes );
+        }
+        if ( method == null )
+        {
+            throw new NoSuchMethodException( "No such accessible method: " + methodName + "() on object: "
+                + targetType.getName() );
+        }
+
+        return new MethodInvoker( targetType, methodName, paramTypes, exact, method );
+    }
+
+    /**
+     * Checks if this invoker has been resolved with the given arguments.
+     *
+     * @param targetType the class of the target object
+     * @param methodName the method name
+     * @param paramTypes the parameter types the method is looked up with, compared by identity
+     * @param exact the lookup mode
+     * @return true, if this invoker can be used in place of a new resolution with the given arguments
+     */
+    boolean isFor( final Class<?> targetType, final String methodName, final Class<?>[] paramTypes,
+                   final boolean exact )
+    {
+        return this.targetType == targetType && this.paramTypes == paramTypes && this.exact == exact
+            && this.methodName.equals( methodName );
+    }
+
+    /**
+     * Adapts the given method to a handle of {@link #INVOKER_TYPE}.
+     *
+     * @param method the method to adapt
+     * @return the adapted handle, or <code>null</code> if the method is not accessible through a handle
+     */
+    private static MethodHandle toHandle( final Method method )
+    {
+        try
+        {
+            MethodHandle handle = MethodHandles.publicLookup().unreflect( method );
+            if ( Modifier.isStatic( method.getModifiers() ) )
+            {
+                // static methods are invoked on the target too, which is simply dropped
+                handle = MethodHandles.dropArguments( handle, 0, Object.class );
+            }
+            return handle.asSpreader( Object[].class, method.getParameterTypes().length ).asType( INVOKER_TYPE );
+        }
+        catch ( final IllegalAccessException e )
+        {
+            // not reachable through a handle, fall back to reflection
+            return null;
+        }
+    }
+
+    /**
+     * Invokes the method, reporting the same failures as <code>Method.invoke</code> does.
+     *
+     * @param target the object the method is invoked on
+     * @param args the method arguments
+     * @return the value returned by the method, <code>null</code> for void methods
+     * @throws IllegalAccessException if the method is not accessible
+     * @throws IllegalArgumentException if the target is not an instance of the class declaring the method, or the
+     *             arguments do not match the method parameters
+     * @throws InvocationTargetException if the invoked method throws an exception
+     */
+    Object invoke( final Object target, final Object[] args )
+        throws IllegalAccessException, InvocationTargetException
+    {
+        if ( handle == null )
+        {
+            return method.invoke( target, args );
+        }
+        try
+        {
+            return (Object) handle.invokeExact( target, args );
+        }
+        catch ( final ClassCastException e )
+        {
+            checkArguments( target, args );
+            throw new InvocationTargetException( e );
+        }
+        catch ( final NullPointerException e )
+        {
+            checkArguments( target, args );
+            throw new InvocationTargetException( e );
+        }
+        catch ( final IllegalArgumentException e )
+        {
+            checkArguments( target, args );
+            throw new InvocationTargetException( e );
+        }
+        catch ( final Throwable t )
+        {
+            throw new InvocationTargetException( t );
+        }
+    }
+
+    /**
+     * Tells apart the failures of the handle adapting the target and the arguments, which <code>Method.invoke</code>
+     * reports directly, from the ones thrown by the method itself. Only called once the invocation has failed, so that
+     * successful invocations are not checked twice.
+     *
+     * @param target the object the method has been invoked on
+     * @param args the method arguments
+     */
+    private void checkArguments( final Object target, final Object[] args )
+    {
+        if ( !Modifier.isStatic( method.getModifiers() ) )
+        {
+            if ( target == null )
+            {
+                throw new NullPointerException( "Cannot invoke " + method + " on a null target" );
+            }
+            if ( !method.getDeclaringClass().isInstance( target ) )
+            {
+                throw new IllegalArgumentException( "object is not an instance of declaring class" );
+            }
+        }
+        final Class<?>[] parameterTypes = method.getParameterTypes();
+        final int length = args == null ? 0 : args.length;
+        if ( length != parameterTypes.length )
+        {
+            throw new IllegalArgumentException( "wrong number of arguments" );
+        }
+        for ( int i = 0; i < length; i++ )
+        {
+            if ( !isAssignable( parameterTypes[i], args[i] ) )
+            {
+                throw new IllegalArgumentException( "argument type mismatch" );
+            }
+        }
+    }
+
+    /**
+     * Checks if the given argument can be passed to a parameter of the given type, unwrapping and widening primitive
+     * values as <code>Method.invoke</code> does.
+     *
+     * @param parameterType the parameter type
+     * @param arg the argument
+     * @return true, if the argument can be passed to the parameter
+     */
+    private static boolean isAssignable( final Class<?> parameterType, final Object arg )
+    {
+        if ( !parameterType.isPrimitive() )
+        {
+            return arg == null || parameterType.isInstance( arg );
+        }
+        if ( arg == null )
+        {
+            return false;
+        }
+        final Class<?> argType = arg.getClass();
+        if ( parameterType == boolean.class )
+        {
+            return argType == Boolean.class;
+        }
+        if ( parameterType == char.class )
+        {
+            return argType == Character.class;
+        }
+        // the widening primitive conversions, a char widening to int and wider types only
+        final int argWidth = argType == Character.class ? numericWidth( int.class ) : numericWidth( argType );
+        return argWidth >= 0 && argWidth <= numericWidth( parameterType );
+    }
+
+    private static int numericWidth( final Class<?> type )
+    {
+        if ( type == byte.class || type == Byte.class )
+        {
+            return 0;
+        }
+        if ( type == short.class || type == Short.class )
+        {
+            return 1;
+        }
+        if ( type == int.class || type == Integer.class )
+        {
+            return 2;
+        }
+        if ( type == long.class || type == Long.class )
+        {
+            return 3;
+        }
+        if ( type == float.class || type == Float.class )
+        {
+            return 4;
+        }
+        if ( type == double.class || type == Double.class )
+        {
+            return 5;
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,148 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static java.util.Collections.unmodifiableList;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The rules registered for one pattern, resolved once for every namespace URI they have been registered with, so that
+ * selecting the rules for the namespace URI of an element neither filters nor allocates.
+ *
+ * @since 3.3
+ */
+final class NamespacedRules
+{
+
+    /**
+     * The rules selected when no namespace URI is specified, in the order they were originally registered.
+     */
+    private final List<Rule> all;
+
+    /**
+     * The rules selected for a namespace URI none of the rules has been registered with, i.e. the rules matching
+     * regardless of the namespace URI.
+     */
+    private final List<Rule> unqualified;
+
+    /**
+     * The rules selected for each namespace URI at least one of the rules has been registered with.
+     */
+    private final Map<String, List<Rule>> qualified;
+
+    /**
+     * Resolves the given rules, registered for the same pattern.
+     *
+     * @param rules the rules registered for the pattern, in the order they were originally registered
+     */
+    NamespacedRules( final List<Rule> rules )
+    {
+        final Set<String> namespaceURIs = new LinkedHashSet<String>();
+        final List<Rule> unqualifiedRules = new ArrayList<Rule>();
+        for ( final Rule rule : rules )
+        {
+            if ( rule.getNamespaceURI() == null )
+            {
+                unqualifiedRules.add( rule );
+            }
+            else
+            {
+                namespaceURIs.add( rule.getNamespaceURI() );
+            }
+        }
+
+        this.all = unmodifiableList( new ArrayList<Rule>( rules ) );
+        this.unqualified = unmodifiableList( unqualifiedRules );
+        this.qualified = new HashMap<String, List<Rule>>();
+        for ( final String namespaceURI : namespaceURIs )
+        {
+            final List<Rule> selected = new ArrayList<Rule>();
+            for ( final Rule rule : rules )
+            {
+                if ( rule.getNamespaceURI() == null || namespaceURI.equals( rule.getNamespaceURI() ) )
+                {
+                    selected.add( rule );
+                }
+            }
+            this.qualified.put( namespaceURI, unmodifiableList( selected ) );
+        }
+    }
+
+    /**
+     * Resolves the rules to be selected for an element matching both an exact pattern and a tail pattern, following
+     * the {@link RulesBase} policy: the rules of the exact pattern are selected, unless none of them matches the
+     * namespace URI of the element, in which case the rules of the tail pattern are selected.
+     *
+     * @param exact the rules of the exact pattern, or <code>null</code> if there is no exact pattern
+     * @param tail the rules of the tail pattern, or <code>null</code> if there is no tail pattern
+     * @return the rules to be selected, or <code>null</code> if both patterns are missing
+     */
+    static NamespacedRules resolve( final NamespacedRules exact, final NamespacedRules tail )
+    {
+        if ( tail == null )
+        {
+            return exact;
+        }
+        if ( exact == null )
+        {
+            return tail;
+        }
+        return new NamespacedRules( exact, tail );
+    }
+
+    private NamespacedRules( final NamespacedRules exact, final NamespacedRules tail )
+    {
+        this.all = exact.all.isEmpty() ? tail.all : exact.all;
+        this.unqualified = exact.unqualified.isEmpty() ? tail.unqualified : exact.unqualified;
+        this.qualified = new HashMap<String, List<Rule>>();
+        final Set<String> namespaceURIs = new LinkedHashSet<String>( exact.qualified.keySet() );
+        namespaceURIs.addAll( tail.qualified.keySet() );
+        for ( final String namespaceURI : namespaceURIs )
+        {
+            final List<Rule> selected = exact.select( namespaceURI );
+            this.qualified.put( namespaceURI, selected.isEmpty() ? tail.select( namespaceURI ) : selected );
+        }
+    }
+
+    /**
+     * Return the rules that match the specified namespace URI, i.e. the rules registered with that namespace URI or
+     * with no namespace URI at all, in the order they were originally registered.
+     *
+     * @param namespaceURI Namespace URI to match, or <code>null</code> to select matching rules regardless of namespace
+     *            URI
+     * @return the unmodifiable list of the rules that match the specified namespace URI
+     */
+    List<Rule> select( final String namespaceURI )
+    {
+        if ( namespaceURI == null || namespaceURI.isEmpty() )
+        {
+            return all;
+        }
+        final List<Rule> selected = qualified.get( namespaceURI );
+        return selected != null ? selected : unqualified;
+    }
+
+}
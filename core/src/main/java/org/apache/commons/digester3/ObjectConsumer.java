@@ -0,0 +1,43 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Receives the objects completed by a {@link Digester} at a pattern, as soon as their end tag has been processed.
+ * <p>
+ * See also Digester.stream.
+ *
+ * @param <T> the type of the consumed objects
+ * @since 3.3
+ */
+public interface ObjectConsumer<T>
+{
+
+    /**
+     * Invoked once the object built for an element has been completed, i.e. once all the rules matching the element
+     * have fired their <code>end</code> event.
+     *
+     * @param object the completed object
+     * @throws Exception if the object can't be consumed; the exception aborts the parse
+     */
+    void accept( T object )
+        throws Exception;
+
+}
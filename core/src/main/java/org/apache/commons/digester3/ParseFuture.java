@@ -0,0 +1,295 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The pending result of an asynchronous parse (see {@link Digester#asyncParse(org.xml.sax.InputSource)}).
+ *
+ * Unlike a plain <code>Future</code>, cancelling a running parse actually stops it: the Digester checks for the
+ * cancellation at every element boundary and aborts the parse there, leaving the Digester as a failed parse would
+ * (see {@link Digester#reset()}). Listeners can be registered to be notified as soon as the parse completes, fails or
+ * is cancelled, so that further processing can be chained without blocking a thread in {@link #get()}.
+ *
+ * @param <T> the type of the root object
+ * @since 3.3
+ */
+public final class ParseFuture<T>
+    extends FutureTask<T>
+{
+
+    /**
+     * The maximum number of threads the default executor service runs asynchronous parses on, when the JVM does not
+     * offer virtual threads: twice the number of processors, and at least 4.
+     */
+    public static final int DEFAULT_MAX_THREADS = Math.max( 4, 2 * Runtime.getRuntime().availableProcessors() );
+
+    private final Digester digester;
+
+    /**
+     * The listeners to notify once done, null after they have been notified; guarded by <code>this</code>.
+     */
+    private List<ObjectConsumer<? super ParseFuture<T>>> listeners =
+        new ArrayList<ObjectConsumer<? super ParseFuture<T>>>();
+
+    /**
+     * Creates a new asynchronous parse.
+     *
+     * @param digester the Digester performing the parse
+     * @param parse the parse
+     */
+    ParseFuture( final Digester digester, final Callable<T> parse )
+    {
+        this( digester, new CancellableParse<T>( digester, parse ) );
+    }
+
+    private ParseFuture( final Digester digester, final CancellableParse<T> parse )
+    {
+        super( parse );
+        this.digester = digester;
+        parse.future = this;
+    }
+
+    /**
+     * Registers a listener to be notified once the parse has completed, failed or been cancelled, with this future,
+     * whose {@link #get()} does not block anymore. The listener is invoked by the thread completing the parse, or
+     * immediately by the current thread if the parse is already done. Exceptions thrown by the listener are logged.
+     *
+     * @param listener the listener to notify once the parse is done
+     * @return this future
+     */
+    public ParseFuture<T> whenDone( final ObjectConsumer<? super ParseFuture<T>> listener )
+    {
+        if ( listener == null )
+        {
+            throw new IllegalArgumentException( "Parameter 'listener' must be not null" );
+        }
+
+        synchronized ( this )
+        {
+            if ( listeners != null )
+            {
+                listeners.add( listener );
+                return this;
+            }
+        }
+        notify( listener );
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void done()
+    {
+        final List<ObjectConsumer<? super ParseFuture<T>>> done;
+        synchronized ( this )
+        {
+            done = listeners;
+            listeners = null;
+        }
+        for ( final ObjectConsumer<? super ParseFuture<T>> listener : done )
+        {
+            notify( listener );
+        }
+    }
+
+    private void notify( final ObjectConsumer<? super ParseFuture<T>> listener )
+    {
+        try
+        {
+            listener.accept( this );
+        }
+        catch ( final Exception e )
+        {
+            digester.getLogger().warn( "A listener of an asynchronous parse failed", e );
+        }
+    }
+
+    /**
+     * Returns the executor service used by the Digester instances which have not been given one: a new virtual thread
+     * per parse when the JVM offers them, so that blocking I/O does not pin platform threads, otherwise a pool of at
+     * most {@link #DEFAULT_MAX_THREADS} daemon threads.
+     *
+     * @return the default executor service of the asynchronous parses
+     */
+    static ExecutorService getDefaultExecutorService()
+    {
+        return DefaultExecutorServiceHolder.EXECUTOR_SERVICE;
+    }
+
+    /**
+     * Returns the executor service used by the Digester instances which have not been given one for the parses that
+     * hold their thread for as long as their input is being fed or their subscriber is not requesting objects, such as
+     * the ones of a {@link DigesterSession} or of a {@link DigesterPublisher}: a new virtual thread per parse when the
+     * JVM offers them, otherwise a new daemon thread per parse, reused once idle, so that these parses never wait behind
+     * each other, nor hold the threads of the asynchronous parses.
+     *
+     * @return the default executor service of the long running parses
+     */
+    static ExecutorService getDefaultLongRunningExecutorService()
+    {
+        return DefaultLongRunningExecutorServiceHolder.EXECUTOR_SERVICE;
+    }
+
+    /**
+     * Makes the running parse known to the Digester, so that it can check for its cancellation between elements.
+     *
+     * @param <T> the type of the root object
+     */
+    private static final class CancellableParse<T>
+        implements Callable<T>
+    {
+
+        private final Digester digester;
+
+        private final Callable<T> parse;
+
+        private ParseFuture<T> future;
+
+        CancellableParse( final Digester digester, final Callable<T> parse )
+        {
+            this.digester = digester;
+            this.parse = parse;
+        }
+
+        @Override
+        public T call()
+            throws Exception
+        {
+            digester.setAsyncParse( future );
+            try
+            {
+                return parse.call();
+            }
+            finally
+            {
+                digester.setAsyncParse( null );
+            }
+        }
+
+    }
+
+    /**
+     * Creates the default executor service the first time it is needed.
+     */
+    private static final class DefaultExecutorServiceHolder
+    {
+
+        static final ExecutorService EXECUTOR_SERVICE = newExecutorService();
+
+        private static ExecutorService newExecutorService()
+        {
+            final ExecutorService virtualThreads = newVirtualThreadPerTaskExecutor();
+            if ( virtualThreads != null )
+            {
+                return virtualThreads;
+            }
+            final ThreadPoolExecutor executorService =
+                new ThreadPoolExecutor( DEFAULT_MAX_THREADS, DEFAULT_MAX_THREADS, 60L, TimeUnit.SECONDS,
+                                        new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory( "async" ) );
+            // idle threads are not kept around
+            executorService.allowCoreThreadTimeOut( true );
+            return executorService;
+        }
+
+    }
+
+    /**
+     * Creates the default executor service of the long running parses the first time it is needed.
+     */
+    private static final class DefaultLongRunningExecutorServiceHolder
+    {
+
+        static final ExecutorService EXECUTOR_SERVICE = newExecutorService();
+
+        private static ExecutorService newExecutorService()
+        {
+            final ExecutorService virtualThreads = newVirtualThreadPerTaskExecutor();
+            if ( virtualThreads != null )
+            {
+                return virtualThreads;
+            }
+            return new ThreadPoolExecutor( 0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                                           new DaemonThreadFactory( "long-running" ) );
+        }
+
+    }
+
+    /**
+     * Returns an executor service starting a new virtual thread per task, if the JVM offers them.
+     *
+     * @return an executor service starting a new virtual thread per task, or null
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor()
+    {
+        try
+        {
+            // Java 21 and later
+            final Method factory = Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+            return (ExecutorService) factory.invoke( null );
+        }
+        catch ( final Exception e )
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Creates the daemon threads of the default executor service.
+     */
+    private static final class DaemonThreadFactory
+        implements ThreadFactory
+    {
+
+        private final String prefix;
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonThreadFactory( final String kind )
+        {
+            this.prefix = "digester-" + kind + "-";
+        }
+
+        @Override
+        public Thread newThread( final Runnable runnable )
+        {
+            final Thread thread = new Thread( runnable, prefix + count.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        }
+
+    }
+
+}
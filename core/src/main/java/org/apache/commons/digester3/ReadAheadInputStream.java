@@ -0,0 +1,260 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An input stream reading its source ahead on a producer thread, through a bounded queue of buffers, so that producing
+ * the bytes, typically inflating a compressed document, and consuming them, typically parsing it, overlap on two
+ * cores. At most a fixed number of buffers are filled ahead of the consumer, so a slow consumer never causes unbounded
+ * buffering.
+ *
+ * @since 3.3
+ */
+final class ReadAheadInputStream
+    extends InputStream
+{
+
+    /**
+     * Queued by the producer once the source is exhausted, or has failed.
+     */
+    private static final ByteBuffer END = ByteBuffer.allocate( 0 );
+
+    private final InputStream source;
+
+    private final BlockingQueue<ByteBuffer> free;
+
+    /**
+     * Has room for all the buffers and the end marker, so the producer never waits on it.
+     */
+    private final BlockingQueue<ByteBuffer> filled;
+
+    private final Thread producer;
+
+    private volatile IOException failure;
+
+    private volatile boolean closed;
+
+    /**
+     * The buffer being consumed, {@link #END} once the source is exhausted.
+     */
+    private ByteBuffer current;
+
+    /**
+     * Creates a new input stream and starts reading the given source ahead.
+     *
+     * @param source the stream to read ahead, closed by the producer thread once exhausted or closed
+     * @param name the name of the producer thread
+     * @param bufferSize the size of the buffers, in bytes
+     * @param buffers the number of buffers
+     */
+    ReadAheadInputStream( final InputStream source, final String name, final int bufferSize, final int buffers )
+    {
+        this.source = source;
+        this.free = new ArrayBlockingQueue<ByteBuffer>( buffers );
+        this.filled = new ArrayBlockingQueue<ByteBuffer>( buffers + 1 );
+        for ( int i = 0; i < buffers; i++ )
+        {
+            free.add( ByteBuffer.allocate( bufferSize ) );
+        }
+        producer = new Thread( new Producer(), name );
+        producer.setDaemon( true );
+        producer.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read()
+        throws IOException
+    {
+        if ( !hasRemaining() )
+        {
+            return -1;
+        }
+        return current.get() & 0xFF;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read( final byte[] b, final int off, final int len )
+        throws IOException
+    {
+        if ( off < 0 || len < 0 || len > b.length - off )
+        {
+            throw new IndexOutOfBoundsException();
+        }
+        if ( len == 0 )
+        {
+            return 0;
+        }
+        if ( !hasRemaining() )
+        {
+            return -1;
+        }
+        final int read = Math.min( len, current.remaining() );
+        current.get( b, off, read );
+        return read;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int available()
+        throws IOException
+    {
+        if ( current == null || current == END )
+        {
+            return 0;
+        }
+        return current.remaining();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close()
+    {
+        if ( closed )
+        {
+            return;
+        }
+        closed = true;
+        current = END;
+        // the producer stops as soon as it is done with the current buffer, and closes the source
+        producer.interrupt();
+    }
+
+    /**
+     * Makes sure the current buffer has bytes left, waiting for the producer if needed.
+     *
+     * @return true, if there are bytes left to read
+     * @throws IOException if the stream has been closed, or if the producer failed to read the source
+     */
+    private boolean hasRemaining()
+        throws IOException
+    {
+        if ( closed )
+        {
+            throw new IOException( "Stream closed" );
+        }
+        while ( current == null || ( current != END && !current.hasRemaining() ) )
+        {
+            if ( current != null )
+            {
+                free.add( current );
+            }
+            try
+            {
+                current = filled.take();
+            }
+            catch ( final InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                current = null;
+                throw new InterruptedIOException( "Interrupted while waiting for the read ahead bytes" );
+            }
+        }
+        if ( current == END )
+        {
+            if ( failure != null )
+            {
+                throw failure;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Fills the free buffers from the source, until it is exhausted or the stream closed.
+     */
+    private final class Producer
+        implements Runnable
+    {
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                boolean exhausted = false;
+                while ( !exhausted && !closed )
+                {
+                    final ByteBuffer buffer = free.take();
+                    buffer.clear();
+                    while ( buffer.hasRemaining() )
+                    {
+                        final int read = source.read( buffer.array(), buffer.position(), buffer.remaining() );
+                        if ( read < 0 )
+                        {
+                            exhausted = true;
+                            break;
+                        }
+                        buffer.position( buffer.position() + read );
+                    }
+                    buffer.flip();
+                    if ( buffer.hasRemaining() )
+                    {
+                        filled.add( buffer );
+                    }
+                }
+            }
+            catch ( final InterruptedException e )
+            {
+                // closed by the consumer
+            }
+            catch ( final IOException e )
+            {
+                failure = e;
+            }
+            catch ( final Throwable t )
+            {
+                // errors too, or the consumer would take a truncated input for a complete one
+                failure = new IOException( t );
+            }
+            finally
+            {
+                filled.add( END );
+                try
+                {
+                    source.close();
+                }
+                catch ( final IOException e )
+                {
+                    // the bytes have been read, or are no longer wanted
+                }
+            }
+        }
+
+    }
+
+}
@@ -20,6 +20,7 @@ package org.apache.commons.digester3;
  */
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.xml.sax.Attributes;
@@ -33,6 +34,11 @@ import org.xml.sax.Attributes;
  * does not vary. All patterns are tested to see if they match the path using the regex matcher. All those that do are
  * return in the order which the rules were added.
  * </p>
+ * <p>
+ * Since documents repeat the same paths over and over, the rules matched by a path are cached, so the patterns are
+ * tested only the first time a path is seen (see {@link #setMatchCacheSize(int)}). The regex matcher must therefore
+ * give the same answer whenever it is asked about the same path and pattern.
+ * </p>
  * 
  * @since 1.5
  */
@@ -48,6 +54,16 @@ public class RegexRules
     /** The regex strategy used by this RegexRules */
     private RegexMatcher matcher;
 
+    /**
+     * The default maximum number of paths whose matched rules are cached.
+     *
+     * @since 3.3
+     */
+    public static final int DEFAULT_MATCH_CACHE_SIZE = 1024;
+
+    /** The rules matched by the paths seen so far, null if disabled */
+    private MatchCache<String> matchCache = new MatchCache<String>( DEFAULT_MATCH_CACHE_SIZE );
+
     // --------------------------------------------------------- Constructor
 
     /**
@@ -84,6 +100,76 @@ public class RegexRules
             throw new IllegalArgumentException( "RegexMatcher must not be null." );
         }
         this.matcher = matcher;
+        clearMatchCache();
+    }
+
+    /**
+     * Returns the maximum number of paths whose matched rules are cached.
+     *
+     * @return the maximum number of paths whose matched rules are cached, 0 if the cache is disabled
+     * @since 3.3
+     */
+    public int getMatchCacheSize()
+    {
+        return matchCache == null ? 0 : matchCache.getMaxSize();
+    }
+
+    /**
+     * Sets the maximum number of paths whose matched rules are cached, {@link #DEFAULT_MATCH_CACHE_SIZE} by default.
+     * Once the cache is full, the rules of new paths replace those of older ones. The cache statistics are reset.
+     *
+     * @param matchCacheSize the maximum number of paths whose matched rules are cached, 0 to disable the cache
+     * @since 3.3
+     */
+    public void setMatchCacheSize( final int matchCacheSize )
+    {
+        if ( matchCacheSize < 0 )
+        {
+            throw new IllegalArgumentException( "Match cache size must be not negative, was " + matchCacheSize );
+        }
+        matchCache = matchCacheSize == 0 ? null : new MatchCache<String>( matchCacheSize );
+    }
+
+    /**
+     * Returns the number of matches answered by the cache.
+     *
+     * @return the number of matches answered by the cache
+     * @since 3.3
+     */
+    public long getMatchCacheHits()
+    {
+        return matchCache == null ? 0 : matchCache.getHits();
+    }
+
+    /**
+     * Returns the number of matches computed because the path was not cached; together with
+     * {@link #getMatchCacheHits()}, gives the hit rate of the cache.
+     *
+     * @return the number of matches computed because the path was not cached
+     * @since 3.3
+     */
+    public long getMatchCacheMisses()
+    {
+        return matchCache == null ? 0 : matchCache.getMisses();
+    }
+
+    /**
+     * Returns the number of cached paths evicted to make room for new ones.
+     *
+     * @return the number of cached paths evicted to make room for new ones
+     * @since 3.3
+     */
+    public long getMatchCacheEvictions()
+    {
+        return matchCache == null ? 0 : matchCache.getEvictions();
+    }
+
+    private void clearMatchCache()
+    {
+        if ( matchCache != null )
+        {
+            matchCache.clear();
+        }
     }
 
     // --------------------------------------------------------- Public Methods
@@ -95,6 +181,7 @@ public class RegexRules
     protected void registerRule( final String pattern, final Rule rule )
     {
         registeredRules.add( new RegisteredRule( pattern, rule ) );
+        clearMatchCache();
     }
 
     /**
@@ -104,6 +191,7 @@ public class RegexRules
     public void clear()
     {
         registeredRules.clear();
+        clearMatchCache();
     }
 
     /**
@@ -112,23 +200,45 @@ public class RegexRules
     @Override
     public List<Rule> match( final String namespaceURI, final String pattern, final String name, final Attributes attributes )
     {
-        //
-        // not a particularly quick implementation
-        // regex is probably going to be slower than string equality
-        // so probably should have a set of strings
-        // and test each only once
-        //
-        // XXX FIX ME - Time And Optimize
-        //
-        final ArrayList<Rule> rules = new ArrayList<Rule>( registeredRules.size() );
+        final MatchCache<String> cache = matchCache;
+        if ( cache != null )
+        {
+            final List<Rule> cached = cache.get( pattern );
+            if ( cached != null )
+            {
+                return cached;
+            }
+        }
+
+        // testing every pattern is slow, but only done the first time a path is seen
+        ArrayList<Rule> rules = null;
         for ( final RegisteredRule rr : registeredRules )
         {
             if ( matcher.match( pattern, rr.pattern ) )
             {
+                if ( rules == null )
+                {
+                    rules = new ArrayList<Rule>();
+                }
                 rules.add( rr.rule );
             }
         }
-        return rules;
+
+        final List<Rule> matched;
+        if ( rules == null )
+        {
+            matched = Collections.emptyList();
+        }
+        else
+        {
+            rules.trimToSize();
+            matched = Collections.unmodifiableList( rules );
+        }
+        if ( cache != null )
+        {
+            cache.put( pattern, matched );
+        }
+        return matched;
     }
 
     /**
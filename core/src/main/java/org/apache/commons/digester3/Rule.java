@@ -64,6 +64,11 @@ import org.xml.sax.Attributes;
      */
     private String namespaceURI = null;
 
+    /**
+     * Whether {@link #body(String, String, String)} needs the body text, lazily detected unless overridden.
+     */
+    private Boolean bodyTextRequired = null;
+
     // ------------------------------------------------------------- Properties
 
     /**
@@ -107,6 +112,29 @@ import org.xml.sax.Attributes;
         this.namespaceURI = namespaceURI;
     }
 
+    /**
+     * Return <code>true</code> if this Rule consumes the body text of the elements it matches. The {@link Digester}
+     * only materializes the body text into a String, and only invokes {@link #body(String, String, String)}, when at
+     * least one matched Rule returns <code>true</code> here.
+     * <p>
+     * The default implementation returns <code>true</code> if and only if the concrete class overrides
+     * {@link #body(String, String, String)}. Rules that override it without using the text, such as decorators which
+     * just forward the call, may override this method to return the answer of their delegate instead.
+     *
+     * @return <code>true</code> if this Rule needs the body text of the matching elements
+     * @since 3.3
+     */
+    public boolean isBodyTextRequired()
+    {
+        Boolean required = bodyTextRequired;
+        if ( required == null )
+        {
+            required = Boolean.valueOf( overridesBody( getClass() ) );
+            bodyTextRequired = required;
+        }
+        return required.booleanValue();
+    }
+
     // --------------------------------------------------------- Public Methods
 
     /**
@@ -168,4 +196,29 @@ import org.xml.sax.Attributes;
         // The default implementation does nothing
     }
 
+    // -------------------------------------------------------- Private Methods
+
+    /**
+     * Checks if the given Rule class overrides {@link #body(String, String, String)}.
+     *
+     * @param type the Rule class to inspect
+     * @return <code>true</code> if the body method is not the no-op declared by this class
+     */
+    private static boolean overridesBody( final Class<?> type )
+    {
+        try
+        {
+            return type.getMethod( "body", String.class, String.class, String.class ).getDeclaringClass() != Rule.class;
+        }
+        catch ( final NoSuchMethodException e )
+        {
+            return true;
+        }
+        catch ( final SecurityException e )
+        {
+            // can't tell, play safe
+            return true;
+        }
+    }
+
 }
@@ -80,7 +80,8 @@ public interface Rules
     /**
      * Return a List of all registered Rule instances that match the specified nesting pattern, or a zero-length List if
      * there are no matches. If more than one Rule instance matches, they <strong>must</strong> be returned in the order
-     * originally registered through the <code>add()</code> method.
+     * originally registered through the <code>add()</code> method. The returned List may be shared and immutable, so
+     * callers must not modify it.
      * 
      * @param namespaceURI Namespace URI for which to select matching rules, or <code>null</code> to match regardless of
      *            namespace URI
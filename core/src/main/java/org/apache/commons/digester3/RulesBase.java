@@ -20,9 +20,12 @@ package org.apache.commons.digester3;
  */
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.xml.sax.Attributes;
 
@@ -61,6 +64,17 @@ public class RulesBase
      */
     protected HashMap<String, List<Rule>> cache = new HashMap<String, List<Rule>>();
 
+    /**
+     * The registered Rule instances keyed by the matching pattern, resolved for each namespace URI they have been
+     * registered with, so that namespace aware lookups do not have to filter. Built on the first namespace aware
+     * lookup of each pattern, and built again whenever the rules of the pattern in {@link #cache}, or their namespace
+     * URIs, have changed since.
+     *
+     * @since 3.3
+     */
+    private final ConcurrentMap<String, ResolvedRules> namespacedCache =
+        new ConcurrentHashMap<String, ResolvedRules>();
+
     /**
      * The subset of registered Rule instances with wildcard pattern.
      */
@@ -123,6 +137,7 @@ public class RulesBase
     {
         wildcardCache.clear();
         cache.clear();
+        namespacedCache.clear();
         rules.clear();
     }
 
@@ -153,7 +168,7 @@ public class RulesBase
         }
         if ( rulesList == null )
         {
-            rulesList = new ArrayList<Rule>();
+            rulesList = Collections.emptyList();
         }
         return ( rulesList );
     }
@@ -191,16 +206,68 @@ public class RulesBase
             return ( list );
         }
 
-        // Select only Rules that match on the specified namespace URI
-        final ArrayList<Rule> results = new ArrayList<Rule>();
-        for ( final Rule item : list )
+        // Select only Rules that match on the specified namespace URI, resolved once for all the namespace URIs
+        ResolvedRules resolved = this.namespacedCache.get( pattern );
+        if ( resolved == null || !resolved.isCurrent( list ) )
+        {
+            resolved = new ResolvedRules( list );
+            this.namespacedCache.put( pattern, resolved );
+        }
+        return resolved.rules.select( namespaceURI );
+    }
+
+    /**
+     * The rules of a pattern resolved for each namespace URI, with the snapshot of the rules and of their namespace
+     * URIs they have been resolved from, so that any change since, including direct changes to {@link #cache}, is
+     * detected.
+     */
+    private static final class ResolvedRules
+    {
+
+        private final NamespacedRules rules;
+
+        private final List<Rule> source;
+
+        private final Rule[] snapshot;
+
+        private final String[] namespaceURIs;
+
+        ResolvedRules( final List<Rule> source )
+        {
+            this.rules = new NamespacedRules( source );
+            this.source = source;
+            this.snapshot = source.toArray( new Rule[source.size()] );
+            this.namespaceURIs = new String[snapshot.length];
+            for ( int i = 0; i < snapshot.length; i++ )
+            {
+                namespaceURIs[i] = snapshot[i].getNamespaceURI();
+            }
+        }
+
+        /**
+         * Tells whether the given rules are still the ones these have been resolved from, with the same namespace
+         * URIs.
+         *
+         * @param list the rules currently registered for the pattern
+         * @return true if the resolved rules are still current
+         */
+        boolean isCurrent( final List<Rule> list )
         {
-            if ( ( namespaceURI.equals( item.getNamespaceURI() ) ) || ( item.getNamespaceURI() == null ) )
+            if ( list != source || list.size() != snapshot.length )
+            {
+                return false;
+            }
+            for ( int i = 0; i < snapshot.length; i++ )
             {
-                results.add( item );
+                final Rule rule = list.get( i );
+                if ( rule != snapshot[i] || rule.getNamespaceURI() != namespaceURIs[i] )
+                {
+                    return false;
+                }
             }
+            return true;
         }
-        return ( results );
+
     }
 
 }
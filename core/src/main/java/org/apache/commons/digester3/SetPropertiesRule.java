@@ -21,11 +21,19 @@ package org.apache.commons.digester3;
 
 import static java.lang.String.format;
 import static org.apache.commons.beanutils.BeanUtils.populate;
+import static org.apache.commons.beanutils.BeanUtils.setProperty;
+import static org.apache.commons.beanutils.ConvertUtils.convert;
+import static org.apache.commons.beanutils.PropertyUtils.getPropertyDescriptor;
+import static org.apache.commons.beanutils.PropertyUtils.getWriteMethod;
 import static org.apache.commons.beanutils.PropertyUtils.isWriteable;
 
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.commons.beanutils.DynaBean;
 import org.xml.sax.Attributes;
 
 /**
@@ -143,6 +151,25 @@ public class SetPropertiesRule
      */
     private boolean ignoreMissingProperty = true;
 
+    /**
+     * The setter plans compiled so far, per bean class and attribute names.
+     *
+     * @since 3.3
+     */
+    private final Map<PlanKey, SetterPlan> plans = new HashMap<PlanKey, SetterPlan>();
+
+    /**
+     * The last setter plan used, checked first since consecutive elements usually share the same attributes.
+     *
+     * @since 3.3
+     */
+    private SetterPlan lastPlan = null;
+
+    /**
+     * The maximum number of setter plans cached by a rule, further combinations take the uncached path.
+     */
+    private static final int MAX_PLANS = 64;
+
     // --------------------------------------------------------- Public Methods
 
     /**
@@ -152,6 +179,20 @@ public class SetPropertiesRule
     public void begin( final String namespace, final String name, final Attributes attributes )
         throws Exception
     {
+        // Use the setters resolved by a previous element of the same type and attributes, if possible
+        final SetterPlan plan = planFor( getDigester().peek(), attributes );
+        if ( plan != null )
+        {
+            if ( getDigester().getLogger().isDebugEnabled() )
+            {
+                getDigester().getLogger().debug( format( "[SetPropertiesRule]{%s} Set '%s' properties",
+                                                         getDigester().getMatch(),
+                                                         plan.beanType.getName() ) );
+            }
+            plan.apply( getDigester().peek(), attributes );
+            return;
+        }
+
         // Build a set of attribute names and corresponding values
         final Map<String, String> values = new HashMap<String, String>();
 
@@ -241,6 +282,7 @@ public class SetPropertiesRule
     public void addAlias( final String attributeName, final String propertyName )
     {
         aliases.put( attributeName, propertyName );
+        clearPlans();
     }
 
     /**
@@ -278,6 +320,241 @@ public class SetPropertiesRule
     public void setIgnoreMissingProperty( final boolean ignoreMissingProperty )
     {
         this.ignoreMissingProperty = ignoreMissingProperty;
+        clearPlans();
+    }
+
+    // -------------------------------------------------------- Private Methods
+
+    /**
+     * Returns the setter plan for the given bean and attributes, compiling it if needed.
+     *
+     * @param bean the bean whose properties are set
+     * @param attributes the attributes of the current element
+     * @return the setter plan, or <code>null</code> if the bean is not suitable for a compiled plan
+     * @throws Exception if the attributes can't be mapped to properties of the bean
+     */
+    private SetterPlan planFor( final Object bean, final Attributes attributes )
+        throws Exception
+    {
+        if ( bean == null )
+        {
+            return null;
+        }
+
+        final Class<?> beanType = bean.getClass();
+        SetterPlan plan = lastPlan;
+        if ( plan != null && plan.matches( beanType, attributes ) )
+        {
+            return plan;
+        }
+
+        // dynamic beans and maps don't have a fixed set of properties per class
+        if ( bean instanceof DynaBean || bean instanceof Map )
+        {
+            return null;
+        }
+
+        final String[] attributeNames = new String[attributes.getLength()];
+        for ( int i = 0; i < attributeNames.length; i++ )
+        {
+            attributeNames[i] = attributeName( attributes, i );
+        }
+        final PlanKey key = new PlanKey( beanType, attributeNames );
+        plan = plans.get( key );
+        if ( plan == null )
+        {
+            if ( plans.size() >= MAX_PLANS )
+            {
+                return null;
+            }
+            plan = compile( bean, attributeNames );
+            plans.put( key, plan );
+        }
+        lastPlan = plan;
+        return plan;
+    }
+
+    /**
+     * Resolves, once, how each attribute is set on beans of the same class as the given one.
+     *
+     * @param bean the bean whose properties are set
+     * @param attributeNames the names of the attributes of the current element
+     * @return the compiled setter plan
+     * @throws Exception if an attribute doesn't match a writeable property and missing properties are not ignored
+     */
+    private SetterPlan compile( final Object bean, final String[] attributeNames )
+        throws Exception
+    {
+        final String[] propertyNames = new String[attributeNames.length];
+        final MethodInvoker[] setters = new MethodInvoker[attributeNames.length];
+        final Class<?>[] propertyTypes = new Class<?>[attributeNames.length];
+
+        for ( int i = 0; i < attributeNames.length; i++ )
+        {
+            String propertyName = attributeNames[i];
+            if ( aliases.containsKey( propertyName ) )
+            {
+                propertyName = aliases.get( propertyName );
+            }
+            if ( propertyName == null )
+            {
+                continue;
+            }
+            if ( !ignoreMissingProperty && !isWriteable( bean, propertyName ) )
+            {
+                throw new NoSuchMethodException( "Property " + propertyName + " can't be set" );
+            }
+            propertyNames[i] = propertyName;
+
+            // Only plain properties are set directly, everything else goes through BeanUtils
+            if ( propertyName.indexOf( '.' ) >= 0 || propertyName.indexOf( '[' ) >= 0
+                || propertyName.indexOf( '(' ) >= 0 )
+            {
+                continue;
+            }
+            final PropertyDescriptor descriptor = getPropertyDescriptor( bean, propertyName );
+            if ( descriptor == null || descriptor.getClass() != PropertyDescriptor.class
+                || descriptor.getPropertyType() == null || descriptor.getPropertyType().isArray() )
+            {
+                continue;
+            }
+            final Method writeMethod = getWriteMethod( descriptor );
+            if ( writeMethod != null )
+            {
+                setters[i] = MethodInvoker.of( writeMethod );
+                propertyTypes[i] = descriptor.getPropertyType();
+            }
+        }
+
+        return new SetterPlan( bean.getClass(), attributeNames, propertyNames, setters, propertyTypes );
+    }
+
+    private void clearPlans()
+    {
+        plans.clear();
+        lastPlan = null;
+    }
+
+    private static String attributeName( final Attributes attributes, final int index )
+    {
+        final String attributeName = attributes.getLocalName( index );
+        if ( "".equals( attributeName ) )
+        {
+            return attributes.getQName( index );
+        }
+        return attributeName;
+    }
+
+    /**
+     * Key of a setter plan: the bean class and the attribute names, in document order.
+     */
+    private static final class PlanKey
+    {
+
+        private final Class<?> beanType;
+
+        private final String[] attributeNames;
+
+        PlanKey( final Class<?> beanType, final String[] attributeNames )
+        {
+            this.beanType = beanType;
+            this.attributeNames = attributeNames;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * beanType.hashCode() + Arrays.hashCode( attributeNames );
+        }
+
+        @Override
+        public boolean equals( final Object obj )
+        {
+            if ( this == obj )
+            {
+                return true;
+            }
+            if ( !( obj instanceof PlanKey ) )
+            {
+                return false;
+            }
+            final PlanKey other = (PlanKey) obj;
+            return beanType == other.beanType && Arrays.equals( attributeNames, other.attributeNames );
+        }
+
+    }
+
+    /**
+     * How each attribute of an element is set on a bean: through a cached setter, through
+     * <code>BeanUtils.setProperty</code> for properties which need its full resolution, or not at all.
+     */
+    private static final class SetterPlan
+    {
+
+        private final Class<?> beanType;
+
+        private final String[] attributeNames;
+
+        /**
+         * Target property per attribute, <code>null</code> for ignored attributes.
+         */
+        private final String[] propertyNames;
+
+        /**
+         * Cached setter per attribute, <code>null</code> when the property is set through BeanUtils.
+         */
+        private final MethodInvoker[] setters;
+
+        private final Class<?>[] propertyTypes;
+
+        SetterPlan( final Class<?> beanType, final String[] attributeNames, final String[] propertyNames,
+                    final MethodInvoker[] setters, final Class<?>[] propertyTypes )
+        {
+            this.beanType = beanType;
+            this.attributeNames = attributeNames;
+            this.propertyNames = propertyNames;
+            this.setters = setters;
+            this.propertyTypes = propertyTypes;
+        }
+
+        boolean matches( final Class<?> type, final Attributes attributes )
+        {
+            if ( type != beanType || attributes.getLength() != attributeNames.length )
+            {
+                return false;
+            }
+            for ( int i = 0; i < attributeNames.length; i++ )
+            {
+                if ( !attributeNames[i].equals( attributeName( attributes, i ) ) )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void apply( final Object bean, final Attributes attributes )
+            throws Exception
+        {
+            for ( int i = 0; i < propertyNames.length; i++ )
+            {
+                if ( propertyNames[i] == null )
+                {
+                    continue;
+                }
+                final String value = attributes.getValue( i );
+                if ( setters[i] != null )
+                {
+                    // same conversion as BeanUtils.setProperty
+                    setters[i].invoke( bean, new Object[] { convert( value, propertyTypes[i] ) } );
+                }
+                else
+                {
+                    setProperty( bean, propertyNames[i], value );
+                }
+            }
+        }
+
     }
 
 }
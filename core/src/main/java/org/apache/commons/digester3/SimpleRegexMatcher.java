@@ -19,6 +19,10 @@ package org.apache.commons.digester3;
  * under the License.
  */
 
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -49,6 +53,13 @@ public class SimpleRegexMatcher
     /** Custom log (can be set per object) */
     private Log log = BASE_LOG;
 
+    /** The maximum number of compiled patterns retained for reuse */
+    private static final int MAX_COMPILED_PATTERNS = 4096;
+
+    /** The patterns compiled so far, usually the ones registered with the rules */
+    private final ConcurrentMap<String, CompiledPattern> compiledPatterns =
+        new ConcurrentHashMap<String, CompiledPattern>();
+
     // --------------------------------------------------------- Properties
 
     /**
@@ -84,99 +95,137 @@ public class SimpleRegexMatcher
         {
             return false;
         }
-        return match( basePattern, regexPattern, 0, 0 );
+
+        CompiledPattern compiled = compiledPatterns.get( regexPattern );
+        if ( compiled == null )
+        {
+            compiled = new CompiledPattern( regexPattern );
+            if ( compiledPatterns.size() < MAX_COMPILED_PATTERNS )
+            {
+                compiledPatterns.put( regexPattern, compiled );
+            }
+        }
+
+        final boolean match = compiled.matches( basePattern );
+        if ( log.isTraceEnabled() )
+        {
+            log.trace( "Base '" + basePattern + "' " + ( match ? "matches" : "does not match" ) + " regex '"
+                + regexPattern + "'" );
+        }
+        return match;
     }
 
     // --------------------------------------------------------- Implementations Methods
 
     /**
-     * Implementation of regex matching algorithm. This calls itself recursively.
+     * A pattern compiled into a nondeterministic automaton, whose states are the positions in the pattern, simulated
+     * in a single pass over the path: the matching time is proportional to the length of the path times the length
+     * of the pattern, whatever the wildcards, without any backtracking.
      *
-     * @param basePattern the standard digester path representing the element
-     * @param regexPattern the regex pattern the path will be tested against
-     * @param baseAt FIXME
-     * @param regexAt FIXME
+     * A <code>*</code> matches any sequence of characters ending right before an occurrence of the pattern character
+     * following it, compared literally even if it is a wildcard, and a trailing <code>*</code> matches one or more
+     * characters.
      */
-    private boolean match( final String basePattern, final String regexPattern, int baseAt, int regexAt )
+    private static final class CompiledPattern
     {
-        if ( log.isTraceEnabled() )
+
+        private final String pattern;
+
+        private final char[] regex;
+
+        /**
+         * Whether the pattern contains no wildcard at all.
+         */
+        private final boolean literal;
+
+        CompiledPattern( final String regexPattern )
         {
-            log.trace( "Base: " + basePattern );
-            log.trace( "Regex: " + regexPattern );
-            log.trace( "Base@" + baseAt );
-            log.trace( "Regex@" + regexAt );
+            pattern = regexPattern;
+            regex = regexPattern.toCharArray();
+            literal = regexPattern.indexOf( '*' ) == -1 && regexPattern.indexOf( '?' ) == -1;
         }
 
-        // check bounds
-        if ( regexAt >= regexPattern.length() )
+        boolean matches( final String base )
         {
-            // maybe we've got a match
-            if ( baseAt >= basePattern.length() )
+            if ( literal )
             {
-                // ok!
-                return true;
+                return pattern.equals( base );
             }
-            // run out early
-            return false;
 
-        }
-        if ( baseAt >= basePattern.length() )
-        {
-            // run out early
-            return false;
-        }
+            final int end = regex.length;
+            int[] current = new int[end + 1];
+            int[] next = new int[end + 1];
+            // the position in the path at which each state has last been active, so it is added only once
+            final int[] activeAt = new int[end + 1];
+            Arrays.fill( activeAt, -1 );
+
+            int currentSize = 1;
+            current[0] = 0;
+            activeAt[0] = 0;
+            for ( int at = 0; at < base.length(); at++ )
+            {
+                final char c = base.charAt( at );
 
-        // ok both within bounds
-        final char regexCurrent = regexPattern.charAt( regexAt );
-        switch ( regexCurrent )
-        {
-            case '*':
-                // this is the tricky case
-                // check for terminal
-                if ( ++regexAt >= regexPattern.length() )
+                // a '*' gives way to the rest of the pattern before an occurrence of the character following it
+                for ( int i = 0; i < currentSize; i++ )
                 {
-                    // this matches anything let - so return true
-                    return true;
-                }
-                // go through every subsequent apperance of the next character
-                // and so if the rest of the regex matches
-                final char nextRegex = regexPattern.charAt( regexAt );
-                if ( log.isTraceEnabled() )
-                {
-                    log.trace( "Searching for next '" + nextRegex + "' char" );
+                    final int state = current[i];
+                    if ( state < end - 1 && regex[state] == '*' && regex[state + 1] == c && activeAt[state + 1] != at )
+                    {
+                        activeAt[state + 1] = at;
+                        current[currentSize++] = state + 1;
+                    }
                 }
-                int nextMatch = basePattern.indexOf( nextRegex, baseAt );
-                while ( nextMatch != -1 )
+
+                int nextSize = 0;
+                for ( int i = 0; i < currentSize; i++ )
                 {
-                    if ( log.isTraceEnabled() )
+                    final int state = current[i];
+                    if ( state == end )
                     {
-                        log.trace( "Trying '*' match@" + nextMatch );
+                        // the pattern is over before the path
+                        continue;
                     }
-                    if ( match( basePattern, regexPattern, nextMatch, regexAt ) )
+                    final int target;
+                    switch ( regex[state] )
                     {
-                        return true;
+                        case '*':
+                            if ( state == end - 1 )
+                            {
+                                // a trailing '*' matches whatever is left
+                                return true;
+                            }
+                            target = state;
+                            break;
+                        case '?':
+                            target = state + 1;
+                            break;
+                        default:
+                            if ( regex[state] != c )
+                            {
+                                continue;
+                            }
+                            target = state + 1;
+                    }
+                    if ( activeAt[target] != at + 1 )
+                    {
+                        activeAt[target] = at + 1;
+                        next[nextSize++] = target;
                     }
-                    nextMatch = basePattern.indexOf( nextRegex, nextMatch + 1 );
-                }
-                log.trace( "No matches found." );
-                return false;
-
-            case '?':
-                // this matches anything
-                return match( basePattern, regexPattern, ++baseAt, ++regexAt );
-
-            default:
-                if ( log.isTraceEnabled() )
-                {
-                    log.trace( "Camparing " + regexCurrent + " to " + basePattern.charAt( baseAt ) );
                 }
-                if ( regexCurrent == basePattern.charAt( baseAt ) )
+                if ( nextSize == 0 )
                 {
-                    // still got more to go
-                    return match( basePattern, regexPattern, ++baseAt, ++regexAt );
+                    return false;
                 }
-                return false;
+
+                final int[] swap = current;
+                current = next;
+                next = swap;
+                currentSize = nextSize;
+            }
+            return activeAt[end] == base.length();
         }
+
     }
 
 }
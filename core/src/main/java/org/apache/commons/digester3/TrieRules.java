@@ -0,0 +1,453 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.xml.sax.Attributes;
+
+/**
+ * <p>
+ * <code>Rules</code> implementation with the same matching policy as {@link RulesBase}, that compiles all the
+ * registered patterns into a state machine over element names.
+ * </p>
+ * <p>
+ * Exact patterns are stored in a trie of their path segments, while tail patterns (&quot;&#42;/a/b&quot;) are stored
+ * in an Aho-Corasick automaton whose failure links give, for every nesting path, the longest tail pattern matching it.
+ * Both structures are combined into one state per reachable (exact, tail) pair, and every state keeps a transition
+ * table keyed by element name. Matching a nested element is then a single table lookup from the state of its parent
+ * element, regardless of the number of registered patterns, and neither the pattern string nor the list of tail
+ * patterns has to be scanned. The rules selected by each state are resolved for every namespace URI at compilation
+ * time as well, so namespace aware matching does not filter or allocate either.
+ * </p>
+ * <p>
+ * Every state also knows whether any state reachable from it selects rules, so that the <code>Digester</code> can skip
+ * the whole subtree of an element when no registered pattern can match below it.
+ * </p>
+ * <p>
+ * The state machine is compiled lazily the first time it is needed after a change to the registered rules, so rule
+ * sets should be fully built before parsing starts.
+ * </p>
+ *
+ * @since 3.3
+ */
+public class TrieRules
+    extends RulesBase
+    implements IncrementalRules
+{
+
+    // ----------------------------------------------------- Instance Variables
+
+    /**
+     * The compiled state machine, or <code>null</code> if the registered rules have changed since the last compilation.
+     */
+    private volatile Automaton automaton;
+
+    // --------------------------------------------------------- Public Methods
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void registerRule( final String pattern, final Rule rule )
+    {
+        super.registerRule( pattern, rule );
+        invalidate();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear()
+    {
+        super.clear();
+        invalidate();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Rule> match( final String namespaceURI, final String pattern, final String name, final Attributes attributes )
+    {
+        State state = compile().root;
+        int start = 0;
+        int slash;
+        do
+        {
+            slash = pattern.indexOf( '/', start );
+            state = state.advance( slash < 0 ? pattern.substring( start ) : pattern.substring( start, slash ) );
+            start = slash + 1;
+        }
+        while ( slash >= 0 );
+        return state.match( namespaceURI, name, attributes );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MatchState getRootState()
+    {
+        return compile().root;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MatchState getChildState( final MatchState parent, final String name )
+    {
+        if ( !( parent instanceof State ) || ( (State) parent ).getAutomaton() != automaton )
+        {
+            return null;
+        }
+        return ( (State) parent ).advance( name );
+    }
+
+    // ------------------------------------------------------ Private Methods
+
+    /**
+     * Returns the current state machine, compiling it if the registered rules have changed since the last call.
+     *
+     * @return the current state machine
+     */
+    private Automaton compile()
+    {
+        Automaton current = automaton;
+        if ( current == null )
+        {
+            synchronized ( this )
+            {
+                current = automaton;
+                if ( current == null )
+                {
+                    current = new Automaton( cache );
+                    automaton = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Discards the current state machine, so that states reached so far are no longer advanced.
+     */
+    private void invalidate()
+    {
+        automaton = null;
+    }
+
+    /**
+     * Splits a pattern into its path segments.
+     *
+     * @param pattern the pattern to split
+     * @return the path segments of the pattern
+     */
+    private static String[] segments( final String pattern )
+    {
+        return pattern.split( "/", -1 );
+    }
+
+    // ------------------------------------------------------ Compiled structures
+
+    /**
+     * A node of the trie of exact patterns.
+     */
+    private static final class ExactNode
+    {
+
+        final Map<String, ExactNode> children = new HashMap<String, ExactNode>();
+
+        NamespacedRules rules;
+
+        ExactNode insert( final String[] path )
+        {
+            ExactNode node = this;
+            for ( final String segment : path )
+            {
+                ExactNode child = node.children.get( segment );
+                if ( child == null )
+                {
+                    child = new ExactNode();
+                    node.children.put( segment, child );
+                }
+                node = child;
+            }
+            return node;
+        }
+
+    }
+
+    /**
+     * A node of the Aho-Corasick automaton of tail patterns.
+     */
+    private static final class TailNode
+    {
+
+        final Map<String, TailNode> children = new HashMap<String, TailNode>();
+
+        /** The longest proper suffix of this node that is a prefix of some tail pattern, null for the root. */
+        TailNode failure;
+
+        /** The rules of the tail pattern ending at this node, if any. */
+        NamespacedRules rules;
+
+        /** The rules of the longest tail pattern matching any path that reaches this node, if any. */
+        NamespacedRules longest;
+
+        TailNode insert( final String[] path )
+        {
+            TailNode node = this;
+            for ( final String segment : path )
+            {
+                TailNode child = node.children.get( segment );
+                if ( child == null )
+                {
+                    child = new TailNode();
+                    node.children.put( segment, child );
+                }
+                node = child;
+            }
+            return node;
+        }
+
+        TailNode next( final String name )
+        {
+            TailNode node = this;
+            while ( true )
+            {
+                final TailNode child = node.children.get( name );
+                if ( child != null )
+                {
+                    return child;
+                }
+                if ( node.failure == null )
+                {
+                    return node;
+                }
+                node = node.failure;
+            }
+        }
+
+    }
+
+    /**
+     * The compiled state machine; immutable once built.
+     */
+    private static final class Automaton
+    {
+
+        final State root;
+
+        Automaton( final Map<String, List<Rule>> patterns )
+        {
+            final ExactNode exactRoot = new ExactNode();
+            final TailNode tailRoot = new TailNode();
+            for ( final Map.Entry<String, List<Rule>> entry : patterns.entrySet() )
+            {
+                final String pattern = entry.getKey();
+                if ( pattern.startsWith( "*/" ) )
+                {
+                    tailRoot.insert( segments( pattern.substring( 2 ) ) ).rules =
+                        new NamespacedRules( entry.getValue() );
+                }
+                else
+                {
+                    exactRoot.insert( segments( pattern ) ).rules = new NamespacedRules( entry.getValue() );
+                }
+            }
+
+            // breadth first, so that failure links always point to already linked nodes
+            final List<TailNode> tailNodes = new ArrayList<TailNode>();
+            final LinkedList<TailNode> queue = new LinkedList<TailNode>();
+            queue.add( tailRoot );
+            while ( !queue.isEmpty() )
+            {
+                final TailNode node = queue.removeFirst();
+                tailNodes.add( node );
+                for ( final Map.Entry<String, TailNode> entry : node.children.entrySet() )
+                {
+                    final TailNode child = entry.getValue();
+                    child.failure = node.failure == null ? tailRoot : node.failure.next( entry.getKey() );
+                    queue.add( child );
+                }
+                node.longest = node.rules != null ? node.rules : ( node.failure == null ? null : node.failure.longest );
+            }
+
+            final Map<TailNode, State> tailStates = new IdentityHashMap<TailNode, State>();
+            for ( final TailNode node : tailNodes )
+            {
+                tailStates.put( node, new State( null, node ) );
+            }
+            final State otherwise = tailStates.get( tailRoot );
+
+            root = new State( exactRoot, tailRoot );
+            final List<State> states = new ArrayList<State>();
+            final LinkedList<State> pending = new LinkedList<State>( tailStates.values() );
+            pending.add( root );
+            while ( !pending.isEmpty() )
+            {
+                final State state = pending.removeFirst();
+                states.add( state );
+
+                final Set<String> names = new HashSet<String>();
+                if ( state.exact != null )
+                {
+                    names.addAll( state.exact.children.keySet() );
+                }
+                for ( TailNode node = state.tail; node != null; node = node.failure )
+                {
+                    names.addAll( node.children.keySet() );
+                }
+
+                final Map<String, State> transitions = new HashMap<String, State>();
+                for ( final String name : names )
+                {
+                    final TailNode tail = state.tail.next( name );
+                    final ExactNode exact = state.exact != null ? state.exact.children.get( name ) : null;
+                    State target;
+                    if ( exact != null )
+                    {
+                        target = new State( exact, tail );
+                        pending.add( target );
+                    }
+                    else
+                    {
+                        target = tailStates.get( tail );
+                    }
+                    if ( target != otherwise )
+                    {
+                        transitions.put( name, target );
+                    }
+                }
+                state.link( this, transitions, otherwise );
+            }
+
+            // a state can match descendants if any state reachable from it selects rules; the tail states may form
+            // cycles, so propagate until nothing changes
+            boolean changed = true;
+            while ( changed )
+            {
+                changed = false;
+                for ( final State state : states )
+                {
+                    if ( !state.descendantsMatch && state.hasMatchingSuccessor() )
+                    {
+                        state.descendantsMatch = true;
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+    }
+
+    /**
+     * A state of the compiled state machine, i.e. a pair of a node of the exact trie (if the path is still a prefix of
+     * an exact pattern) and a node of the tail automaton, with the rules it selects resolved for every namespace URI.
+     */
+    private static final class State
+        implements MatchState
+    {
+
+        final ExactNode exact;
+
+        final TailNode tail;
+
+        private final NamespacedRules resolved;
+
+        private Automaton automaton;
+
+        private Map<String, State> transitions;
+
+        private State otherwise;
+
+        private boolean descendantsMatch;
+
+        State( final ExactNode exact, final TailNode tail )
+        {
+            this.exact = exact;
+            this.tail = tail;
+            this.resolved = NamespacedRules.resolve( exact != null ? exact.rules : null, tail.longest );
+        }
+
+        void link( final Automaton owner, final Map<String, State> next, final State fallback )
+        {
+            this.automaton = owner;
+            this.transitions = next.isEmpty() ? Collections.<String, State> emptyMap() : next;
+            this.otherwise = fallback;
+        }
+
+        Automaton getAutomaton()
+        {
+            return automaton;
+        }
+
+        boolean hasMatchingSuccessor()
+        {
+            if ( otherwise.resolved != null || otherwise.descendantsMatch )
+            {
+                return true;
+            }
+            for ( final State next : transitions.values() )
+            {
+                if ( next.resolved != null || next.descendantsMatch )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        State advance( final String name )
+        {
+            final State next = transitions.get( name );
+            return next != null ? next : otherwise;
+        }
+
+        @Override
+        public List<Rule> match( final String namespaceURI, final String name, final Attributes attributes )
+        {
+            if ( resolved == null )
+            {
+                return Collections.emptyList();
+            }
+            return resolved.select( namespaceURI );
+        }
+
+        @Override
+        public boolean canMatchDescendants()
+        {
+            return descendantsMatch;
+        }
+
+    }
+
+}
@@ -0,0 +1,351 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static javax.xml.stream.XMLStreamConstants.CDATA;
+import static javax.xml.stream.XMLStreamConstants.CHARACTERS;
+import static javax.xml.stream.XMLStreamConstants.END_DOCUMENT;
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.ENTITY_REFERENCE;
+import static javax.xml.stream.XMLStreamConstants.PROCESSING_INSTRUCTION;
+import static javax.xml.stream.XMLStreamConstants.SPACE;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Pulls the events of an {@link XMLStreamReader} and fires them on a {@link Digester} as the equivalent SAX
+ * <code>ContentHandler</code> callbacks, so that the same {@link Rules} and {@link Rule} callbacks are fired as when
+ * the document is parsed by an <code>XMLReader</code>.
+ *
+ * The events are pulled one at a time by {@link #next()}, so that the caller decides when the parse progresses. The
+ * driver starts from the current event of the reader, and stops at the end of the document or at the end of the
+ * element the reader was positioned on. The reader is never closed.
+ *
+ * When the digester skips the children of an element, because no rule can match them, the driver pulls the events up
+ * to the end tag of the element without firing them.
+ *
+ * @since 3.3
+ */
+final class XMLStreamDriver
+{
+
+    private static final String CDATA_TYPE = "CDATA";
+
+    private final Digester digester;
+
+    private final XMLStreamReader reader;
+
+    private final boolean namespaceAware;
+
+    /**
+     * Reused for every element, as SAX parsers do.
+     */
+    private final AttributesImpl attributes = new AttributesImpl();
+
+    private int depth;
+
+    private boolean started;
+
+    private boolean finished;
+
+    XMLStreamDriver( final Digester digester, final XMLStreamReader reader )
+    {
+        this.digester = digester;
+        this.reader = reader;
+        this.namespaceAware = digester.getNamespaceAware();
+    }
+
+    /**
+     * Pulls the events until the end of the document.
+     *
+     * @throws SAXException if the reader or a rule fails
+     */
+    void drive()
+        throws SAXException
+    {
+        while ( next() )
+        {
+            // keep pulling
+        }
+    }
+
+    /**
+     * Pulls the next event and fires it on the digester.
+     *
+     * @return true if more events are available, false once the document has been completely processed
+     * @throws SAXException if the reader or a rule fails
+     */
+    boolean next()
+        throws SAXException
+    {
+        if ( finished )
+        {
+            return false;
+        }
+
+        try
+        {
+            int event;
+            if ( started )
+            {
+                event = reader.next();
+            }
+            else
+            {
+                started = true;
+                digester.setDocumentLocator( new StreamLocator( reader ) );
+                digester.startDocument();
+                event = reader.getEventType();
+            }
+
+            switch ( event )
+            {
+                case START_ELEMENT:
+                    startElement();
+                    break;
+                case END_ELEMENT:
+                    endElement();
+                    break;
+                case CHARACTERS:
+                case CDATA:
+                    digester.characters( reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength() );
+                    break;
+                case SPACE:
+                    digester.ignorableWhitespace( reader.getTextCharacters(), reader.getTextStart(),
+                                                  reader.getTextLength() );
+                    break;
+                case PROCESSING_INSTRUCTION:
+                    digester.processingInstruction( reader.getPITarget(), reader.getPIData() );
+                    break;
+                case ENTITY_REFERENCE:
+                    digester.skippedEntity( reader.getLocalName() );
+                    break;
+                default:
+                    // comments, DTD and document start carry nothing for the rules
+                    break;
+            }
+
+            // the end of the document element may have been reached while skipping its children
+            if ( event == END_DOCUMENT || ( depth == 0 && ( event == START_ELEMENT || event == END_ELEMENT ) )
+                || !reader.hasNext() )
+            {
+                finished = true;
+                digester.endDocument();
+            }
+        }
+        catch ( final XMLStreamException e )
+        {
+            finished = true;
+            throw digester.createSAXException( e );
+        }
+        catch ( final SAXException e )
+        {
+            finished = true;
+            throw e;
+        }
+        return !finished;
+    }
+
+    private void startElement()
+        throws SAXException, XMLStreamException
+    {
+        depth++;
+
+        final int namespaceCount = reader.getNamespaceCount();
+        if ( namespaceAware )
+        {
+            for ( int i = 0; i < namespaceCount; i++ )
+            {
+                digester.startPrefixMapping( nullToEmpty( reader.getNamespacePrefix( i ) ),
+                                             nullToEmpty( reader.getNamespaceURI( i ) ) );
+            }
+        }
+
+        attributes.clear();
+        for ( int i = 0; i < reader.getAttributeCount(); i++ )
+        {
+            final String qName = qualify( reader.getAttributePrefix( i ), reader.getAttributeLocalName( i ) );
+            if ( namespaceAware )
+            {
+                attributes.addAttribute( nullToEmpty( reader.getAttributeNamespace( i ) ),
+                                         reader.getAttributeLocalName( i ), qName, reader.getAttributeType( i ),
+                                         reader.getAttributeValue( i ) );
+            }
+            else
+            {
+                attributes.addAttribute( "", "", qName, reader.getAttributeType( i ), reader.getAttributeValue( i ) );
+            }
+        }
+        if ( !namespaceAware )
+        {
+            // without namespace processing, SAX parsers report the declarations as plain attributes
+            for ( int i = 0; i < namespaceCount; i++ )
+            {
+                final String prefix = reader.getNamespacePrefix( i );
+                final String qName = isEmpty( prefix ) ? "xmlns" : "xmlns:" + prefix;
+                attributes.addAttribute( "", "", qName, CDATA_TYPE, nullToEmpty( reader.getNamespaceURI( i ) ) );
+            }
+        }
+
+        final String qName = qualify( reader.getPrefix(), reader.getLocalName() );
+        if ( namespaceAware )
+        {
+            digester.startElement( nullToEmpty( reader.getNamespaceURI() ), reader.getLocalName(), qName, attributes );
+        }
+        else
+        {
+            digester.startElement( "", "", qName, attributes );
+        }
+
+        if ( digester.isSkippingChildren() )
+        {
+            skipChildren();
+        }
+    }
+
+    /**
+     * Skips to the end tag of the current element, whose children can't be matched by any rule: only the text of the
+     * current element itself and its end are fired.
+     *
+     * @throws SAXException if a rule fails
+     * @throws XMLStreamException if the reader fails
+     */
+    private void skipChildren()
+        throws SAXException, XMLStreamException
+    {
+        int nested = 0;
+        while ( true )
+        {
+            switch ( reader.next() )
+            {
+                case START_ELEMENT:
+                    nested++;
+                    break;
+                case END_ELEMENT:
+                    if ( nested == 0 )
+                    {
+                        endElement();
+                        return;
+                    }
+                    nested--;
+                    break;
+                case CHARACTERS:
+                case CDATA:
+                    if ( nested == 0 )
+                    {
+                        digester.characters( reader.getTextCharacters(), reader.getTextStart(),
+                                             reader.getTextLength() );
+                    }
+                    break;
+                case END_DOCUMENT:
+                    throw new XMLStreamException( "Unexpected end of document", reader.getLocation() );
+                default:
+                    break;
+            }
+        }
+    }
+
+    private void endElement()
+        throws SAXException
+    {
+        final String qName = qualify( reader.getPrefix(), reader.getLocalName() );
+        if ( namespaceAware )
+        {
+            digester.endElement( nullToEmpty( reader.getNamespaceURI() ), reader.getLocalName(), qName );
+            for ( int i = reader.getNamespaceCount() - 1; i >= 0; i-- )
+            {
+                digester.endPrefixMapping( nullToEmpty( reader.getNamespacePrefix( i ) ) );
+            }
+        }
+        else
+        {
+            digester.endElement( "", "", qName );
+        }
+
+        depth--;
+    }
+
+    private static String qualify( final String prefix, final String localName )
+    {
+        return isEmpty( prefix ) ? localName : prefix + ':' + localName;
+    }
+
+    private static boolean isEmpty( final String value )
+    {
+        return value == null || value.length() == 0;
+    }
+
+    private static String nullToEmpty( final String value )
+    {
+        return value == null ? "" : value;
+    }
+
+    /**
+     * Exposes the current location of the reader as a SAX {@link Locator}, for the error messages of the Digester.
+     */
+    private static final class StreamLocator
+        implements Locator
+    {
+
+        private final XMLStreamReader reader;
+
+        StreamLocator( final XMLStreamReader reader )
+        {
+            this.reader = reader;
+        }
+
+        @Override
+        public String getPublicId()
+        {
+            final Location location = reader.getLocation();
+            return location == null ? null : location.getPublicId();
+        }
+
+        @Override
+        public String getSystemId()
+        {
+            final Location location = reader.getLocation();
+            return location == null ? null : location.getSystemId();
+        }
+
+        @Override
+        public int getLineNumber()
+        {
+            final Location location = reader.getLocation();
+            return location == null ? -1 : location.getLineNumber();
+        }
+
+        @Override
+        public int getColumnNumber()
+        {
+            final Location location = reader.getLocation();
+            return location == null ? -1 : location.getColumnNumber();
+        }
+
+    }
+
+}
@@ -0,0 +1,139 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Iterates over the objects completed at a pattern, pulling the events of the underlying {@link XMLStreamDriver} only
+ * as far as needed to complete the next object.
+ *
+ * The iteration ends once the document has been completely processed or has failed, or when the iteration is dropped
+ * in favour of another one (see {@link Digester#iterate(javax.xml.stream.XMLStreamReader, String, Class)}) or the
+ * digester is cleared: the objects are no longer collected, and {@link Digester#cleanup()} is called.
+ *
+ * @param <T> the type of the iterated objects
+ * @since 3.3
+ */
+final class XMLStreamIterator<T>
+    implements Iterator<T>
+{
+
+    private final Digester digester;
+
+    private final XMLStreamDriver driver;
+
+    private final CompletedObjectRule completedObjectRule;
+
+    private final Queue<Object> completed;
+
+    private final Class<T> type;
+
+    private boolean ended;
+
+    XMLStreamIterator( final Digester digester, final XMLStreamDriver driver,
+                       final CompletedObjectRule completedObjectRule, final Queue<Object> completed,
+                       final Class<T> type )
+    {
+        this.digester = digester;
+        this.driver = driver;
+        this.completedObjectRule = completedObjectRule;
+        this.completed = completed;
+        this.type = type;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasNext()
+    {
+        try
+        {
+            while ( completed.isEmpty() && !ended )
+            {
+                // keep pulling until an object is completed
+                if ( !driver.next() )
+                {
+                    end();
+                }
+            }
+        }
+        catch ( final SAXException e )
+        {
+            completed.clear();
+            end();
+            throw new IllegalStateException( "An error occurred while pulling the next object", e );
+        }
+        return !completed.isEmpty();
+    }
+
+    /**
+     * Tells whether this iteration has ended.
+     *
+     * @return true if this iteration has ended
+     */
+    boolean isEnded()
+    {
+        return ended;
+    }
+
+    /**
+     * Ends this iteration, if not ended yet: the objects are no longer collected, and the digester is cleaned up. The
+     * objects already collected can still be iterated over.
+     */
+    void end()
+    {
+        if ( ended )
+        {
+            return;
+        }
+        ended = true;
+        completedObjectRule.stopCollecting( completed );
+        digester.cleanup();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public T next()
+    {
+        if ( !hasNext() )
+        {
+            throw new NoSuchElementException();
+        }
+        return type.cast( completed.remove() );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException( "Completed objects can't be removed from the document" );
+    }
+
+}
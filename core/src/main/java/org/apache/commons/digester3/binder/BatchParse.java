@@ -0,0 +1,228 @@
+package org.apache.commons.digester3.binder;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.commons.digester3.ObjectConsumer;
+import org.apache.commons.digester3.RuleSet;
+import org.xml.sax.SAXException;
+
+/**
+ * Parses a batch of files on a fixed number of worker threads, each of them reusing its own Digester, and with it its
+ * XML reader, for all the files it parses. The outcomes are handed to the consumer on the calling thread, in
+ * completion order.
+ *
+ * @param <T> the type of the root objects
+ * @since 3.3
+ */
+final class BatchParse<T>
+{
+
+    /**
+     * Queued by a worker once it has no more files to parse.
+     */
+    private static final Object WORKER_DONE = new Object();
+
+    private final DigesterLoader loader;
+
+    private final RuleSet ruleSet;
+
+    private final Iterator<Path> files;
+
+    private final int parallelism;
+
+    private final BlockingQueue<Object> completed = new LinkedBlockingQueue<Object>();
+
+    /**
+     * The position of the next file in the batch, guarded by <code>files</code>.
+     */
+    private int next;
+
+    private volatile boolean aborted;
+
+    /**
+     * Creates a new batch parse.
+     *
+     * @param loader The loader holding the Digester configuration
+     * @param ruleSet The frozen rule set
+     * @param files The files to parse
+     * @param parallelism The number of worker threads
+     */
+    BatchParse( final DigesterLoader loader, final RuleSet ruleSet, final Iterable<Path> files, final int parallelism )
+    {
+        this.loader = loader;
+        this.ruleSet = ruleSet;
+        this.files = files.iterator();
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Parses all the files, handing their outcomes to the given consumer as soon as they are available.
+     *
+     * @param consumer The consumer of the outcomes, invoked on the calling thread
+     * @throws InterruptedException if the calling thread is interrupted while waiting for the workers
+     * @throws ExecutionException if the batch is aborted because the consumer, or the iteration over the files, failed
+     */
+    void run( final ObjectConsumer<? super ParseResult<T>> consumer )
+        throws InterruptedException, ExecutionException
+    {
+        final ExecutorService workers = Executors.newFixedThreadPool( parallelism );
+        try
+        {
+            for ( int i = 0; i < parallelism; i++ )
+            {
+                workers.execute( new Worker() );
+            }
+
+            int running = parallelism;
+            while ( running > 0 )
+            {
+                final Object outcome = completed.take();
+                if ( outcome == WORKER_DONE )
+                {
+                    running--;
+                }
+                else if ( outcome instanceof Throwable )
+                {
+                    throw abort( (Throwable) outcome );
+                }
+                else
+                {
+                    @SuppressWarnings( "unchecked" )
+                    final ParseResult<T> result = (ParseResult<T>) outcome;
+                    try
+                    {
+                        consumer.accept( result );
+                    }
+                    catch ( final Exception e )
+                    {
+                        throw abort( e );
+                    }
+                }
+            }
+        }
+        finally
+        {
+            // stops the workers after the files being parsed, when the batch has been aborted or interrupted
+            aborted = true;
+            workers.shutdown();
+        }
+    }
+
+    private ExecutionException abort( final Throwable cause )
+    {
+        aborted = true;
+        if ( cause instanceof Error )
+        {
+            throw (Error) cause;
+        }
+        return new ExecutionException( cause );
+    }
+
+    /**
+     * Takes the next file of the batch.
+     *
+     * @return the next file, with its position in the batch, or <code>null</code> if there are no more files to parse
+     */
+    private ParseResult<T> take()
+    {
+        synchronized ( files )
+        {
+            if ( aborted || !files.hasNext() )
+            {
+                return null;
+            }
+            final Path path = files.next();
+            if ( path == null )
+            {
+                throw new IllegalArgumentException( "Null file at position " + next + " of the batch" );
+            }
+            return new ParseResult<T>( next++, path, null, null );
+        }
+    }
+
+    /**
+     * Parses files until the batch is exhausted, with the same Digester.
+     */
+    private final class Worker
+        implements Runnable
+    {
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                final ReusableDigester digester = loader.newReusableDigester( ruleSet );
+                ParseResult<T> file;
+                while ( ( file = take() ) != null )
+                {
+                    completed.add( parse( digester, file ) );
+                }
+            }
+            catch ( final Throwable t )
+            {
+                // the whole batch is compromised, not just one file
+                completed.add( t );
+            }
+            finally
+            {
+                completed.add( WORKER_DONE );
+            }
+        }
+
+        private ParseResult<T> parse( final ReusableDigester digester, final ParseResult<T> file )
+        {
+            final Path path = file.getPath();
+            try
+            {
+                final T root = digester.getDigester().<T> parse( path );
+                return new ParseResult<T>( file.getIndex(), path, root, null );
+            }
+            catch ( final IOException e )
+            {
+                return new ParseResult<T>( file.getIndex(), path, null, e );
+            }
+            catch ( final SAXException e )
+            {
+                return new ParseResult<T>( file.getIndex(), path, null, e );
+            }
+            catch ( final RuntimeException e )
+            {
+                // thrown by the rules
+                return new ParseResult<T>( file.getIndex(), path, null, e );
+            }
+            finally
+            {
+                digester.reset();
+            }
+        }
+
+    }
+
+}
@@ -214,7 +214,7 @@ final class DefaultRulesBinder
      *
      * @return
      */
-    RuleSet getFromBinderRuleSet()
+    FromBinderRuleSet getFromBinderRuleSet()
     {
         return fromBinderRuleSet;
     }
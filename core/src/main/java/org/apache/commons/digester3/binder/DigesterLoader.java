@@ -25,11 +25,16 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Formatter;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -38,11 +43,13 @@ import javax.xml.parsers.SAXParserFactory;
 import javax.xml.validation.Schema;
 
 import org.apache.commons.digester3.Digester;
+import org.apache.commons.digester3.ObjectConsumer;
 import org.apache.commons.digester3.RuleSet;
 import org.apache.commons.digester3.Rules;
 import org.apache.commons.digester3.RulesBase;
 import org.apache.commons.digester3.StackAction;
 import org.apache.commons.digester3.Substitutor;
+import org.apache.commons.digester3.TrieRules;
 import org.xml.sax.EntityResolver;
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.Locator;
@@ -141,6 +148,12 @@ public final class DigesterLoader
      */
     private ExecutorService executorService;
 
+    /**
+     * The size from which the files parsed by the Digester instances are memory mapped.
+     * @since 3.3
+     */
+    private long memoryMappingThreshold = Digester.DEFAULT_MEMORY_MAPPING_THRESHOLD;
+
     /**
      * The application-supplied error handler that is notified when parsing warnings, errors, or fatal errors occur.
      * @since 3.2
@@ -434,6 +447,36 @@ public final class DigesterLoader
         return this;
     }
 
+    /**
+     * Returns the size from which the files parsed by the Digester instances are memory mapped.
+     *
+     * @return the size from which the parsed files are memory mapped, in bytes
+     * @since 3.3
+     */
+    public long getMemoryMappingThreshold()
+    {
+        return memoryMappingThreshold;
+    }
+
+    /**
+     * Sets the size from which the files parsed by the Digester instances are memory mapped.
+     *
+     * @param memoryMappingThreshold the size from which the parsed files are memory mapped, in bytes
+     * @return This loader instance, useful to chain methods.
+     * @see Digester#setMemoryMappingThreshold(long)
+     * @since 3.3
+     */
+    public DigesterLoader setMemoryMappingThreshold( final long memoryMappingThreshold )
+    {
+        if ( memoryMappingThreshold < 0 )
+        {
+            throw new IllegalArgumentException( "Memory mapping threshold must be not negative, was "
+                + memoryMappingThreshold );
+        }
+        this.memoryMappingThreshold = memoryMappingThreshold;
+        return this;
+    }
+
     /**
      * Return the error handler for this Digester.
      *
@@ -500,18 +543,7 @@ public final class DigesterLoader
      */
     public Digester newDigester( final Rules rules )
     {
-        try
-        {
-            return this.newDigester( this.factory.newSAXParser(), rules );
-        }
-        catch ( final ParserConfigurationException e )
-        {
-            throw new DigesterLoadingException( "SAX Parser misconfigured", e );
-        }
-        catch ( final SAXException e )
-        {
-            throw new DigesterLoadingException( "An error occurred while initializing the SAX Parser", e );
-        }
+        return this.newDigester( newSAXParser(), rules );
     }
 
     /**
@@ -588,7 +620,192 @@ public final class DigesterLoader
             throw new DigesterLoadingException( "Impossible to create a new Digester with null Rules" );
         }
 
+        return newDigester( reader, rules, createRuleSet() );
+    }
+
+    /**
+     * Creates a new {@link DigesterTemplate}, which validates and freezes the rules bound so far and then serves
+     * parses from any thread, reusing one {@link Digester} per thread.
+     *
+     * The template creates the Digester instances with the configuration of this loader at the time they are needed,
+     * so the loader should be fully configured before the template is used.
+     *
+     * @return a new {@link DigesterTemplate} instance
+     * @since 3.3
+     */
+    public DigesterTemplate newTemplate()
+    {
+        return new DigesterTemplate( this, createFrozenRuleSet() );
+    }
+
+    /**
+     * Creates a new {@link DigesterPool}, which validates and freezes the rules bound so far and then lends up to
+     * <code>maxSize</code> reusable {@link Digester} instances to concurrent parses.
+     *
+     * The pool creates the Digester instances with the configuration of this loader at the time they are needed, so
+     * the loader should be fully configured before the pool is used.
+     *
+     * @param maxSize The maximum number of Digester instances created by the pool
+     * @return a new {@link DigesterPool} instance
+     * @since 3.3
+     */
+    public DigesterPool newPool( final int maxSize )
+    {
+        return new DigesterPool( this, createFrozenRuleSet(), maxSize );
+    }
+
+    /**
+     * Creates a new {@link ParallelRecordParser}, which validates and freezes the rules bound so far and then parses
+     * documents made of a long sequence of records on several cores, by splitting them at the records start tags.
+     *
+     * @param <T> the type of the records
+     * @param recordPattern The pattern matching the records, children of the document element
+     * @param type The type of the records
+     * @return a new {@link ParallelRecordParser} instance
+     * @since 3.3
+     */
+    public <T> ParallelRecordParser<T> newParallelRecordParser( final String recordPattern, final Class<T> type )
+    {
+        if ( recordPattern == null )
+        {
+            throw new IllegalArgumentException( "Parameter 'recordPattern' must be not null" );
+        }
+        if ( type == null )
+        {
+            throw new IllegalArgumentException( "Parameter 'type' must be not null" );
+        }
+        return new ParallelRecordParser<T>( this, createFrozenRuleSet(), recordPattern, type );
+    }
+
+    /**
+     * Parses a batch of files on <code>parallelism</code> threads, each of them reusing one {@link Digester}, and its
+     * XML reader, for all the files it parses. The failure to parse a file does not abort the batch: it is reported
+     * by the {@link ParseResult} of that file.
+     *
+     * The rules bound so far are validated and frozen when the batch starts.
+     *
+     * @param <T> the type of the root objects
+     * @param files The files to parse
+     * @param parallelism The number of threads parsing the files
+     * @return the outcomes of the parses, in the iteration order of <code>files</code>
+     * @throws InterruptedException if the current thread is interrupted while waiting for the parses
+     * @throws ExecutionException if the batch is aborted because the iteration over the files failed
+     * @since 3.3
+     */
+    public <T> List<ParseResult<T>> parseAll( final Iterable<Path> files, final int parallelism )
+        throws InterruptedException, ExecutionException
+    {
+        final List<ParseResult<T>> results = new ArrayList<ParseResult<T>>();
+        parseAll( files, parallelism, new ObjectConsumer<ParseResult<T>>()
+        {
+
+            @Override
+            public void accept( final ParseResult<T> result )
+            {
+                results.add( result );
+            }
+
+        } );
+        Collections.sort( results, new Comparator<ParseResult<T>>()
+        {
+
+            @Override
+            public int compare( final ParseResult<T> first, final ParseResult<T> second )
+            {
+                return first.getIndex() < second.getIndex() ? -1 : ( first.getIndex() == second.getIndex() ? 0 : 1 );
+            }
+
+        } );
+        return results;
+    }
+
+    /**
+     * Parses a batch of files on <code>parallelism</code> threads, each of them reusing one {@link Digester}, and its
+     * XML reader, for all the files it parses, handing the outcome of every parse to the given consumer as soon as it
+     * is available. The failure to parse a file does not abort the batch: it is reported by the {@link ParseResult}
+     * of that file.
+     *
+     * The consumer is invoked on the current thread, in completion order, so it does not need to be thread-safe. The
+     * rules bound so far are validated and frozen when the batch starts.
+     *
+     * @param <T> the type of the root objects
+     * @param files The files to parse
+     * @param parallelism The number of threads parsing the files
+     * @param consumer The consumer of the outcomes of the parses
+     * @throws InterruptedException if the current thread is interrupted while waiting for the parses
+     * @throws ExecutionException if the batch is aborted because the consumer, or the iteration over the files,
+     *         failed
+     * @since 3.3
+     */
+    public <T> void parseAll( final Iterable<Path> files, final int parallelism,
+                              final ObjectConsumer<? super ParseResult<T>> consumer )
+        throws InterruptedException, ExecutionException
+    {
+        if ( files == null )
+        {
+            throw new IllegalArgumentException( "Parameter 'files' must be not null" );
+        }
+        if ( parallelism < 1 )
+        {
+            throw new IllegalArgumentException( "Parameter 'parallelism' must be positive, was " + parallelism );
+        }
+        if ( consumer == null )
+        {
+            throw new IllegalArgumentException( "Parameter 'consumer' must be not null" );
+        }
+        new BatchParse<T>( this, createFrozenRuleSet(), files, parallelism ).run( consumer );
+    }
+
+    /**
+     * Creates a new {@link Digester} instance, with its own SAX parser, that relies on a new {@link TrieRules}
+     * populated from the given {@link RuleSet}, ready to be reused by templates, pools and batch parses.
+     *
+     * @param ruleSet The {@link RuleSet} that populates the new Digester
+     * @return a new reusable {@link Digester} instance
+     * @since 3.3
+     */
+    ReusableDigester newReusableDigester( final RuleSet ruleSet )
+    {
+        try
+        {
+            final Rules rules = new TrieRules();
+            final ReusableDigester.PooledDigester digester =
+                new ReusableDigester.PooledDigester( newSAXParser().getXMLReader() );
+            configure( digester, rules, ruleSet );
+            return new ReusableDigester( digester, rules, ruleSet );
+        }
+        catch ( final SAXException e )
+        {
+            throw new DigesterLoadingException( "An error occurred while creating the XML Reader", e );
+        }
+    }
+
+    /**
+     * Creates a new {@link Digester} instance that relies on the given {@link XMLReader} and {@link Rules}
+     * implementation and is populated from the given {@link RuleSet}.
+     *
+     * @param reader The {@code XMLReader} the new Digester relies on
+     * @param rules The {@link Rules} implementation the new Digester relies on
+     * @param ruleSet The {@link RuleSet} that populates the new Digester
+     * @return a new {@link Digester} instance
+     */
+    private Digester newDigester( final XMLReader reader, final Rules rules, final RuleSet ruleSet )
+    {
         final Digester digester = new Digester( reader );
+        configure( digester, rules, ruleSet );
+        return digester;
+    }
+
+    /**
+     * Configures the given {@link Digester} instance with the given {@link Rules} implementation and the settings of
+     * this loader, and populates it from the given {@link RuleSet}.
+     *
+     * @param digester The {@link Digester} instance to configure
+     * @param rules The {@link Rules} implementation the Digester relies on
+     * @param ruleSet The {@link RuleSet} that populates the Digester
+     */
+    private void configure( final Digester digester, final Rules rules, final RuleSet ruleSet )
+    {
         // the ClassLoader adapter is no needed anymore
         digester.setClassLoader( classLoader.getAdaptedClassLoader() );
         digester.setRules( rules );
@@ -598,12 +815,36 @@ public final class DigesterLoader
         digester.setStackAction( stackAction );
         digester.setNamespaceAware( isNamespaceAware() );
         digester.setExecutorService( executorService );
+        digester.setMemoryMappingThreshold( memoryMappingThreshold );
         digester.setErrorHandler( errorHandler );
         digester.setDocumentLocator( locator );
 
-        addRules( digester );
+        ruleSet.addRuleInstances( digester );
+    }
 
-        return digester;
+    /**
+     * Creates a new {@link SAXParser} from the factory configured in this loader. The factory is not guaranteed to be
+     * thread-safe, so accesses are serialized.
+     *
+     * @return a new {@link SAXParser} instance
+     */
+    private SAXParser newSAXParser()
+    {
+        try
+        {
+            synchronized ( factory )
+            {
+                return factory.newSAXParser();
+            }
+        }
+        catch ( final ParserConfigurationException e )
+        {
+            throw new DigesterLoadingException( "SAX Parser misconfigured", e );
+        }
+        catch ( final SAXException e )
+        {
+            throw new DigesterLoadingException( "An error occurred while initializing the SAX Parser", e );
+        }
     }
 
     /**
@@ -659,4 +900,17 @@ public final class DigesterLoader
         return rulesBinder.getFromBinderRuleSet();
     }
 
+    /**
+     * Creates a new {@link RuleSet} instance based on the current configuration, which is not affected by later
+     * reconfigurations of this loader.
+     *
+     * @return A new {@link RuleSet} instance based on a snapshot of the current configuration.
+     * @since 3.3
+     */
+    RuleSet createFrozenRuleSet()
+    {
+        createRuleSet();
+        return rulesBinder.getFromBinderRuleSet().snapshot();
+    }
+
 }
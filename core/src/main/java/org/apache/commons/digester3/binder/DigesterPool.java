@@ -0,0 +1,281 @@
+package org.apache.commons.digester3.binder;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.digester3.Digester;
+import org.apache.commons.digester3.RuleSet;
+
+/**
+ * A thread-safe, bounded pool of {@link Digester} instances created from the rules bound in a {@link DigesterLoader}.
+ *
+ * Digester instances are borrowed for the duration of one parse and must then be given back through
+ * {@link #release(Digester)}, which resets them for the next borrower, whatever the outcome of the parse:
+ *
+ * <pre>
+ * Digester digester = pool.borrow();
+ * try
+ * {
+ *     return digester.parse( input );
+ * }
+ * finally
+ * {
+ *     pool.release( digester );
+ * }
+ * </pre>
+ *
+ * At most {@link #getMaxSize()} Digester instances are created, further borrowers wait until one is released. The
+ * pool keeps track of the borrows served by an idle instance (hits), by a new instance (misses), and of the ones which
+ * had to wait.
+ *
+ * @since 3.3
+ */
+public final class DigesterPool
+{
+
+    private final DigesterLoader loader;
+
+    private final RuleSet ruleSet;
+
+    private final int maxSize;
+
+    /**
+     * One permit per Digester which may still be borrowed.
+     */
+    private final Semaphore available;
+
+    private final Queue<ReusableDigester> idle = new ConcurrentLinkedQueue<ReusableDigester>();
+
+    private final ConcurrentMap<Digester, ReusableDigester> borrowed =
+        new ConcurrentHashMap<Digester, ReusableDigester>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong waits = new AtomicLong();
+
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    /**
+     * Creates a new pool that populates its Digester instances from the given frozen rule set.
+     *
+     * @param loader The loader holding the Digester configuration
+     * @param ruleSet The frozen rule set
+     * @param maxSize The maximum number of Digester instances created by the pool
+     */
+    DigesterPool( final DigesterLoader loader, final RuleSet ruleSet, final int maxSize )
+    {
+        if ( maxSize < 1 )
+        {
+            throw new IllegalArgumentException( "Parameter 'maxSize' must be positive, was " + maxSize );
+        }
+        this.loader = loader;
+        this.ruleSet = ruleSet;
+        this.maxSize = maxSize;
+        this.available = new Semaphore( maxSize, true );
+    }
+
+    /**
+     * Borrows a Digester from this pool, waiting if all of them are in use.
+     *
+     * @return a Digester ready to parse a document
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public Digester borrow()
+        throws InterruptedException
+    {
+        if ( !available.tryAcquire() )
+        {
+            final long start = System.nanoTime();
+            available.acquire();
+            waited( start );
+        }
+        return take();
+    }
+
+    /**
+     * Borrows a Digester from this pool, waiting up to the given time if all of them are in use.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the time unit of the timeout argument
+     * @return a Digester ready to parse a document, or <code>null</code> if none became available in time
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public Digester borrow( final long timeout, final TimeUnit unit )
+        throws InterruptedException
+    {
+        if ( !available.tryAcquire() )
+        {
+            final long start = System.nanoTime();
+            final boolean acquired = available.tryAcquire( timeout, unit );
+            waited( start );
+            if ( !acquired )
+            {
+                return null;
+            }
+        }
+        return take();
+    }
+
+    /**
+     * Gives back a Digester borrowed from this pool. The Digester is reset, so it must not be used by the caller
+     * anymore.
+     *
+     * @param digester the borrowed Digester
+     */
+    public void release( final Digester digester )
+    {
+        if ( digester == null )
+        {
+            throw new IllegalArgumentException( "Parameter 'digester' must be not null" );
+        }
+
+        final ReusableDigester pooled = borrowed.remove( digester );
+        if ( pooled == null )
+        {
+            throw new IllegalArgumentException( "Digester " + digester + " has not been borrowed from this pool" );
+        }
+
+        try
+        {
+            pooled.reset();
+            idle.offer( pooled );
+        }
+        finally
+        {
+            available.release();
+        }
+    }
+
+    /**
+     * Returns the maximum number of Digester instances created by this pool.
+     *
+     * @return the maximum number of Digester instances created by this pool
+     */
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of Digester instances currently borrowed.
+     *
+     * @return the number of Digester instances currently borrowed
+     */
+    public int getActiveCount()
+    {
+        return borrowed.size();
+    }
+
+    /**
+     * Returns the number of Digester instances created and waiting to be borrowed.
+     *
+     * @return the number of idle Digester instances
+     */
+    public int getIdleCount()
+    {
+        return idle.size();
+    }
+
+    /**
+     * Returns the number of borrows served by an idle Digester.
+     *
+     * @return the number of borrows served by an idle Digester
+     */
+    public long getHitCount()
+    {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of borrows which required a new Digester to be created.
+     *
+     * @return the number of borrows which required a new Digester to be created
+     */
+    public long getMissCount()
+    {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of borrows which had to wait for a Digester to be released.
+     *
+     * @return the number of borrows which had to wait
+     */
+    public long getWaitCount()
+    {
+        return waits.get();
+    }
+
+    /**
+     * Returns the total time spent by borrowers waiting for a Digester to be released.
+     *
+     * @param unit the time unit of the returned value
+     * @return the total waiting time
+     */
+    public long getWaitTime( final TimeUnit unit )
+    {
+        return unit.convert( waitNanos.get(), TimeUnit.NANOSECONDS );
+    }
+
+    /**
+     * Takes an idle Digester, or creates a new one, once a permit has been acquired.
+     *
+     * @return the borrowed Digester
+     */
+    private Digester take()
+    {
+        try
+        {
+            ReusableDigester pooled = idle.poll();
+            if ( pooled != null )
+            {
+                hits.incrementAndGet();
+            }
+            else
+            {
+                misses.incrementAndGet();
+                pooled = loader.newReusableDigester( ruleSet );
+            }
+            borrowed.put( pooled.getDigester(), pooled );
+            return pooled.getDigester();
+        }
+        catch ( final RuntimeException e )
+        {
+            available.release();
+            throw e;
+        }
+    }
+
+    private void waited( final long start )
+    {
+        waits.incrementAndGet();
+        waitNanos.addAndGet( System.nanoTime() - start );
+    }
+
+}
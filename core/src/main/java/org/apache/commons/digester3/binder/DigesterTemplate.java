@@ -0,0 +1,323 @@
+package org.apache.commons.digester3.binder;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.file.Path;
+
+import org.apache.commons.digester3.Digester;
+import org.apache.commons.digester3.RuleSet;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * A thread-safe entry point to parse documents with the rules bound in a {@link DigesterLoader}.
+ *
+ * The rules are validated and frozen once, when the template is created by {@link DigesterLoader#newTemplate()}.
+ * Each thread then lazily gets its own execution context: a {@link Digester} with its own SAX parser, stacks and
+ * {@link org.apache.commons.digester3.Rule} instances, matched through a {@link TrieRules} that is compiled on the
+ * first parse. The context is reset after every parse and reused by the next parse performed by the same thread, so
+ * the cost of building the rules and the parser is paid once per thread rather than once per document.
+ *
+ * Rule instances are not shared between threads, since a Rule is bound to the Digester that fires it and many rules
+ * keep state while an element is being processed.
+ *
+ * @since 3.3
+ */
+public final class DigesterTemplate
+{
+
+    private final DigesterLoader loader;
+
+    private final RuleSet ruleSet;
+
+    private final ThreadLocal<ReusableDigester> contexts = new ThreadLocal<ReusableDigester>();
+
+    /**
+     * Creates a new template that populates its Digester instances from the given frozen rule set.
+     *
+     * @param loader The loader holding the Digester configuration
+     * @param ruleSet The frozen rule set
+     */
+    DigesterTemplate( final DigesterLoader loader, final RuleSet ruleSet )
+    {
+        this.loader = loader;
+        this.ruleSet = ruleSet;
+    }
+
+    /**
+     * Parse the content of the specified file using the Digester of the current thread.
+     *
+     * @param <T> the type used to auto-cast the returned object to the assigned variable type
+     * @param file File containing the XML data to be parsed
+     * @return the root element from the object stack (if any)
+     * @throws IOException if an input/output error occurs
+     * @throws SAXException if a parsing exception occurs
+     * @see Digester#parse(File)
+     */
+    public <T> T parse( final File file )
+        throws IOException, SAXException
+    {
+        final ReusableDigester context = acquire();
+        try
+        {
+            return context.getDigester().<T> parse( file );
+        }
+        finally
+        {
+            release( context );
+        }
+    }
+
+    /**
+     * Parse the content of the specified file using the Digester of the current thread.
+     *
+     * @param <T> the type used to auto-cast the returned object to the assigned variable type
+     * @param path Path of the file containing the XML data to be parsed
+     * @return the root element from the object stack (if any)
+     * @throws IOException if an input/output error occurs
+     * @throws SAXException if a parsing exception occurs
+     * @see Digester#parse(Path)
+     */
+    public <T> T parse( final Path path )
+        throws IOException, SAXException
+    {
+        final ReusableDigester context = acquire();
+        try
+        {
+            return context.getDigester().<T> parse( path );
+        }
+        finally
+        {
+            release( context );
+        }
+    }
+
+    /**
+     * Parse the content of the specified, possibly compressed, input stream using the Digester of the current thread.
+     *
+     * @param <T> the type used to auto-cast the returned object to the assigned variable type
+     * @param input Input stream containing the possibly compressed XML data to be parsed
+     * @return the root element from the object stack (if any)
+     * @throws IOException if an input/output error occurs
+     * @throws SAXException if a parsing exception occurs
+     * @see Digester#parseCompressed(InputStream)
+     */
+    public <T> T parseCompressed( final InputStream input )
+        throws IOException, SAXException
+    {
+        final ReusableDigester context = acquire();
+        try
+        {
+            return context.getDigester().<T> parseCompressed( input );
+        }
+        finally
+        {
+            release( context );
+        }
+    }
+
+    /**
+     * Parse the content of the specified, possibly compressed, file using the Digester of the current thread.
+     *
+     * @param <T> the type used to auto-cast the returned object to the assigned variable type
+     * @param path Path of the file containing the possibly compressed XML data to be parsed
+     * @return the root element from the object stack (if any)
+     * @throws IOException if an input/output error occurs
+     * @throws SAXException if a parsing exception occurs
+     * @see Digester#parseCompressed(Path)
+     */
+    public <T> T parseCompressed( final Path path )
+        throws IOException, SAXException
+    {
+        final ReusableDigester context = acquire();
+        try
+        {
+            return context.getDigester().<T> parseCompressed( path );
+        }
+        finally
+        {
+            release( context );
+        }
+    }
+
+    /**
+     * Parse the content of the specified input source using the Digester of the current thread.
+     *
+     * @param <T> the type used to auto-cast the returned object to the assigned variable type
+     * @param input Input source containing the XML data to be parsed
+     * @return the root element from the object stack (if any)
+     * @throws IOException if an input/output error occurs
+     * @throws SAXException if a parsing exception occurs
+     * @see Digester#parse(InputSource)
+     */
+    public <T> T parse( final InputSource input )
+        throws IOException, SAXException
+    {
+        final ReusableDigester context = acquire();
+        try
+        {
+            return context.getDigester().<T> parse( input );
+        }
+        finally
+        {
+            release( context );
+        }
+    }
+
+    /**
+     * Parse the content of the specified input stream using the Digester of the current thread.
+     *
+     * @param <T> the type used to auto-cast the returned object to the assigned variable type
+     * @param input Input stream containing the XML data to be parsed
+     * @return the root element from the object stack (if any)
+     * @throws IOException if an input/output error occurs
+     * @throws SAXException if a parsing exception occurs
+     * @see Digester#parse(InputStream)
+     */
+    public <T> T parse( final InputStream input )
+        throws IOException, SAXException
+    {
+        final ReusableDigester context = acquire();
+        try
+        {
+            return context.getDigester().<T> parse( input );
+        }
+        finally
+        {
+            release( context );
+        }
+    }
+
+    /**
+     * Parse the content of the specified reader using the Digester of the current thread.
+     *
+     * @param <T> the type used to auto-cast the returned object to the assigned variable type
+     * @param reader Reader containing the XML data to be parsed
+     * @return the root element from the object stack (if any)
+     * @throws IOException if an input/output error occurs
+     * @throws SAXException if a parsing exception occurs
+     * @see Digester#parse(Reader)
+     */
+    public <T> T parse( final Reader reader )
+        throws IOException, SAXException
+    {
+        final ReusableDigester context = acquire();
+        try
+        {
+            return context.getDigester().<T> parse( reader );
+        }
+        finally
+        {
+            release( context );
+        }
+    }
+
+    /**
+     * Parse the content of the specified URI using the Digester of the current thread.
+     *
+     * @param <T> the type used to auto-cast the returned object to the assigned variable type
+     * @param uri URI containing the XML data to be parsed
+     * @return the root element from the object stack (if any)
+     * @throws IOException if an input/output error occurs
+     * @throws SAXException if a parsing exception occurs
+     * @see Digester#parse(String)
+     */
+    public <T> T parse( final String uri )
+        throws IOException, SAXException
+    {
+        final ReusableDigester context = acquire();
+        try
+        {
+            return context.getDigester().<T> parse( uri );
+        }
+        finally
+        {
+            release( context );
+        }
+    }
+
+    /**
+     * Parse the content of the specified URL using the Digester of the current thread.
+     *
+     * @param <T> the type used to auto-cast the returned object to the assigned variable type
+     * @param url URL containing the XML data to be parsed
+     * @return the root element from the object stack (if any)
+     * @throws IOException if an input/output error occurs
+     * @throws SAXException if a parsing exception occurs
+     * @see Digester#parse(URL)
+     */
+    public <T> T parse( final URL url )
+        throws IOException, SAXException
+    {
+        final ReusableDigester context = acquire();
+        try
+        {
+            return context.getDigester().<T> parse( url );
+        }
+        finally
+        {
+            release( context );
+        }
+    }
+
+    /**
+     * Returns the execution context of the current thread, creating it on first use. A parse started from within
+     * another parse on the same thread, e.g. by a rule, gets a dedicated context.
+     *
+     * @return an execution context which is not used by any other parse
+     */
+    private ReusableDigester acquire()
+    {
+        ReusableDigester context = contexts.get();
+        if ( context == null )
+        {
+            context = newContext();
+            contexts.set( context );
+        }
+        else if ( context.isInUse() )
+        {
+            context = newContext();
+        }
+        context.setInUse( true );
+        return context;
+    }
+
+    /**
+     * Restores the given context for the next parse of the current thread.
+     *
+     * @param context the context used by the completed parse
+     */
+    private void release( final ReusableDigester context )
+    {
+        context.reset();
+        context.setInUse( false );
+    }
+
+    private ReusableDigester newContext()
+    {
+        return loader.newReusableDigester( ruleSet );
+    }
+
+}
@@ -113,6 +113,18 @@ final class FromBinderRuleSet
         return null;
     }
 
+    /**
+     * Returns a {@link RuleSet} over the providers registered so far, which is not affected by later registrations or
+     * by {@link #clear()}.
+     *
+     * @return a {@link RuleSet} over a snapshot of the registered providers
+     * @since 3.3
+     */
+    public RuleSet snapshot()
+    {
+        return new FrozenRuleSet( new ArrayList<AbstractBackToLinkedRuleBuilder<? extends Rule>>( providers ) );
+    }
+
     /**
      * Clean the provider index.
      */
@@ -143,6 +155,43 @@ final class FromBinderRuleSet
         return null;
     }
 
+    /**
+     * Immutable copy of the registered providers.
+     */
+    private static final class FrozenRuleSet
+        implements RuleSet
+    {
+
+        private final AbstractBackToLinkedRuleBuilder<?>[] providers;
+
+        public FrozenRuleSet( final Collection<AbstractBackToLinkedRuleBuilder<? extends Rule>> providers )
+        {
+            this.providers = providers.toArray( new AbstractBackToLinkedRuleBuilder<?>[providers.size()] );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void addRuleInstances( final Digester digester )
+        {
+            for ( final AbstractBackToLinkedRuleBuilder<?> provider : providers )
+            {
+                digester.addRule( provider.getPattern(), provider.get() );
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String getNamespaceURI()
+        {
+            return null;
+        }
+
+    }
+
     /**
      * Used to associate pattern/namespaceURI
      */
@@ -0,0 +1,433 @@
+package org.apache.commons.digester3.binder;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.apache.commons.digester3.Digester;
+import org.apache.commons.digester3.ObjectConsumer;
+import org.apache.commons.digester3.RuleSet;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Parses a document made of a document element wrapping a long sequence of sibling records on several cores.
+ *
+ * The document is scanned at the byte level, without being parsed, and split into chunks at the start tags of the
+ * records. Every chunk is wrapped between the prolog and the start tag of the document element, so that the
+ * namespace declarations are replayed, and the end tag of the document element, and is parsed by its own
+ * {@link Digester} created from the rules bound in a {@link DigesterLoader}, on a fork/join pool. The objects completed
+ * at the record pattern are streamed (see {@link Digester#stream(String, Class, ObjectConsumer)}) and merged back in
+ * document order. The parser keeps its pool of Digester instances from one parse to the next, and is safe for use by
+ * multiple threads.
+ *
+ * Only a bounded number of chunks are parsed ahead of the records handed to the caller, so that
+ * {@link #parse(File, ForkJoinPool, ObjectConsumer)} parses documents of any size in bounded memory. A chunk is buffered
+ * whole, so it must not exceed 2 GB, which happens only with a record of this size.
+ *
+ * The records must be children of the document element, and the document must be encoded with an encoding whose markup
+ * characters are single ASCII bytes, such as UTF-8 or ISO-8859-1. Since every chunk gets its own object stack, rules
+ * must not rely on objects created by elements outside of the records, other than the document element.
+ *
+ * @param <T> the type of the records
+ * @since 3.3
+ */
+public final class ParallelRecordParser<T>
+{
+
+    /**
+     * The default minimum size of a chunk, in bytes.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private final DigesterLoader loader;
+
+    private final RuleSet ruleSet;
+
+    private final String recordPattern;
+
+    private final String recordName;
+
+    private final Class<T> type;
+
+    private volatile int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * The Digester instances reused by all the parses, replaced by a larger pool when the parallelism grows.
+     */
+    private DigesterPool digesters;
+
+    /**
+     * Creates a new parser that populates its Digester instances from the given frozen rule set.
+     *
+     * @param loader The loader holding the Digester configuration
+     * @param ruleSet The frozen rule set
+     * @param recordPattern The pattern matching the records, whose last segment is the name of the record element
+     * @param type The type of the records
+     */
+    ParallelRecordParser( final DigesterLoader loader, final RuleSet ruleSet, final String recordPattern,
+                          final Class<T> type )
+    {
+        this.loader = loader;
+        this.ruleSet = ruleSet;
+        this.recordPattern = recordPattern;
+        this.recordName = recordPattern.substring( recordPattern.lastIndexOf( '/' ) + 1 );
+        this.type = type;
+    }
+
+    /**
+     * Returns the minimum size of a chunk, in bytes.
+     *
+     * @return the minimum size of a chunk, in bytes
+     */
+    public int getChunkSize()
+    {
+        return chunkSize;
+    }
+
+    /**
+     * Sets the minimum size of a chunk, in bytes. Smaller chunks balance the load better, larger ones reduce the
+     * overhead of starting a parse.
+     *
+     * @param chunkSize the minimum size of a chunk, in bytes
+     * @return this parser instance, useful for chaining methods
+     */
+    public ParallelRecordParser<T> setChunkSize( final int chunkSize )
+    {
+        if ( chunkSize < 1 )
+        {
+            throw new IllegalArgumentException( "Parameter 'chunkSize' must be positive, was " + chunkSize );
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Parses the given file on the given pool, with at most as many Digester instances as the parallelism of the pool,
+     * and returns the records in document order. All the records are held in memory at once; use
+     * {@link #parse(File, ForkJoinPool, ObjectConsumer)} to process them as they are parsed.
+     *
+     * @param file File containing the XML data to be parsed
+     * @param pool the pool the chunks are parsed on
+     * @return the records, in document order
+     * @throws IOException if an input/output error occurs, or if the document can't be split
+     * @throws SAXException if a parsing exception occurs
+     */
+    public List<T> parse( final File file, final ForkJoinPool pool )
+        throws IOException, SAXException
+    {
+        final List<T> records = new ArrayList<T>();
+        parse( file, pool, new ObjectConsumer<T>()
+        {
+
+            @Override
+            public void accept( final T record )
+            {
+                records.add( record );
+            }
+
+        } );
+        return records;
+    }
+
+    /**
+     * Parses the given file on the given pool, with at most as many Digester instances as the parallelism of the pool,
+     * and hands the records to the given consumer in document order, on the calling thread. At most twice as many
+     * chunks as the parallelism of the pool are parsed ahead of the consumer.
+     *
+     * @param file File containing the XML data to be parsed
+     * @param pool the pool the chunks are parsed on
+     * @param consumer the consumer the records are handed to
+     * @throws IOException if an input/output error occurs, or if the document can't be split
+     * @throws SAXException if a parsing exception occurs, or if the consumer fails
+     */
+    public void parse( final File file, final ForkJoinPool pool, final ObjectConsumer<? super T> consumer )
+        throws IOException, SAXException
+    {
+        if ( file == null )
+        {
+            throw new IllegalArgumentException( "File to parse is null" );
+        }
+        if ( pool == null )
+        {
+            throw new IllegalArgumentException( "ForkJoinPool is null" );
+        }
+        if ( consumer == null )
+        {
+            throw new IllegalArgumentException( "ObjectConsumer is null" );
+        }
+
+        final DigesterPool digesters = getDigesters( pool.getParallelism() );
+        final int maxPending = 2 * pool.getParallelism();
+        final String systemId = file.toURI().toURL().toString();
+        final Queue<ForkJoinTask<List<T>>> tasks = new ArrayDeque<ForkJoinTask<List<T>>>();
+        final RandomAccessFile chunks = new RandomAccessFile( file, "r" );
+        try
+        {
+            // chunks are parsed while the rest of the document is being scanned
+            final InputStream input = new FileInputStream( file );
+            try
+            {
+                final RecordSplitter splitter = new RecordSplitter( input, recordName, chunkSize );
+                final byte[] header = splitter.getHeader();
+                final byte[] footer = splitter.getFooter();
+                long[] chunk;
+                while ( ( chunk = splitter.next() ) != null )
+                {
+                    final int length = documentLength( header, chunk[0], chunk[1], footer );
+                    if ( length < 0 )
+                    {
+                        throw new IOException( "The chunk of " + ( chunk[1] - chunk[0] ) + " bytes at offset "
+                            + chunk[0] + " of " + systemId + " exceeds the 2 GB that can be buffered for a parse" );
+                    }
+                    tasks.add( pool.submit( new ChunkParse( digesters, chunks.getChannel(), systemId, header,
+                                                            chunk[0], length, footer ) ) );
+                    if ( tasks.size() > maxPending )
+                    {
+                        consume( tasks.remove(), consumer );
+                    }
+                }
+            }
+            finally
+            {
+                input.close();
+            }
+
+            while ( !tasks.isEmpty() )
+            {
+                consume( tasks.remove(), consumer );
+            }
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted while parsing " + systemId, e );
+        }
+        catch ( final ExecutionException e )
+        {
+            // the pool wraps the checked exceptions thrown by a task, once per thread it crosses
+            Throwable cause = e.getCause();
+            while ( cause.getClass() == RuntimeException.class && cause.getCause() != null )
+            {
+                cause = cause.getCause();
+            }
+            if ( cause instanceof SAXException )
+            {
+                throw (SAXException) cause;
+            }
+            if ( cause instanceof IOException )
+            {
+                throw (IOException) cause;
+            }
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new SAXException( (Exception) cause );
+        }
+        finally
+        {
+            for ( final ForkJoinTask<List<T>> task : tasks )
+            {
+                task.cancel( false );
+            }
+            // wait for the running chunks, which read from the file
+            for ( final ForkJoinTask<List<T>> task : tasks )
+            {
+                try
+                {
+                    task.join();
+                }
+                catch ( final RuntimeException e )
+                {
+                    // already reported, or cancelled
+                }
+            }
+            chunks.close();
+        }
+    }
+
+    /**
+     * Returns the pool of Digester instances, created or replaced by a larger one if it can't lend as many instances as
+     * the given parallelism.
+     *
+     * @param parallelism the number of chunks parsed at once
+     * @return the pool of Digester instances
+     */
+    private synchronized DigesterPool getDigesters( final int parallelism )
+    {
+        if ( digesters == null || digesters.getMaxSize() < parallelism )
+        {
+            digesters = new DigesterPool( loader, ruleSet, parallelism );
+        }
+        return digesters;
+    }
+
+    /**
+     * Waits for the given chunk to be parsed, and hands its records to the given consumer.
+     *
+     * @param task the parse of the chunk
+     * @param consumer the consumer the records are handed to
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     * @throws ExecutionException if the parse of the chunk failed
+     * @throws SAXException if the consumer fails
+     */
+    private void consume( final ForkJoinTask<List<T>> task, final ObjectConsumer<? super T> consumer )
+        throws InterruptedException, ExecutionException, SAXException
+    {
+        for ( final T record : task.get() )
+        {
+            try
+            {
+                consumer.accept( record );
+            }
+            catch ( final SAXException e )
+            {
+                throw e;
+            }
+            catch ( final RuntimeException e )
+            {
+                throw e;
+            }
+            catch ( final Exception e )
+            {
+                throw new SAXException( e );
+            }
+        }
+    }
+
+    /**
+     * Returns the length of the document parsed for a chunk, made of the given header, of the bytes of the chunk and of
+     * the given footer.
+     *
+     * @param header the prolog and the start tag of the document element
+     * @param start the offset of the first byte of the chunk
+     * @param end the offset following the last byte of the chunk
+     * @param footer the end tag of the document element
+     * @return the length of the document, or -1 if it doesn't fit in an array
+     */
+    static int documentLength( final byte[] header, final long start, final long end, final byte[] footer )
+    {
+        final long length = header.length + ( end - start ) + footer.length;
+        return length > Integer.MAX_VALUE - 8 ? -1 : (int) length;
+    }
+
+    /**
+     * Parses one chunk with a Digester borrowed from the pool, collecting the records it contains.
+     */
+    private final class ChunkParse
+        implements Callable<List<T>>
+    {
+
+        private final DigesterPool digesters;
+
+        private final FileChannel channel;
+
+        private final String systemId;
+
+        private final byte[] header;
+
+        private final long start;
+
+        private final int length;
+
+        private final byte[] footer;
+
+        ChunkParse( final DigesterPool digesters, final FileChannel channel, final String systemId,
+                    final byte[] header, final long start, final int length, final byte[] footer )
+        {
+            this.digesters = digesters;
+            this.channel = channel;
+            this.systemId = systemId;
+            this.header = header;
+            this.start = start;
+            this.length = length;
+            this.footer = footer;
+        }
+
+        @Override
+        public List<T> call()
+            throws Exception
+        {
+            final byte[] document = new byte[length];
+            System.arraycopy( header, 0, document, 0, header.length );
+            final ByteBuffer content =
+                ByteBuffer.wrap( document, header.length, length - header.length - footer.length );
+            long position = start;
+            while ( content.hasRemaining() )
+            {
+                final int read = channel.read( content, position );
+                if ( read < 0 )
+                {
+                    throw new IOException( "Unexpected end of " + systemId );
+                }
+                position += read;
+            }
+            System.arraycopy( footer, 0, document, document.length - footer.length, footer.length );
+
+            final List<T> records = new ArrayList<T>();
+            final InputSource input = new InputSource( new ByteArrayInputStream( document ) );
+            input.setSystemId( systemId );
+
+            final Digester digester = digesters.borrow();
+            try
+            {
+                digester.stream( recordPattern, type, new ObjectConsumer<T>()
+                {
+
+                    @Override
+                    public void accept( final T record )
+                    {
+                        records.add( record );
+                    }
+
+                } );
+                digester.parse( input );
+            }
+            finally
+            {
+                digester.stream( recordPattern, type, null );
+                digesters.release( digester );
+            }
+            return records;
+        }
+
+    }
+
+}
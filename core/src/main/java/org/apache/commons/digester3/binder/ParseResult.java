@@ -0,0 +1,122 @@
+package org.apache.commons.digester3.binder;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.nio.file.Path;
+
+/**
+ * The outcome of the parse of one of the files of a batch (see {@link DigesterLoader#parseAll(Iterable, int)}): either
+ * the root object built from the file, or the exception that made its parse fail.
+ *
+ * @param <T> the type of the root objects
+ * @since 3.3
+ */
+public final class ParseResult<T>
+{
+
+    private final int index;
+
+    private final Path path;
+
+    private final T result;
+
+    private final Exception failure;
+
+    /**
+     * Creates a new parse outcome.
+     *
+     * @param index The position of the file in the batch
+     * @param path The parsed file
+     * @param result The root object built from the file, if the parse succeeded
+     * @param failure The exception that made the parse fail, if any
+     */
+    ParseResult( final int index, final Path path, final T result, final Exception failure )
+    {
+        this.index = index;
+        this.path = path;
+        this.result = result;
+        this.failure = failure;
+    }
+
+    /**
+     * Returns the position of the file in the batch.
+     *
+     * @return the position of the file in the batch
+     */
+    int getIndex()
+    {
+        return index;
+    }
+
+    /**
+     * Returns the parsed file.
+     *
+     * @return the parsed file
+     */
+    public Path getPath()
+    {
+        return path;
+    }
+
+    /**
+     * Checks if the file has been parsed successfully.
+     *
+     * @return true, if the file has been parsed successfully
+     */
+    public boolean isSuccessful()
+    {
+        return failure == null;
+    }
+
+    /**
+     * Returns the root object built from the file.
+     *
+     * @return the root object built from the file, or <code>null</code> if the parse failed
+     */
+    public T getResult()
+    {
+        return result;
+    }
+
+    /**
+     * Returns the exception that made the parse fail, usually an <code>IOException</code> or a
+     * <code>SAXException</code>.
+     *
+     * @return the exception that made the parse fail, or <code>null</code> if the parse succeeded
+     */
+    public Exception getFailure()
+    {
+        return failure;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        if ( failure != null )
+        {
+            return String.format( "ParseResult[path=%s, failure=%s]", path, failure );
+        }
+        return String.format( "ParseResult[path=%s, result=%s]", path, result );
+    }
+
+}
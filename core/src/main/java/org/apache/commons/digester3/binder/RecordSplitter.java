@@ -0,0 +1,423 @@
+package org.apache.commons.digester3.binder;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Splits the content of the document element of an XML document into chunks, at the start tags of the children of the
+ * document element with a given name, by scanning its bytes without parsing them.
+ *
+ * The scanner only tracks the element nesting, skipping comments, processing instructions, CDATA sections, document
+ * type declarations and quoted attribute values, so it requires an encoding whose markup characters are single ASCII
+ * bytes, such as UTF-8 or ISO-8859-1. Every chunk can be parsed on its own once wrapped between the
+ * {@link #getHeader() header}, i.e. the prolog and the start tag of the document element (so that the encoding, the
+ * document type and the namespace declarations are replayed), and the {@link #getFooter() footer}, i.e. the end tag of
+ * the document element.
+ *
+ * @since 3.3
+ */
+final class RecordSplitter
+{
+
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int PI_END = ( '?' << 8 ) | '>';
+
+    private static final int COMMENT_END = ( '-' << 16 ) | ( '-' << 8 ) | '>';
+
+    private static final int CDATA_END = ( ']' << 16 ) | ( ']' << 8 ) | '>';
+
+    private final InputStream input;
+
+    private final byte[] recordName;
+
+    private final long chunkSize;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int bufferPosition;
+
+    private int bufferLimit;
+
+    /**
+     * The offset in the document of the next byte to be read.
+     */
+    private long position;
+
+    /**
+     * Receives a copy of the bytes read while scanning the header.
+     */
+    private ByteArrayOutputStream copy;
+
+    /**
+     * The name read by the last call to {@link #readName(int)}.
+     */
+    private final ByteArrayOutputStream name = new ByteArrayOutputStream();
+
+    private byte[] header;
+
+    private byte[] footer;
+
+    private long chunkStart;
+
+    private int depth;
+
+    private boolean finished;
+
+    /**
+     * Creates a splitter of the given document.
+     *
+     * @param input the document to split, read sequentially from its first byte
+     * @param recordName the local name of the children of the document element the document is split at
+     * @param chunkSize the minimum size of the chunks in bytes, but for the last one
+     */
+    RecordSplitter( final InputStream input, final String recordName, final long chunkSize )
+    {
+        this.input = input;
+        this.recordName = recordName.getBytes( UTF_8 );
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Returns the bytes preceding the content of the document element: the prolog and the start tag of the document
+     * element, written as a start tag even if it is an empty-element tag.
+     *
+     * @return the bytes preceding the content of the document element
+     * @throws IOException if the document can't be read or is malformed
+     */
+    byte[] getHeader()
+        throws IOException
+    {
+        start();
+        return header;
+    }
+
+    /**
+     * Returns the end tag of the document element.
+     *
+     * @return the end tag of the document element
+     * @throws IOException if the document can't be read or is malformed
+     */
+    byte[] getFooter()
+        throws IOException
+    {
+        start();
+        return footer;
+    }
+
+    /**
+     * Scans the next chunk of the content of the document element. The chunks cover the whole content of the document
+     * element, and every chunk but the first one starts with the start tag of a record.
+     *
+     * @return the offsets of the first byte of the next chunk and of the byte following it, or null if the whole
+     *         content of the document element has been scanned
+     * @throws IOException if the document can't be read or is malformed
+     */
+    long[] next()
+        throws IOException
+    {
+        start();
+        if ( finished )
+        {
+            return null;
+        }
+        if ( depth == 0 )
+        {
+            // empty document element
+            finished = true;
+            return new long[] { chunkStart, chunkStart };
+        }
+
+        while ( true )
+        {
+            if ( readRequired() != '<' )
+            {
+                continue;
+            }
+            final long markup = position - 1;
+            final int b = readRequired();
+            if ( b == '/' )
+            {
+                skipTag( readRequired() );
+                if ( --depth == 0 )
+                {
+                    finished = true;
+                    return new long[] { chunkStart, markup };
+                }
+            }
+            else if ( b == '?' || b == '!' )
+            {
+                skipDeclaration( b );
+            }
+            else
+            {
+                final int end = readName( b );
+                final boolean record = depth == 1 && isRecordName();
+                if ( !skipTag( end ) )
+                {
+                    depth++;
+                }
+                if ( record && markup - chunkStart >= chunkSize )
+                {
+                    final long[] chunk = { chunkStart, markup };
+                    chunkStart = markup;
+                    return chunk;
+                }
+            }
+        }
+    }
+
+    // ------------------------------------------------------ Private Methods
+
+    /**
+     * Scans the prolog and the start tag of the document element, unless already done.
+     */
+    private void start()
+        throws IOException
+    {
+        if ( header != null )
+        {
+            return;
+        }
+
+        copy = new ByteArrayOutputStream();
+        while ( true )
+        {
+            final int b = readRequired();
+            if ( position == 1 && ( b == 0xFE || b == 0xFF ) )
+            {
+                throw new IOException( "Documents encoded in UTF-16 can't be split" );
+            }
+            if ( b != '<' )
+            {
+                continue;
+            }
+            final int c = readRequired();
+            if ( c == '?' || c == '!' )
+            {
+                skipDeclaration( c );
+                continue;
+            }
+
+            // the document element
+            final int end = readName( c );
+            final byte[] rootName = name.toByteArray();
+            final boolean empty = skipTag( end );
+            header = copy.toByteArray();
+            copy = null;
+            if ( empty )
+            {
+                // drop the '/' of the empty-element tag, the footer closes it
+                header[header.length - 2] = ' ';
+            }
+
+            final ByteArrayOutputStream endTag = new ByteArrayOutputStream();
+            endTag.write( '<' );
+            endTag.write( '/' );
+            endTag.write( rootName, 0, rootName.length );
+            endTag.write( '>' );
+            footer = endTag.toByteArray();
+
+            chunkStart = position;
+            depth = empty ? 0 : 1;
+            return;
+        }
+    }
+
+    /**
+     * Tells whether the name read last is the name of a record, ignoring its prefix.
+     */
+    private boolean isRecordName()
+    {
+        final byte[] qName = name.toByteArray();
+        int start = 0;
+        for ( int i = 0; i < qName.length; i++ )
+        {
+            if ( qName[i] == ':' )
+            {
+                start = i + 1;
+            }
+        }
+        if ( qName.length - start != recordName.length )
+        {
+            return false;
+        }
+        for ( int i = 0; i < recordName.length; i++ )
+        {
+            if ( qName[start + i] != recordName[i] )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads an element name whose first byte has already been read.
+     *
+     * @return the byte following the name
+     */
+    private int readName( final int first )
+        throws IOException
+    {
+        name.reset();
+        int b = first;
+        while ( b != '>' && b != '/' && b != ' ' && b != '\t' && b != '\n' && b != '\r' )
+        {
+            name.write( b );
+            b = readRequired();
+        }
+        return b;
+    }
+
+    /**
+     * Skips the rest of a tag, up to its closing '&gt;', starting with an already read byte.
+     *
+     * @return true if the tag is an empty-element tag
+     */
+    private boolean skipTag( final int first )
+        throws IOException
+    {
+        int quote = 0;
+        int previous = 0;
+        int b = first;
+        while ( true )
+        {
+            if ( quote != 0 )
+            {
+                if ( b == quote )
+                {
+                    quote = 0;
+                }
+            }
+            else if ( b == '"' || b == '\'' )
+            {
+                quote = b;
+            }
+            else if ( b == '>' )
+            {
+                return previous == '/';
+            }
+            previous = b;
+            b = readRequired();
+        }
+    }
+
+    /**
+     * Skips a processing instruction, a comment, a CDATA section or a declaration, whose '&lt;' and following byte
+     * have already been read.
+     */
+    private void skipDeclaration( final int first )
+        throws IOException
+    {
+        if ( first == '?' )
+        {
+            skipPast( PI_END, 0xFFFF );
+            return;
+        }
+
+        int b = readRequired();
+        if ( b == '-' )
+        {
+            readRequired();
+            skipPast( COMMENT_END, 0xFFFFFF );
+        }
+        else if ( b == '[' )
+        {
+            skipPast( CDATA_END, 0xFFFFFF );
+        }
+        else
+        {
+            // a document type declaration, whose internal subset may contain '>'
+            int quote = 0;
+            int brackets = 0;
+            while ( true )
+            {
+                if ( quote != 0 )
+                {
+                    if ( b == quote )
+                    {
+                        quote = 0;
+                    }
+                }
+                else if ( b == '"' || b == '\'' )
+                {
+                    quote = b;
+                }
+                else if ( b == '[' )
+                {
+                    brackets++;
+                }
+                else if ( b == ']' )
+                {
+                    brackets--;
+                }
+                else if ( b == '>' && brackets == 0 )
+                {
+                    return;
+                }
+                b = readRequired();
+            }
+        }
+    }
+
+    /**
+     * Skips bytes up to and including the given terminator, packed in an int.
+     */
+    private void skipPast( final int terminator, final int mask )
+        throws IOException
+    {
+        int window = 0;
+        do
+        {
+            window = ( ( window << 8 ) | readRequired() ) & mask;
+        }
+        while ( window != terminator );
+    }
+
+    private int readRequired()
+        throws IOException
+    {
+        if ( bufferPosition == bufferLimit )
+        {
+            bufferLimit = input.read( buffer );
+            bufferPosition = 0;
+            if ( bufferLimit <= 0 )
+            {
+                bufferLimit = 0;
+                throw new IOException( "Unexpected end of document at offset " + position );
+            }
+        }
+        position++;
+        final int b = buffer[bufferPosition++] & 0xFF;
+        if ( copy != null )
+        {
+            copy.write( b );
+        }
+        return b;
+    }
+
+}
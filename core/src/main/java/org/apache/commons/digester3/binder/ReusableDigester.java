@@ -0,0 +1,166 @@
+package org.apache.commons.digester3.binder;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.digester3.Digester;
+import org.apache.commons.digester3.ObjectConsumer;
+import org.apache.commons.digester3.RuleSet;
+import org.apache.commons.digester3.Rules;
+import org.xml.sax.XMLReader;
+
+/**
+ * A {@link Digester} which is reused across parses, with the {@link Rules} it has been created with.
+ *
+ * Each reset restores the Digester as it has been created: the rules added since are dropped, by populating the Rules
+ * again from the rule set, and the objects streamed since (see {@link Digester#stream(String, Class, ObjectConsumer)})
+ * are no longer streamed, so that nothing a borrower registers leaks to the next one.
+ *
+ * @since 3.3
+ */
+final class ReusableDigester
+{
+
+    private final PooledDigester digester;
+
+    private final Rules rules;
+
+    private final RuleSet ruleSet;
+
+    /**
+     * The number of rules the Rules hold once populated from the rule set.
+     */
+    private final int ruleCount;
+
+    private boolean inUse;
+
+    /**
+     * Creates a new reusable Digester.
+     *
+     * @param digester the Digester to be reused, populated from the rule set
+     * @param rules the Rules the Digester has been created with
+     * @param ruleSet the rule set the Rules have been populated from
+     */
+    ReusableDigester( final PooledDigester digester, final Rules rules, final RuleSet ruleSet )
+    {
+        this.digester = digester;
+        this.rules = rules;
+        this.ruleSet = ruleSet;
+        this.ruleCount = rules.rules().size();
+    }
+
+    /**
+     * Returns the reusable Digester.
+     *
+     * @return the reusable Digester
+     */
+    Digester getDigester()
+    {
+        return digester;
+    }
+
+    /**
+     * Checks if the Digester is being used by a parse.
+     *
+     * @return true, if the Digester is being used by a parse
+     */
+    boolean isInUse()
+    {
+        return inUse;
+    }
+
+    /**
+     * Marks the Digester as being used, or not, by a parse.
+     *
+     * @param inUse true, if the Digester is being used by a parse
+     */
+    void setInUse( final boolean inUse )
+    {
+        this.inUse = inUse;
+    }
+
+    /**
+     * Restores the Digester for the next parse, discarding whatever the previous parse left behind.
+     */
+    void reset()
+    {
+        digester.reset();
+        // rules such as SetNestedPropertiesRule temporarily replace the Rules, and a failed parse can leave them in
+        if ( digester.getRules() != rules )
+        {
+            digester.setRules( rules );
+        }
+        digester.stopStreaming();
+        if ( rules.rules().size() != ruleCount )
+        {
+            // rules have been added since the creation
+            rules.clear();
+            ruleSet.addRuleInstances( digester );
+        }
+    }
+
+    /**
+     * A Digester keeping track of the patterns whose objects are streamed, so that they can stop being streamed.
+     */
+    static final class PooledDigester
+        extends Digester
+    {
+
+        private final Set<String> streamedPatterns = new HashSet<String>();
+
+        PooledDigester( final XMLReader reader )
+        {
+            super( reader );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public <T> void stream( final String pattern, final Class<T> type, final ObjectConsumer<? super T> consumer )
+        {
+            super.stream( pattern, type, consumer );
+            if ( consumer == null )
+            {
+                streamedPatterns.remove( pattern );
+            }
+            else
+            {
+                streamedPatterns.add( pattern );
+            }
+        }
+
+        /**
+         * Stops streaming the objects of all the patterns.
+         */
+        void stopStreaming()
+        {
+            for ( final String pattern : streamedPatterns )
+            {
+                super.stream( pattern, Object.class, null );
+            }
+            streamedPatterns.clear();
+        }
+
+    }
+
+}
@@ -0,0 +1,101 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.EmptyStackException;
+import java.util.Stack;
+
+import org.junit.Test;
+
+/**
+ * Test case for the unsynchronized {@link ArrayStack} used by the Digester.
+ */
+public class ArrayStackTestCase
+{
+
+    @Test
+    public void testPushPopPeek()
+    {
+        final Stack<String> stack = new ArrayStack<String>();
+        assertTrue( stack.empty() );
+        for ( int i = 0; i < 100; i++ )
+        {
+            stack.push( "item" + i );
+        }
+        assertEquals( 100, stack.size() );
+        assertEquals( "item99", stack.peek() );
+        assertEquals( "item0", stack.get( 0 ) );
+        assertEquals( 99, stack.search( "item1" ) );
+        for ( int i = 99; i >= 0; i-- )
+        {
+            assertEquals( "item" + i, stack.pop() );
+        }
+        assertTrue( stack.isEmpty() );
+    }
+
+    @Test
+    public void testClear()
+    {
+        final Stack<String> stack = new ArrayStack<String>();
+        stack.push( "alpha" );
+        stack.push( "beta" );
+        stack.clear();
+        assertEquals( 0, stack.size() );
+        stack.push( "gamma" );
+        assertEquals( "gamma", stack.peek() );
+        assertEquals( "[gamma]", stack.toString() );
+    }
+
+    @Test
+    public void testSet()
+    {
+        final Stack<String> stack = new ArrayStack<String>();
+        stack.push( "alpha" );
+        stack.push( null );
+        assertEquals( null, stack.set( 1, "beta" ) );
+        assertEquals( "beta", stack.pop() );
+        assertEquals( "alpha", stack.set( 0, "gamma" ) );
+        assertEquals( "gamma", stack.peek() );
+    }
+
+    @Test( expected = EmptyStackException.class )
+    public void testPopEmpty()
+    {
+        new ArrayStack<String>().pop();
+    }
+
+    @Test( expected = EmptyStackException.class )
+    public void testPeekEmpty()
+    {
+        new ArrayStack<String>().peek();
+    }
+
+    @Test( expected = ArrayIndexOutOfBoundsException.class )
+    public void testGetBeyondSize()
+    {
+        final Stack<String> stack = new ArrayStack<String>();
+        stack.push( "alpha" );
+        stack.get( 1 );
+    }
+
+}
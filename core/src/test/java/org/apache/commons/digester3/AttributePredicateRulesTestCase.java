@@ -0,0 +1,172 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Tests the attribute predicates of AttributePredicateRules.
+ */
+public class AttributePredicateRulesTestCase
+{
+
+    private static Attributes typed( final String type )
+    {
+        final AttributesImpl attributes = new AttributesImpl();
+        attributes.addAttribute( "", "type", "type", "CDATA", type );
+        return attributes;
+    }
+
+    private static String identifiers( final List<Rule> rules )
+    {
+        final StringBuilder identifiers = new StringBuilder();
+        for ( final Rule rule : rules )
+        {
+            if ( identifiers.length() > 0 )
+            {
+                identifiers.append( ',' );
+            }
+            identifiers.append( ( (TestRule) rule ).getIdentifier() );
+        }
+        return identifiers.toString();
+    }
+
+    @Test
+    public void testRulesAreSelectedByAttributeValue()
+    {
+        final AttributePredicateRules rules = new AttributePredicateRules( new RulesBase() );
+        rules.add( "catalog/item", new TestRule( "item" ) );
+        rules.add( "catalog/item[@type='book']", new TestRule( "book" ) );
+        rules.add( "catalog/item[@type='book']", new TestRule( "book-properties" ) );
+        rules.add( "catalog/item[@type=\"cd\"]", new TestRule( "cd" ) );
+        rules.add( "catalog/item", new TestRule( "item-end" ) );
+        rules.add( "catalog/item[@type='dvd']", new TestRule( "dvd" ) );
+
+        assertEquals( "item,book,book-properties,item-end",
+                      identifiers( rules.match( null, "catalog/item", "item", typed( "book" ) ) ) );
+        assertEquals( "item,cd,item-end", identifiers( rules.match( null, "catalog/item", "item", typed( "cd" ) ) ) );
+        assertEquals( "item,item-end,dvd", identifiers( rules.match( null, "catalog/item", "item", typed( "dvd" ) ) ) );
+        assertEquals( "item,item-end", identifiers( rules.match( null, "catalog/item", "item", typed( "toy" ) ) ) );
+        assertEquals( "item,item-end",
+                      identifiers( rules.match( null, "catalog/item", "item", new AttributesImpl() ) ) );
+        assertEquals( "", identifiers( rules.match( null, "catalog/other", "other", typed( "book" ) ) ) );
+
+        assertEquals( 6, rules.rules().size() );
+        assertEquals( "book", ( (TestRule) rules.rules().get( 1 ) ).getIdentifier() );
+    }
+
+    @Test
+    public void testPredicatesWithWildcards()
+    {
+        final AttributePredicateRules rules = new AttributePredicateRules( new CachingRules( new RulesBase() ) );
+        rules.add( "*/item[@type='book']", new TestRule( "book" ) );
+        rules.add( "*/item", new TestRule( "item" ) );
+
+        assertEquals( "book,item", identifiers( rules.match( null, "a/b/item", "item", typed( "book" ) ) ) );
+        assertEquals( "item", identifiers( rules.match( null, "a/b/item", "item", typed( "cd" ) ) ) );
+
+        assertTrue( rules.isAttributeDependent( null, "a/b/item" ) );
+        assertFalse( rules.isAttributeDependent( null, "a/b/items" ) );
+    }
+
+    @Test
+    public void testCachedMatchesDependOnTheAttributes()
+    {
+        final CachingRules rules = new CachingRules( new AttributePredicateRules( new RulesBase() ) );
+        rules.add( "catalog/item[@type='book']", new TestRule( "book" ) );
+        rules.add( "catalog/item[@type='cd']", new TestRule( "cd" ) );
+        rules.add( "catalog/item", new TestRule( "item" ) );
+        rules.add( "catalog", new TestRule( "catalog" ) );
+
+        for ( int i = 0; i < 2; i++ )
+        {
+            assertEquals( "book,item", identifiers( rules.match( null, "catalog/item", "item", typed( "book" ) ) ) );
+            assertEquals( "cd,item", identifiers( rules.match( null, "catalog/item", "item", typed( "cd" ) ) ) );
+            assertEquals( "item", identifiers( rules.match( null, "catalog/item", "item", typed( "toy" ) ) ) );
+            assertEquals( "catalog", identifiers( rules.match( null, "catalog", "catalog", typed( "book" ) ) ) );
+        }
+        // only the elements whose matches do not depend on their attributes are cached
+        assertEquals( 1, rules.getMisses() );
+        assertEquals( 1, rules.getHits() );
+    }
+
+    @Test
+    public void testPredicatesOnExpressionsAreAttributeDependent()
+    {
+        final RegexMatcher javaRegex = new RegexMatcher()
+        {
+            @Override
+            public boolean match( final String pathPattern, final String rulePattern )
+            {
+                return pathPattern.matches( rulePattern );
+            }
+        };
+        final AttributePredicateRules rules = new AttributePredicateRules( new RegexRules( javaRegex ) );
+        rules.add( "catalog/(item|entry)[@type='book']", new TestRule( "book" ) );
+
+        assertTrue( rules.isAttributeDependent( null, "catalog/entry" ) );
+        assertEquals( "book", identifiers( rules.match( null, "catalog/entry", "entry", typed( "book" ) ) ) );
+    }
+
+    @Test
+    public void testParse()
+        throws Exception
+    {
+        final List<Rule> order = new ArrayList<Rule>();
+        final Digester digester = new Digester();
+        digester.setRules( new AttributePredicateRules( new RulesBase() ) );
+        final String[] patterns = { "catalog/item[@type='book']", "catalog/item[@type='cd']" };
+        for ( final String pattern : patterns )
+        {
+            final TestRule rule = new TestRule( pattern.substring( pattern.indexOf( '\'' ) + 1, pattern.length() - 2 ) );
+            rule.setOrder( order );
+            digester.addRule( pattern, rule );
+        }
+
+        digester.parse( new StringReader( "<catalog><item type='book'/><item type='toy'/><item type='cd'/>"
+            + "<item/><item type='book'/></catalog>" ) );
+
+        // begin, body and end of each matched element
+        assertEquals( "book,book,book,cd,cd,cd,book,book,book", identifiers( order ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testInvalidPredicate()
+    {
+        new AttributePredicateRules( new RulesBase() ).add( "catalog/item[type='book']", new TestRule( "book" ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testUnterminatedValue()
+    {
+        new AttributePredicateRules( new RulesBase() ).add( "catalog/item[@type='book]", new TestRule( "book" ) );
+    }
+
+}
@@ -0,0 +1,138 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Runs the tests of ExtendedBaseRules through a CachingRules, and tests the cache itself.
+ */
+public class CachingRulesTestCase
+    extends ExtendedBaseRulesTestCase
+{
+
+    @Override
+    protected Rules createMatchingRulesForTest()
+    {
+        return new CachingRules( new ExtendedBaseRules() );
+    }
+
+    @Test
+    public void testMatchesAreCachedByNamespaceAndPattern()
+    {
+        final CachingRules rules = new CachingRules( new RulesBase() );
+        rules.add( "*/beta", new TestRule( "beta" ) );
+
+        final List<Rule> beta = rules.match( null, "alpha/beta", "beta", null );
+        assertEquals( 1, beta.size() );
+        assertSame( beta, rules.match( null, "alpha/beta", "beta", null ) );
+        assertEquals( 1, rules.match( "euclidean", "alpha/beta", "beta", null ).size() );
+        assertEquals( 0, rules.match( null, "alpha/gamma", "gamma", null ).size() );
+        assertEquals( 0, rules.match( null, "alpha/gamma", "gamma", null ).size() );
+        assertEquals( 2, rules.getHits() );
+        assertEquals( 3, rules.getMisses() );
+
+        // added rules are matched
+        rules.add( "alpha/gamma", new TestRule( "gamma" ) );
+        assertEquals( 1, rules.match( null, "alpha/gamma", "gamma", null ).size() );
+        assertEquals( 4, rules.getMisses() );
+
+        rules.clear();
+        assertEquals( 0, rules.match( null, "alpha/beta", "beta", null ).size() );
+        assertEquals( 5, rules.getMisses() );
+    }
+
+    @Test
+    public void testEvictions()
+    {
+        final CachingRules rules = new CachingRules( new RulesBase(), 2 );
+        rules.add( "*/beta", new TestRule( "beta" ) );
+
+        rules.match( null, "alpha/beta", "beta", null );
+        rules.match( null, "gamma/beta", "beta", null );
+        assertEquals( 0, rules.getEvictions() );
+        rules.match( null, "delta/beta", "beta", null );
+        assertEquals( 1, rules.getEvictions() );
+        assertEquals( 1, rules.match( null, "delta/beta", "beta", null ).size() );
+        assertEquals( 1, rules.getHits() );
+    }
+
+    @Test
+    public void testAttributeDependentMatchesAreNotCached()
+    {
+        final CachingRules rules = new CachingRules( new TypedRules() );
+        rules.add( "alpha/beta", new TestRule( "beta" ) );
+
+        final AttributesImpl typed = new AttributesImpl();
+        typed.addAttribute( "", "type", "type", "CDATA", "book" );
+        assertEquals( 1, rules.match( null, "alpha/beta", "beta", typed ).size() );
+        assertEquals( 0, rules.match( null, "alpha/beta", "beta", new AttributesImpl() ).size() );
+        assertEquals( 0, rules.getHits() );
+        assertEquals( 0, rules.getMisses() );
+
+        // other paths are cached
+        assertEquals( 0, rules.match( null, "alpha/gamma", "gamma", typed ).size() );
+        assertEquals( 0, rules.match( null, "alpha/gamma", "gamma", typed ).size() );
+        assertEquals( 1, rules.getHits() );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testCacheSizeMustBePositive()
+    {
+        new CachingRules( new RulesBase(), 0 );
+    }
+
+    /**
+     * Matches the elements of pattern <code>alpha/beta</code> only if they have a <code>type</code> attribute.
+     */
+    private static final class TypedRules
+        extends RulesBase
+        implements AttributeDependentRules
+    {
+
+        @Override
+        public boolean isAttributeDependent( final String namespaceURI, final String pattern )
+        {
+            return "alpha/beta".equals( pattern );
+        }
+
+        @Override
+        public List<Rule> match( final String namespaceURI, final String pattern, final String name,
+                                 final Attributes attributes )
+        {
+            final List<Rule> matches = super.match( namespaceURI, pattern, name, attributes );
+            if ( isAttributeDependent( namespaceURI, pattern ) && attributes.getValue( "type" ) == null )
+            {
+                return Collections.emptyList();
+            }
+            return matches;
+        }
+
+    }
+
+}
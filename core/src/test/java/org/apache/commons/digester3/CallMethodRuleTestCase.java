@@ -30,6 +30,7 @@ import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.apache.commons.digester3.binder.AbstractRulesModule;
 import org.junit.Test;
@@ -637,6 +638,34 @@ public class CallMethodRuleTestCase
         }
     }
 
+    /**
+     * Test that the method resolved by a rule is not reused for targets of a different class.
+     */
+    @Test
+    public void testCallOnTargetsOfDifferentClasses()
+        throws Exception
+    {
+        final Digester digester = new Digester();
+        final ArrayList<Object> results = new ArrayList<Object>();
+        digester.push( results );
+        digester.addObjectCreate( "root/list", ArrayList.class );
+        digester.addSetNext( "root/list", "add", Object.class.getName() );
+        digester.addObjectCreate( "root/set", TreeSet.class );
+        digester.addSetNext( "root/set", "add", Object.class.getName() );
+
+        final CallMethodRule add = new CallMethodRule( "add", 0, new Class<?>[] { String.class } );
+        digester.addRule( "root/list/value", add );
+        digester.addRule( "root/set/value", add );
+
+        digester.parse( new StringReader( "<root><list><value>a</value></list>"
+            + "<set><value>c</value><value>b</value></set><list><value>d</value></list></root>" ) );
+
+        assertEquals( 3, results.size() );
+        assertEquals( "[a]", results.get( 0 ).toString() );
+        assertEquals( "[b, c]", results.get( 1 ).toString() );
+        assertEquals( "[d]", results.get( 2 ).toString() );
+    }
+
     /**
      * Test invoking an object which is at top-1 on the stack, like SetNextRule does...
      */
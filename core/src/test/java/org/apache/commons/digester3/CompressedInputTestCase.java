@@ -0,0 +1,194 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+public final class CompressedInputTestCase
+{
+
+    private static byte[] items( final int count )
+        throws IOException
+    {
+        final StringBuilder xml = new StringBuilder( "<?xml version='1.0' encoding='UTF-8'?>\n<items>" );
+        for ( int i = 0; i < count; i++ )
+        {
+            xml.append( "<item name='item " ).append( i ).append( "'/>\n" );
+        }
+        xml.append( "</items>" );
+        return xml.toString().getBytes( "UTF-8" );
+    }
+
+    private static byte[] compress( final byte[] content, final boolean gzip )
+        throws IOException
+    {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        final OutputStream output = gzip ? new GZIPOutputStream( compressed ) : new DeflaterOutputStream( compressed );
+        output.write( content );
+        output.close();
+        return compressed.toByteArray();
+    }
+
+    private static List<String> parse( final byte[] document )
+        throws Exception
+    {
+        final Digester digester = new Digester();
+        digester.addObjectCreate( "items", ArrayList.class );
+        digester.addCallMethod( "items/item", "add", 1, new Class<?>[] { Object.class } );
+        digester.addCallParam( "items/item", 0, "name" );
+        return digester.parseCompressed( new ByteArrayInputStream( document ) );
+    }
+
+    @Test
+    public void detectsTheCompression()
+        throws Exception
+    {
+        // larger than all the read ahead buffers together
+        final byte[] document = items( 20000 );
+        for ( final byte[] input : new byte[][] { document, compress( document, true ), compress( document, false ) } )
+        {
+            final List<String> items = parse( input );
+            assertEquals( 20000, items.size() );
+            assertEquals( "item 19999", items.get( 19999 ) );
+        }
+    }
+
+    @Test
+    public void reportsCorruptedContent()
+        throws Exception
+    {
+        final byte[] compressed = compress( items( 1000 ), true );
+        final byte[] truncated = new byte[compressed.length / 2];
+        System.arraycopy( compressed, 0, truncated, 0, truncated.length );
+        try
+        {
+            parse( truncated );
+            fail( "The truncated content should have been reported" );
+        }
+        catch ( final IOException e )
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void closingStopsTheProducer()
+        throws Exception
+    {
+        final boolean[] closed = new boolean[1];
+        final InputStream source = new InputStream()
+        {
+
+            @Override
+            public int read()
+            {
+                return 'x';
+            }
+
+            @Override
+            public void close()
+            {
+                synchronized ( closed )
+                {
+                    closed[0] = true;
+                    closed.notifyAll();
+                }
+            }
+
+        };
+
+        final InputStream input = new ReadAheadInputStream( source, "test", 16, 2 );
+        assertEquals( 'x', input.read() );
+        input.close();
+        synchronized ( closed )
+        {
+            final long deadline = System.currentTimeMillis() + 10000;
+            while ( !closed[0] && System.currentTimeMillis() < deadline )
+            {
+                closed.wait( 100 );
+            }
+        }
+        assertTrue( closed[0] );
+        try
+        {
+            input.read();
+            fail( "The stream has been closed" );
+        }
+        catch ( final IOException e )
+        {
+            assertSame( IOException.class, e.getClass() );
+        }
+    }
+
+    @Test
+    public void reportsErrorsOfTheSource()
+        throws Exception
+    {
+        final InputStream source = new InputStream()
+        {
+
+            private int remaining = 100;
+
+            @Override
+            public int read()
+            {
+                if ( remaining-- == 0 )
+                {
+                    throw new InternalError( "inflater failure" );
+                }
+                return 'x';
+            }
+
+        };
+
+        final InputStream input = new ReadAheadInputStream( source, "test", 16, 2 );
+        int read = 0;
+        try
+        {
+            while ( input.read() != -1 )
+            {
+                read++;
+            }
+            fail( "The error of the source should have been reported" );
+        }
+        catch ( final IOException e )
+        {
+            assertTrue( e.getCause() instanceof InternalError );
+        }
+        assertTrue( read <= 100 );
+        input.close();
+    }
+
+}
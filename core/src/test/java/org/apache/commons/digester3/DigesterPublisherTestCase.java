@@ -0,0 +1,329 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.digester3.DigesterPublisher.Subscriber;
+import org.apache.commons.digester3.DigesterPublisher.Subscription;
+import org.apache.commons.logging.impl.NoOpLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Test case for the {@link DigesterPublisher}.
+ */
+public class DigesterPublisherTestCase
+{
+
+    private static final String FEED =
+        "<feed><record name='one'/><record name='two'/><record name='three'/><record name='four'/></feed>";
+
+    private ExecutorService executorService;
+
+    private Digester digester;
+
+    @Before
+    public void setUp()
+    {
+        executorService = Executors.newSingleThreadExecutor();
+        digester = new Digester();
+        digester.setExecutorService( executorService );
+        digester.addObjectCreate( "feed", ArrayList.class );
+        digester.addObjectCreate( "feed/record", AlphaBean.class );
+        digester.addSetProperties( "feed/record" );
+        digester.addSetNext( "feed/record", "add" );
+    }
+
+    @After
+    public void tearDown()
+    {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testPublishHonoursDemand()
+        throws Exception
+    {
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher( FEED ).subscribe( subscriber );
+
+        subscriber.subscription.request( 2 );
+        assertTrue( subscriber.received.await( 2 ) );
+        // the parse is paused until more objects are requested
+        Thread.sleep( 100 );
+        assertEquals( 2, subscriber.names().size() );
+        assertFalse( subscriber.done.await( 0, TimeUnit.MILLISECONDS ) );
+
+        subscriber.subscription.request( Long.MAX_VALUE );
+        assertTrue( subscriber.done.await( 5, TimeUnit.SECONDS ) );
+        assertEquals( 4, subscriber.names().size() );
+        assertEquals( "one", subscriber.names().get( 0 ) );
+        assertEquals( "four", subscriber.names().get( 3 ) );
+        assertTrue( subscriber.completed );
+        assertNull( subscriber.failure );
+    }
+
+    @Test
+    public void testCancel()
+        throws Exception
+    {
+        final List<Object> errors = Collections.synchronizedList( new ArrayList<Object>() );
+        digester.setLogger( new NoOpLog()
+        {
+            @Override
+            public void error( final Object message )
+            {
+                errors.add( message );
+            }
+
+            @Override
+            public void error( final Object message, final Throwable t )
+            {
+                errors.add( message );
+            }
+        } );
+        final RecordingSubscriber subscriber = new RecordingSubscriber()
+        {
+            @Override
+            public void onNext( final AlphaBean item )
+            {
+                super.onNext( item );
+                subscription.cancel();
+                subscription.request( 1 );
+            }
+        };
+        publisher( FEED ).subscribe( subscriber );
+        subscriber.subscription.request( 1 );
+
+        assertTrue( subscriber.received.await( 1 ) );
+        executorService.shutdown();
+        assertTrue( executorService.awaitTermination( 5, TimeUnit.SECONDS ) );
+        assertEquals( 1, subscriber.names().size() );
+        assertFalse( subscriber.completed );
+        assertNull( subscriber.failure );
+        // a cancellation is not an error
+        assertEquals( "[]", errors.toString() );
+    }
+
+    @Test
+    public void testCancelStopsTheParseAtTheNextElement()
+        throws Exception
+    {
+        final CountDownLatch reached = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final AtomicInteger others = new AtomicInteger();
+        digester.addRule( "feed/other", new Rule()
+        {
+            @Override
+            public void begin( final String namespace, final String name, final Attributes attributes )
+                throws Exception
+            {
+                if ( others.incrementAndGet() == 1 )
+                {
+                    reached.countDown();
+                    release.await();
+                }
+            }
+        } );
+        final StringBuilder xml = new StringBuilder( "<feed><record name='one'/>" );
+        for ( int i = 0; i < 1000; i++ )
+        {
+            xml.append( "<other/>" );
+        }
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher( xml.append( "<record name='two'/></feed>" ).toString() ).subscribe( subscriber );
+        subscriber.subscription.request( Long.MAX_VALUE );
+
+        // cancelled while no object is being completed
+        assertTrue( reached.await( 5, TimeUnit.SECONDS ) );
+        subscriber.subscription.cancel();
+        release.countDown();
+        executorService.shutdown();
+        assertTrue( executorService.awaitTermination( 5, TimeUnit.SECONDS ) );
+
+        assertEquals( 1, others.get() );
+        assertEquals( 1, subscriber.names().size() );
+        assertFalse( subscriber.completed );
+        assertNull( subscriber.failure );
+    }
+
+    @Test
+    public void testRejectedParseIsSignalled()
+        throws Exception
+    {
+        executorService.shutdown();
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher( FEED ).subscribe( subscriber );
+
+        assertTrue( subscriber.failure instanceof RejectedExecutionException );
+    }
+
+    @Test
+    public void testParseFailure()
+        throws Exception
+    {
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher( "<feed><record name='one'/><record></feed>" ).subscribe( subscriber );
+        subscriber.subscription.request( 10 );
+
+        assertTrue( subscriber.done.await( 5, TimeUnit.SECONDS ) );
+        assertEquals( 1, subscriber.names().size() );
+        assertFalse( subscriber.completed );
+        assertTrue( subscriber.failure instanceof SAXException );
+    }
+
+    @Test
+    public void testInvalidRequest()
+        throws Exception
+    {
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher( FEED ).subscribe( subscriber );
+        subscriber.subscription.request( 0 );
+
+        assertTrue( subscriber.done.await( 5, TimeUnit.SECONDS ) );
+        assertTrue( subscriber.failure instanceof IllegalArgumentException );
+    }
+
+    @Test
+    public void testSingleSubscriber()
+        throws Exception
+    {
+        final DigesterPublisher<AlphaBean> publisher = publisher( FEED );
+        final RecordingSubscriber first = new RecordingSubscriber();
+        publisher.subscribe( first );
+        final RecordingSubscriber second = new RecordingSubscriber();
+        publisher.subscribe( second );
+
+        assertTrue( second.failure instanceof IllegalStateException );
+        first.subscription.request( Long.MAX_VALUE );
+        assertTrue( first.done.await( 5, TimeUnit.SECONDS ) );
+        assertEquals( 4, first.names().size() );
+    }
+
+    private DigesterPublisher<AlphaBean> publisher( final String xml )
+    {
+        return digester.publish( new InputSource( new StringReader( xml ) ), "feed/record", AlphaBean.class );
+    }
+
+    private static class RecordingSubscriber
+        implements Subscriber<AlphaBean>
+    {
+
+        volatile Subscription subscription;
+
+        private final List<String> names = new ArrayList<String>();
+
+        final Received received = new Received();
+
+        final CountDownLatch done = new CountDownLatch( 1 );
+
+        volatile boolean completed;
+
+        volatile Throwable failure;
+
+        @Override
+        public void onSubscribe( final Subscription subscription )
+        {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext( final AlphaBean item )
+        {
+            synchronized ( names )
+            {
+                names.add( item.getName() );
+            }
+            received.increment();
+        }
+
+        @Override
+        public void onError( final Throwable throwable )
+        {
+            failure = throwable;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete()
+        {
+            completed = true;
+            done.countDown();
+        }
+
+        List<String> names()
+        {
+            synchronized ( names )
+            {
+                return new ArrayList<String>( names );
+            }
+        }
+
+    }
+
+    private static final class Received
+    {
+
+        private int count;
+
+        synchronized void increment()
+        {
+            count++;
+            notifyAll();
+        }
+
+        synchronized boolean await( final int expected )
+            throws InterruptedException
+        {
+            final long deadline = System.currentTimeMillis() + 5000;
+            while ( count < expected )
+            {
+                final long remaining = deadline - System.currentTimeMillis();
+                if ( remaining <= 0 )
+                {
+                    return false;
+                }
+                wait( remaining );
+            }
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,325 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+
+public final class DigesterSessionTestCase
+{
+
+    private final List<String> begun = Collections.synchronizedList( new ArrayList<String>() );
+
+    private Digester newDigester()
+    {
+        final Digester digester = new Digester();
+        digester.addObjectCreate( "items", ArrayList.class );
+        digester.addCallMethod( "items/item", "add", 1, new Class<?>[] { Object.class } );
+        digester.addCallParam( "items/item", 0, "name" );
+        digester.addRule( "items/item", new Rule()
+        {
+
+            @Override
+            public void begin( final String namespace, final String name, final Attributes attributes )
+            {
+                begun.add( attributes.getValue( "name" ) );
+            }
+
+        } );
+        return digester;
+    }
+
+    private static ByteBuffer bytes( final String chunk )
+        throws IOException
+    {
+        return ByteBuffer.wrap( chunk.getBytes( "UTF-8" ) );
+    }
+
+    @Test
+    public void feedReturnsWithoutWaitingForTheParse()
+        throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final Digester digester = newDigester();
+        digester.addRule( "items/item", new Rule()
+        {
+
+            @Override
+            public void begin( final String namespace, final String name, final Attributes attributes )
+                throws Exception
+            {
+                release.await();
+            }
+
+        } );
+        final DigesterSession<List<String>> session = digester.newSession();
+
+        // the parse is stuck in the first item while the next bytes are fed
+        session.feed( bytes( "<?xml version='1.0' encoding='UTF-8'?><items><item name='a'/><it" ) );
+        final ByteBuffer chunk = bytes( "em name='b'/><item name='c'/><item" );
+        session.feed( chunk );
+        assertEquals( 0, chunk.remaining() );
+        // the fed bytes have been copied
+        chunk.clear();
+        chunk.put( new byte[chunk.capacity()] );
+        session.feed( bytes( " name='d'/></items>" ) );
+        assertTrue( session.getBufferedBytes() > 0 );
+
+        release.countDown();
+        final List<String> items = session.endOfInput();
+        assertEquals( "[a, b, c, d]", items.toString() );
+        assertEquals( "[a, b, c, d]", begun.toString() );
+        assertEquals( 0, session.getBufferedBytes() );
+    }
+
+    @Test
+    public void manyConcurrentSessionsFedFromOneThread()
+        throws Exception
+    {
+        final int count = 500;
+        final List<DigesterSession<List<String>>> sessions = new ArrayList<DigesterSession<List<String>>>();
+        for ( int i = 0; i < count; i++ )
+        {
+            sessions.add( newDigester().<List<String>> newSession() );
+        }
+
+        // the chunks are interleaved between the sessions, as a server would receive them
+        for ( final String chunk : new String[] { "<items><item na", "me='a'/><item name='", "b'/></items>" } )
+        {
+            for ( final DigesterSession<List<String>> session : sessions )
+            {
+                session.feed( bytes( chunk ) );
+            }
+        }
+        for ( final DigesterSession<List<String>> session : sessions )
+        {
+            assertEquals( "[a, b]", session.endOfInput().toString() );
+        }
+        assertEquals( 2 * count, begun.size() );
+    }
+
+    @Test
+    public void feedsByteByByte()
+        throws Exception
+    {
+        final DigesterSession<List<String>> session = newDigester().newSession();
+        final byte[] document = "<items><item name='\u00e9t\u00e9'/></items>".getBytes( "UTF-8" );
+        for ( final byte b : document )
+        {
+            session.feed( ByteBuffer.wrap( new byte[] { b } ) );
+        }
+        assertEquals( "[\u00e9t\u00e9]", session.endOfInput().toString() );
+    }
+
+    @Test
+    public void malformedInputFailsTheSession()
+        throws Exception
+    {
+        final DigesterSession<List<String>> session = newDigester().newSession();
+        try
+        {
+            session.feed( bytes( "<items><item name='a'/></itemz>" ) );
+            session.endOfInput();
+            fail( "The malformed document should have been reported" );
+        }
+        catch ( final SAXException e )
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void incompleteInputFailsTheSession()
+        throws Exception
+    {
+        final DigesterSession<List<String>> session = newDigester().newSession();
+        session.feed( bytes( "<items><item name='a'/>" ) );
+        try
+        {
+            session.endOfInput();
+            fail( "The incomplete document should have been reported" );
+        }
+        catch ( final SAXException e )
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void closedSessionsRejectInput()
+        throws Exception
+    {
+        final DigesterSession<List<String>> session = newDigester().newSession();
+        session.feed( bytes( "<items>" ) );
+        session.close();
+        try
+        {
+            session.feed( bytes( "<item name='a'/>" ) );
+            fail( "The session has been closed" );
+        }
+        catch ( final IOException e )
+        {
+            assertTrue( begun.isEmpty() );
+        }
+    }
+
+    @Test
+    public void closedSessionsLetTheDigesterBeReset()
+        throws Exception
+    {
+        final Digester digester = newDigester();
+        final DigesterSession<List<String>> session = digester.newSession();
+        session.feed( bytes( "<items><item name='a'/>" ) );
+        session.close();
+
+        // the parse is over once closed, so the digester can be reused
+        digester.reset();
+        final DigesterSession<List<String>> next = digester.newSession();
+        next.feed( bytes( "<items><item name='b'/></items>" ) );
+        assertEquals( "[b]", next.endOfInput().toString() );
+    }
+
+    @Test
+    public void saturatedExecutorServicesDelayTheParse()
+        throws Exception
+    {
+        final ExecutorService executorService = Executors.newFixedThreadPool( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        try
+        {
+            executorService.execute( new Runnable()
+            {
+
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        release.await();
+                    }
+                    catch ( final InterruptedException e )
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+            } );
+
+            final Digester digester = newDigester();
+            digester.setExecutorService( executorService );
+            final DigesterSession<List<String>> session = digester.newSession();
+
+            // the bytes are buffered while the only thread is busy
+            session.feed( bytes( "<items><item name='a'/>" ) );
+            session.feed( bytes( "</items>" ) );
+            assertTrue( begun.isEmpty() );
+
+            release.countDown();
+            assertEquals( "[a]", session.endOfInput().toString() );
+        }
+        finally
+        {
+            release.countDown();
+            executorService.shutdown();
+        }
+        assertTrue( executorService.awaitTermination( 10, TimeUnit.SECONDS ) );
+    }
+
+    @Test
+    public void sameThreadExecutorServicesFailFast()
+        throws Exception
+    {
+        final Digester digester = newDigester();
+        digester.setExecutorService( new DirectExecutorService() );
+        final DigesterSession<List<String>> session = digester.newSession();
+        try
+        {
+            session.feed( bytes( "<items>" ) );
+            fail( "The parse can't run on the feeding thread" );
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            // expected
+        }
+    }
+
+    /**
+     * Runs the tasks on the thread submitting them.
+     */
+    private static final class DirectExecutorService
+        extends AbstractExecutorService
+    {
+
+        @Override
+        public void execute( final Runnable command )
+        {
+            command.run();
+        }
+
+        @Override
+        public void shutdown()
+        {
+            // nothing to release
+        }
+
+        @Override
+        public List<Runnable> shutdownNow()
+        {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination( final long timeout, final TimeUnit unit )
+        {
+            return false;
+        }
+
+    }
+
+}
@@ -35,6 +35,7 @@ import java.math.BigDecimal;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.EmptyStackException;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.After;
@@ -42,6 +43,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
 import org.xml.sax.helpers.AttributesImpl;
 
 /**
@@ -476,6 +478,188 @@ public class DigesterTestCase
         assertEquals( "Substituted python attribute value", "Cleese", tsr.attributes.getValue( "", "python" ) );
     }
 
+    /** Body text is only materialized for rules which consume it, and survives nested elements */
+    @Test
+    public void testBodyTextOnlyForRulesRequiringIt()
+        throws Exception
+    {
+        final Digester digester = new Digester();
+        final ArrayList<String> substituted = new ArrayList<String>();
+        digester.setSubstitutor( new Substitutor()
+        {
+            @Override
+            public Attributes substitute( final Attributes attributes )
+            {
+                return attributes;
+            }
+
+            @Override
+            public String substitute( final String bodyText )
+            {
+                substituted.add( bodyText );
+                return bodyText;
+            }
+        } );
+
+        final Rule beginOnly = new Rule()
+        {
+        };
+        final ArrayList<String> bodies = new ArrayList<String>();
+        final Rule bodyRule = new Rule()
+        {
+            @Override
+            public void body( final String namespace, final String name, final String text )
+            {
+                bodies.add( name + "=" + text );
+            }
+        };
+        assertFalse( beginOnly.isBodyTextRequired() );
+        assertTrue( bodyRule.isBodyTextRequired() );
+
+        digester.addRule( "alpha/beta", beginOnly );
+        digester.addRule( "alpha/gamma", bodyRule );
+        digester.addRule( "alpha/gamma/delta", bodyRule );
+        digester.parse( new StringReader( "<alpha><beta>unused</beta><gamma>one<delta>two</delta>three</gamma>"
+            + "<gamma><delta>four</delta></gamma></alpha>" ) );
+
+        assertEquals( 4, substituted.size() );
+        assertEquals( 4, bodies.size() );
+        assertEquals( "delta=two", bodies.get( 0 ) );
+        assertEquals( "gamma=onethree", bodies.get( 1 ) );
+        assertEquals( "delta=four", bodies.get( 2 ) );
+        assertEquals( "gamma=", bodies.get( 3 ) );
+    }
+
+    /** The match path and element name are tracked through nested elements */
+    @Test
+    public void testMatchPathTracking()
+        throws Exception
+    {
+        final Digester digester = new Digester();
+        final ArrayList<String> events = new ArrayList<String>();
+        final Rule tracker = new Rule()
+        {
+            @Override
+            public void begin( final String namespace, final String name, final Attributes attributes )
+            {
+                events.add( "begin:" + getDigester().getMatch() + ":" + getDigester().getCurrentElementName() );
+            }
+
+            @Override
+            public void end( final String namespace, final String name )
+            {
+                events.add( "end:" + getDigester().getMatch() );
+            }
+        };
+        digester.addRule( "a/b/c/d", tracker );
+        digester.addRule( "a/e", tracker );
+        digester.parse( new StringReader( "<a><b><c><d/></c></b><e/></a>" ) );
+
+        assertEquals( 4, events.size() );
+        assertEquals( "begin:a/b/c/d:d", events.get( 0 ) );
+        assertEquals( "end:a/b/c/d", events.get( 1 ) );
+        assertEquals( "begin:a/e:e", events.get( 2 ) );
+        assertEquals( "end:a/e", events.get( 3 ) );
+        assertEquals( "", digester.getMatch() );
+        assertEquals( "", digester.getCurrentElementName() );
+    }
+
+    /** Streamed objects are handed complete to the consumer, and are not linked to their parent */
+    @Test
+    public void testStream()
+        throws Exception
+    {
+        final Digester digester = new Digester();
+        final List<String> consumed = new ArrayList<String>();
+        // registered before the rules building the objects
+        digester.stream( "feed/record", AlphaBean.class, new ObjectConsumer<AlphaBean>()
+        {
+            @Override
+            public void accept( final AlphaBean record )
+            {
+                final Nameable child = record.getChild();
+                consumed.add( record.getName() + ( child != null ? "+" + child.getName() : "" ) );
+            }
+        } );
+        digester.addObjectCreate( "feed", ArrayList.class );
+        digester.addObjectCreate( "feed/record", AlphaBean.class );
+        digester.addCallMethod( "feed/record", "setName", 1 );
+        digester.addCallParam( "feed/record/name", 0 );
+        digester.addSetNext( "feed/record", "add" );
+        digester.addObjectCreate( "feed/record/child", BetaBean.class );
+        digester.addSetProperties( "feed/record/child" );
+        digester.addSetNext( "feed/record/child", "setChild" );
+
+        final ArrayList<?> feed = digester.parse( new StringReader( "<feed><record><name>one</name></record>"
+            + "<record><name>two</name><child name='nested'/></record><record><name>three</name></record></feed>" ) );
+
+        assertEquals( 0, feed.size() );
+        assertEquals( 3, consumed.size() );
+        assertEquals( "one", consumed.get( 0 ) );
+        assertEquals( "two+nested", consumed.get( 1 ) );
+        assertEquals( "three", consumed.get( 2 ) );
+    }
+
+    /** Streaming a pattern doesn't shadow the rules bound on a wildcard pattern, nor show up in the rules */
+    @Test
+    public void testStreamWildcardRules()
+        throws Exception
+    {
+        final Digester digester = new Digester();
+        final List<String> consumed = new ArrayList<String>();
+        digester.addObjectCreate( "feed", ArrayList.class );
+        digester.addObjectCreate( "*/record", AlphaBean.class );
+        digester.addSetProperties( "*/record" );
+        digester.addSetNext( "*/record", "add" );
+        final List<Rule> rules = new ArrayList<Rule>( digester.getRules().rules() );
+        digester.stream( "feed/record", AlphaBean.class, new ObjectConsumer<AlphaBean>()
+        {
+            @Override
+            public void accept( final AlphaBean record )
+            {
+                consumed.add( record.getName() );
+            }
+        } );
+
+        assertEquals( rules, digester.getRules().rules() );
+
+        final ArrayList<?> feed =
+            digester.parse( new StringReader( "<feed><record name='one'/><record name='two'/></feed>" ) );
+
+        assertEquals( 0, feed.size() );
+        assertEquals( 2, consumed.size() );
+        assertEquals( "one", consumed.get( 0 ) );
+        assertEquals( "two", consumed.get( 1 ) );
+    }
+
+    /** A failure of the stream consumer aborts the parse */
+    @Test
+    public void testStreamConsumerFailure()
+        throws Exception
+    {
+        final Digester digester = new Digester();
+        digester.addObjectCreate( "feed/record", AlphaBean.class );
+        digester.stream( "feed/record", AlphaBean.class, new ObjectConsumer<AlphaBean>()
+        {
+            @Override
+            public void accept( final AlphaBean record )
+                throws Exception
+            {
+                throw new IllegalStateException( "full" );
+            }
+        } );
+
+        try
+        {
+            digester.parse( new StringReader( "<feed><record/></feed>" ) );
+            fail( "The failure of the consumer should have aborted the parse" );
+        }
+        catch ( final SAXException e )
+        {
+            assertTrue( e.getException() instanceof IllegalStateException );
+        }
+    }
+
     /** Tests the push-peek-pop cycle for a named stack */
     @Test
     public void testNamedStackPushPeekPop()
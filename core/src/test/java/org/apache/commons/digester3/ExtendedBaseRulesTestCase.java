@@ -409,4 +409,44 @@ public class ExtendedBaseRulesTestCase
         assertEquals( "No matches expected", 0, list.size() );
 
     }
+
+    @Test
+    public void testManyWildcardPatterns()
+    {
+        digester.getRules().clear();
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            digester.addRule( "*/item" + i, new TestRule( "star-item" + i ) );
+            digester.addRule( "*/list" + i + "/?", new TestRule( "star-list" + i + "-parent" ) );
+            digester.addRule( "!*/group" + i + "/*", new TestRule( "uni-star-group" + i + "-star" ) );
+            digester.addRule( "!root" + i + "/*", new TestRule( "uni-root" + i + "-star" ) );
+        }
+        digester.addRule( "*/section/item1/*", new TestRule( "star-section-item1-star" ) );
+
+        List<Rule> list = digester.getRules().match( null, "root7/xgroup3/other/item42", null, null );
+        assertEquals( "Many wildcards (1)", 3, list.size() );
+        assertEquals( "Match missed (1)", "uni-star-group3-star", ( (TestRule) list.get( 0 ) ).getIdentifier() );
+        assertEquals( "Match missed (2)", "uni-root7-star", ( (TestRule) list.get( 1 ) ).getIdentifier() );
+        assertEquals( "Match missed (3)", "star-item42", ( (TestRule) list.get( 2 ) ).getIdentifier() );
+
+        list = digester.getRules().match( null, "a/list5/b", null, null );
+        assertEquals( "Many wildcards (2)", 1, list.size() );
+        assertEquals( "Match missed (4)", "star-list5-parent", ( (TestRule) list.get( 0 ) ).getIdentifier() );
+
+        // the longest basic pattern wins
+        list = digester.getRules().match( null, "a/section/item1/b", null, null );
+        assertEquals( "Many wildcards (3)", 1, list.size() );
+        assertEquals( "Match missed (5)", "star-section-item1-star", ( (TestRule) list.get( 0 ) ).getIdentifier() );
+
+        list = digester.getRules().match( null, "root7x/item420", null, null );
+        assertEquals( "Many wildcards (4)", 0, list.size() );
+
+        // patterns registered after matching are taken into account
+        digester.addRule( "*/item420", new TestRule( "star-item420" ) );
+        list = digester.getRules().match( null, "root7x/item420", null, null );
+        assertEquals( "Many wildcards (5)", 1, list.size() );
+        assertEquals( "Match missed (6)", "star-item420", ( (TestRule) list.get( 0 ) ).getIdentifier() );
+    }
+
 }
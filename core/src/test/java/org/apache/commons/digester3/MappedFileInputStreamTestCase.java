@@ -0,0 +1,111 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class MappedFileInputStreamTestCase
+{
+
+    private Path file;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        file = File.createTempFile( "employee", ".xml" ).toPath();
+    }
+
+    @After
+    public void tearDown()
+        throws IOException
+    {
+        Files.deleteIfExists( file );
+    }
+
+    @Test
+    public void readsAcrossWindows()
+        throws IOException
+    {
+        final byte[] content = new byte[1000];
+        for ( int i = 0; i < content.length; i++ )
+        {
+            content[i] = (byte) i;
+        }
+        Files.write( file, content );
+
+        final InputStream input = new MappedFileInputStream( FileChannel.open( file, StandardOpenOption.READ ), 64 );
+        try
+        {
+            final ByteArrayOutputStream read = new ByteArrayOutputStream();
+            read.write( input.read() );
+            assertEquals( 999, input.available() );
+            final byte[] buffer = new byte[100];
+            int n;
+            while ( ( n = input.read( buffer, 0, buffer.length ) ) > 0 )
+            {
+                // never more than what is left in the window
+                assertTrue( n <= 64 );
+                read.write( buffer, 0, n );
+            }
+            assertEquals( -1, input.read() );
+            assertArrayEquals( content, read.toByteArray() );
+        }
+        finally
+        {
+            input.close();
+        }
+    }
+
+    @Test
+    public void parsesMappedAndBufferedFiles()
+        throws Exception
+    {
+        Files.write( file, "<employee firstName='First' lastName='Last'/>".getBytes( "UTF-8" ) );
+
+        for ( final long threshold : new long[] { 0, Long.MAX_VALUE } )
+        {
+            final Digester digester = new Digester();
+            digester.setMemoryMappingThreshold( threshold );
+            digester.addObjectCreate( "employee", Employee.class );
+            digester.addSetProperties( "employee" );
+
+            final Employee employee = digester.parse( file );
+            assertEquals( "First", employee.getFirstName() );
+            assertEquals( "Last", employee.getLastName() );
+        }
+    }
+
+}
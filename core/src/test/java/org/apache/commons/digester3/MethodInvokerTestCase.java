@@ -0,0 +1,128 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.InvocationTargetException;
+
+import org.junit.Test;
+
+/**
+ * Test case for the {@link MethodInvoker} used by the method rules, which must report failures as
+ * <code>Method.invoke</code> does.
+ */
+public class MethodInvokerTestCase
+{
+
+    public static class Target
+    {
+
+        public long twice( final long value )
+        {
+            return 2 * value;
+        }
+
+        public String name( final String name )
+        {
+            return name;
+        }
+
+        public Object cast( final Object value )
+        {
+            return (String) value;
+        }
+
+    }
+
+    private static MethodInvoker resolve( final String name, final Class<?> paramType )
+        throws NoSuchMethodException
+    {
+        return MethodInvoker.of( Target.class.getMethod( name, paramType ) );
+    }
+
+    @Test
+    public void testPrimitiveArgumentsAreWidened()
+        throws Exception
+    {
+        assertEquals( 6L, resolve( "twice", long.class ).invoke( new Target(), new Object[] { 3 } ) );
+        assertEquals( 198L, resolve( "twice", long.class ).invoke( new Target(), new Object[] { 'c' } ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testMismatchingArgumentIsIllegal()
+        throws Exception
+    {
+        resolve( "name", String.class ).invoke( new Target(), new Object[] { 42 } );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testNullPrimitiveArgumentIsIllegal()
+        throws Exception
+    {
+        resolve( "twice", long.class ).invoke( new Target(), new Object[] { null } );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testNarrowedPrimitiveArgumentIsIllegal()
+        throws Exception
+    {
+        resolve( "twice", long.class ).invoke( new Target(), new Object[] { 3.0 } );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testWrongArgumentCountIsIllegal()
+        throws Exception
+    {
+        resolve( "name", String.class ).invoke( new Target(), new Object[] { "a", "b" } );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testWrongTargetIsIllegal()
+        throws Exception
+    {
+        resolve( "name", String.class ).invoke( "not a target", new Object[] { "a" } );
+    }
+
+    @Test( expected = NullPointerException.class )
+    public void testNullTargetIsReported()
+        throws Exception
+    {
+        resolve( "name", String.class ).invoke( null, new Object[] { "a" } );
+    }
+
+    @Test
+    public void testExceptionOfTheMethodIsWrapped()
+        throws Exception
+    {
+        try
+        {
+            resolve( "cast", Object.class ).invoke( new Target(), new Object[] { 42 } );
+        }
+        catch ( final InvocationTargetException e )
+        {
+            assertSame( ClassCastException.class, e.getCause().getClass() );
+            return;
+        }
+        throw new AssertionError( "The ClassCastException of the method has not been wrapped" );
+    }
+
+}
@@ -0,0 +1,152 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+
+public final class ParseFutureTestCase
+{
+
+    private static InputSource items( final int count )
+    {
+        final StringBuilder xml = new StringBuilder( "<root>" );
+        for ( int i = 0; i < count; i++ )
+        {
+            xml.append( "<item/>" );
+        }
+        xml.append( "</root>" );
+        return new InputSource( new StringReader( xml.toString() ) );
+    }
+
+    @Test
+    public void cancellationStopsTheRunningParse()
+        throws Exception
+    {
+        final CountDownLatch started = new CountDownLatch( 1 );
+        final CountDownLatch cancelled = new CountDownLatch( 1 );
+        final AtomicInteger items = new AtomicInteger();
+
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        final Digester digester = new Digester();
+        digester.setExecutorService( executorService );
+        digester.addRule( "root/item", new Rule()
+        {
+
+            @Override
+            public void begin( final String namespace, final String name, final Attributes attributes )
+                throws Exception
+            {
+                if ( items.incrementAndGet() == 1 )
+                {
+                    started.countDown();
+                    cancelled.await();
+                }
+            }
+
+        } );
+
+        final Future<Object> future = digester.asyncParse( items( 1000 ) );
+        started.await();
+        assertTrue( future.cancel( false ) );
+        cancelled.countDown();
+
+        executorService.shutdown();
+        assertTrue( executorService.awaitTermination( 10, TimeUnit.SECONDS ) );
+        // the parse stopped at the end of the first item
+        assertEquals( 1, items.get() );
+        try
+        {
+            future.get();
+            fail( "The parse has been cancelled" );
+        }
+        catch ( final CancellationException e )
+        {
+            // expected
+        }
+
+        // the Digester can be reused once reset
+        digester.reset();
+        digester.parse( items( 2 ) );
+        assertEquals( 3, items.get() );
+    }
+
+    @Test
+    public void listenersAreNotifiedOnceDone()
+        throws Exception
+    {
+        // no executor service set, the default one is used
+        final Digester digester = new Digester();
+        digester.addObjectCreate( "root", StringBuilder.class );
+        digester.addCallMethod( "root/item", "append", 1, new Class<?>[] { String.class } );
+        digester.addCallParam( "root/item", 0, "name" );
+
+        final CountDownLatch done = new CountDownLatch( 1 );
+        final AtomicReference<ParseFuture<StringBuilder>> notified = new AtomicReference<ParseFuture<StringBuilder>>();
+        final ParseFuture<StringBuilder> future = digester.<StringBuilder> asyncParse(
+            new InputSource( new StringReader( "<root><item name='a'/><item name='b'/></root>" ) ) );
+        future.whenDone( new ObjectConsumer<ParseFuture<StringBuilder>>()
+        {
+
+            @Override
+            public void accept( final ParseFuture<StringBuilder> object )
+            {
+                notified.set( object );
+                done.countDown();
+            }
+
+        } );
+
+        assertTrue( done.await( 10, TimeUnit.SECONDS ) );
+        assertSame( future, notified.get() );
+        assertEquals( "ab", future.get().toString() );
+
+        // registered once done, notified right away
+        final AtomicInteger late = new AtomicInteger();
+        future.whenDone( new ObjectConsumer<ParseFuture<StringBuilder>>()
+        {
+
+            @Override
+            public void accept( final ParseFuture<StringBuilder> object )
+            {
+                late.incrementAndGet();
+            }
+
+        } );
+        assertEquals( 1, late.get() );
+    }
+
+}
@@ -19,6 +19,8 @@
 package org.apache.commons.digester3;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 import java.util.List;
 
@@ -202,4 +204,81 @@ public class RegexRulesTestCase
         assertEquals( "Simple Regex Match '/alpha/beta/gamma/beta/epsilon/beta/gamma/epsilon' to "
             + " '*/beta/gamma/?p*no' ", false, matcher.match( "/alpha/beta/gamma", "*/beta/gamma/?p*no" ) );
     }
+
+    /** Test patterns whose backtracking matching was exponential */
+    @Test
+    public void testSimpleRegexMatchWithManyStars()
+    {
+        final SimpleRegexMatcher matcher = new SimpleRegexMatcher();
+        final StringBuilder path = new StringBuilder();
+        for ( int i = 0; i < 200; i++ )
+        {
+            path.append( "/a" );
+        }
+
+        assertEquals( "Simple Regex Match '(/a)*200' to '*a*a*a*a*a*a*a*a*a*a*b' ", false,
+                      matcher.match( path.toString(), "*a*a*a*a*a*a*a*a*a*a*b" ) );
+        assertEquals( "Simple Regex Match '(/a)*200' to '*a*a*a*a*a*a*a*a*a*a' ", true,
+                      matcher.match( path.toString(), "*a*a*a*a*a*a*a*a*a*a" ) );
+        assertEquals( "Simple Regex Match '(/a)*200' to '/a*/?' ", true, matcher.match( path.toString(), "/a*/?" ) );
+        assertEquals( "Simple Regex Match '(/a)*200' to '/a*/??' ", false,
+                      matcher.match( path.toString(), "/a*/??" ) );
+    }
+
+    /** Test the cache of the rules matched by the paths */
+    @Test
+    public void testMatchCache()
+    {
+        final int[] matches = new int[1];
+        final RegexRules rules = new RegexRules( new RegexMatcher()
+        {
+            @Override
+            public boolean match( final String pathPattern, final String rulePattern )
+            {
+                matches[0]++;
+                return pathPattern.startsWith( rulePattern );
+            }
+        } );
+        rules.add( "/alpha", new TestRule( "alpha" ) );
+        rules.add( "/alpha/beta", new TestRule( "beta" ) );
+
+        final List<Rule> first = rules.match( "", "/alpha/beta", null, null );
+        assertEquals( "Wrong number of rules returned (1)", 2, first.size() );
+        assertEquals( "Patterns not tested", 2, matches[0] );
+        assertSame( "Match not cached", first, rules.match( "", "/alpha/beta", null, null ) );
+        assertEquals( "Patterns tested again", 2, matches[0] );
+        assertEquals( "Wrong number of hits", 1, rules.getMatchCacheHits() );
+        assertEquals( "Wrong number of misses", 1, rules.getMatchCacheMisses() );
+        try
+        {
+            first.add( new TestRule( "gamma" ) );
+            fail( "Cached matches must not be modifiable" );
+        }
+        catch ( final UnsupportedOperationException e )
+        {
+            // expected
+        }
+
+        // adding a rule invalidates the cache
+        rules.add( "/alpha/beta", new TestRule( "gamma" ) );
+        assertEquals( "Wrong number of rules returned (2)", 3, rules.match( "", "/alpha/beta", null, null ).size() );
+
+        rules.clear();
+        assertEquals( "Wrong number of rules returned (3)", 0, rules.match( "", "/alpha/beta", null, null ).size() );
+
+        // the oldest paths make room for the new ones
+        rules.setMatchCacheSize( 2 );
+        rules.add( "/", new TestRule( "root" ) );
+        rules.match( "", "/a", null, null );
+        rules.match( "", "/b", null, null );
+        rules.match( "", "/c", null, null );
+        assertEquals( "Wrong number of evictions", 1, rules.getMatchCacheEvictions() );
+
+        rules.setMatchCacheSize( 0 );
+        matches[0] = 0;
+        rules.match( "", "/a", null, null );
+        rules.match( "", "/a", null, null );
+        assertEquals( "Disabled cache used", 2, matches[0] );
+        assertEquals( "Disabled cache counted hits", 0, rules.getMatchCacheHits() );
+    }
 }
@@ -410,6 +410,39 @@ public class RuleTestCase
 
     }
 
+    @Test
+    public void testSetNextWithDeclaredParamTypeAndVaryingParents()
+        throws SAXException, IOException
+    {
+        final Digester digester = new Digester();
+        digester.setRules( new ExtendedBaseRules() );
+        digester.setValidating( false );
+
+        final SetNextRule setChild = new SetNextRule( "setChild", Nameable.class );
+        setChild.setExactMatch( true );
+
+        digester.addObjectCreate( "!*/b", BetaBean.class );
+        digester.addObjectCreate( "!*/a", AlphaBean.class );
+        digester.addObjectCreate( "root", ArrayList.class );
+        digester.addSetProperties( "!*" );
+        digester.addRule( "!*/b/?", setChild );
+        digester.addRule( "!*/a/?", setChild );
+        digester.addSetNext( "!root/?", "add" );
+
+        for ( int i = 0; i < 2; i++ )
+        {
+            final ArrayList<?> root = digester.parse( getInputStream( "Test4.xml" ) );
+
+            assertEquals( "Wrong array size", 2, root.size() );
+            final AlphaBean one = (AlphaBean) root.get( 0 );
+            final BetaBean two = (BetaBean) one.getChild();
+            assertEquals( "Wrong name (1)", "TWO", two.getName() );
+            assertEquals( "Wrong name (2)", "THREE", two.getChild().getName() );
+            final BetaBean four = (BetaBean) root.get( 1 );
+            assertEquals( "Wrong name (3)", "FIVE", four.getChild().getName() );
+        }
+    }
+
     @Test
     public void testSetTop()
         throws SAXException, IOException
@@ -19,7 +19,9 @@
 package org.apache.commons.digester3;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
@@ -245,6 +247,76 @@ public class RulesBaseTestCase
 
     }
 
+    /**
+     * Namespace aware matches are resolved once per pattern, so the same list is returned for every element.
+     */
+    @Test
+    public void testNamespaceMatchingIsResolvedAtRegistration()
+    {
+        final RulesBase rules = new RulesBase();
+        rules.add( "alpha/beta", new TestRule( "No-Namespace" ) );
+        rules.setNamespaceURI( "euclidean" );
+        rules.add( "alpha/beta", new TestRule( "Euclidean-Namespace" ) );
+
+        final List<Rule> euclidean = rules.match( "euclidean", "alpha/beta", null, null );
+        assertEquals( 2, euclidean.size() );
+        assertSame( euclidean, rules.match( "euclidean", "alpha/beta", null, null ) );
+
+        final List<Rule> hyperbolic = rules.match( "hyperbolic", "alpha/beta", null, null );
+        assertEquals( 1, hyperbolic.size() );
+        assertEquals( "No-Namespace", ( (TestRule) hyperbolic.get( 0 ) ).getIdentifier() );
+        assertSame( hyperbolic, rules.match( "elliptic", "alpha/beta", null, null ) );
+
+        rules.setNamespaceURI( null );
+        rules.add( "alpha/beta", new TestRule( "Late" ) );
+        assertEquals( 3, rules.match( "euclidean", "alpha/beta", null, null ).size() );
+        assertEquals( 2, rules.match( "hyperbolic", "alpha/beta", null, null ).size() );
+    }
+
+    /**
+     * The namespace aware matches are resolved again when a registered rule changes namespace URI, or when a subclass
+     * alters the registered rules directly.
+     */
+    @Test
+    public void testResolvedNamespacesAreInvalidated()
+    {
+        final RulesBase rules = new RulesBase();
+        final TestRule first = new TestRule( "First", "euclidean" );
+        rules.add( "alpha/beta", first );
+        assertEquals( 1, rules.match( "euclidean", "alpha/beta", null, null ).size() );
+        assertEquals( 0, rules.match( "hyperbolic", "alpha/beta", null, null ).size() );
+
+        first.setNamespaceURI( "hyperbolic" );
+        assertEquals( 0, rules.match( "euclidean", "alpha/beta", null, null ).size() );
+        assertEquals( 1, rules.match( "hyperbolic", "alpha/beta", null, null ).size() );
+
+        // a subclass replacing a rule in the cache
+        rules.cache.get( "alpha/beta" ).set( 0, new TestRule( "Second", "euclidean" ) );
+        final List<Rule> euclidean = rules.match( "euclidean", "alpha/beta", null, null );
+        assertEquals( 1, euclidean.size() );
+        assertEquals( "Second", ( (TestRule) euclidean.get( 0 ) ).getIdentifier() );
+        assertEquals( 0, rules.match( "hyperbolic", "alpha/beta", null, null ).size() );
+
+        // a subclass replacing the rules of a pattern
+        final List<Rule> replaced = new ArrayList<Rule>();
+        replaced.add( new TestRule( "Third", "hyperbolic" ) );
+        rules.cache.put( "alpha/beta", replaced );
+        assertEquals( 0, rules.match( "euclidean", "alpha/beta", null, null ).size() );
+        assertEquals( 1, rules.match( "hyperbolic", "alpha/beta", null, null ).size() );
+    }
+
+    /** Unmatched elements all share the same immutable empty result */
+    @Test
+    public void testUnmatchedPatternReturnsSharedEmptyList()
+    {
+        final RulesBase rules = new RulesBase();
+        rules.add( "alpha/beta", new TestRule( "beta" ) );
+
+        final List<Rule> unmatched = rules.match( null, "alpha/gamma", null, null );
+        assertEquals( 0, unmatched.size() );
+        assertSame( unmatched, rules.match( "euclidean", "alpha/delta", null, null ) );
+    }
+
     /** Tests the behavior when a rule is added with a trailing slash */
     @Test
     public void testTrailingSlash()
@@ -26,6 +26,7 @@ import static org.junit.Assert.fail;
 
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.ArrayList;
 
 import org.apache.commons.digester3.binder.AbstractRulesModule;
 import org.junit.Test;
@@ -222,4 +223,51 @@ public class SetPropertiesRuleTestCase
         return new StringReader( xml );
     }
 
+    /**
+     * Test that one rule sets the properties of beans of different classes, with varying attributes, and honours
+     * aliases added after it has been used.
+     */
+    @Test
+    public void testVaryingBeansAndAttributes()
+        throws Exception
+    {
+        final SetPropertiesRule rule = new SetPropertiesRule();
+        final Digester digester = new Digester();
+        digester.addObjectCreate( "root/bean", SimpleTestBean.class );
+        digester.addRule( "root/bean", rule );
+        digester.addSetNext( "root/bean", "add", Object.class.getName() );
+        digester.addObjectCreate( "root/employee", Employee.class );
+        digester.addRule( "root/employee", rule );
+        digester.addSetNext( "root/employee", "add", Object.class.getName() );
+
+        final ArrayList<Object> beans = new ArrayList<Object>();
+        digester.push( beans );
+        digester.parse( xmlTestReader( "<root><bean alpha='a1' beta='b1'/><bean beta='b2' alpha='a2'/>"
+            + "<employee firstName='Roger' age='42'/><bean alpha='a3' beta='b3'/><bean alpha='a4'/></root>" ) );
+
+        assertEquals( 5, beans.size() );
+        assertBean( (SimpleTestBean) beans.get( 0 ), "a1", "b1" );
+        assertBean( (SimpleTestBean) beans.get( 1 ), "a2", "b2" );
+        final Employee employee = (Employee) beans.get( 2 );
+        assertEquals( "Roger", employee.getFirstName() );
+        assertEquals( 42, employee.getAge() );
+        assertBean( (SimpleTestBean) beans.get( 3 ), "a3", "b3" );
+        assertBean( (SimpleTestBean) beans.get( 4 ), "a4", null );
+
+        rule.addAlias( "alpha", "gamma" );
+        beans.clear();
+        digester.push( beans );
+        digester.parse( xmlTestReader( "<root><bean alpha='a5' beta='b5'/></root>" ) );
+
+        final SimpleTestBean aliased = (SimpleTestBean) beans.get( 0 );
+        assertBean( aliased, null, "b5" );
+        assertEquals( "a5", aliased.getGamma() );
+    }
+
+    private static void assertBean( final SimpleTestBean bean, final String alpha, final String beta )
+    {
+        assertEquals( alpha, bean.getAlpha() );
+        assertEquals( beta, bean.getBeta() );
+    }
+
 }
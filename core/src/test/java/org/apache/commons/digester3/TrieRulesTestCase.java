@@ -0,0 +1,241 @@
+/* $Id$
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.digester3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Element;
+import org.xml.sax.Attributes;
+
+/**
+ * <p>
+ * Runs the standard tests for RulesBase against {@link TrieRules}, as well as tests of the incremental matching
+ * performed while parsing.
+ * </p>
+ */
+public class TrieRulesTestCase
+    extends RulesBaseTestCase
+{
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Rules createMatchingRulesForTest()
+    {
+        return new TrieRules();
+    }
+
+    /**
+     * Rules fired while parsing must be the same as the ones selected by the nesting pattern.
+     */
+    @Test
+    public void testIncrementalMatching()
+        throws Exception
+    {
+        final List<String> fired = new ArrayList<String>();
+        digester.addRule( "root/a", new RecordingRule( "root/a", fired ) );
+        digester.addRule( "*/b", new RecordingRule( "*/b", fired ) );
+        digester.addRule( "*/a/b", new RecordingRule( "*/a/b", fired ) );
+        digester.addRule( "*/x/a/b/c", new RecordingRule( "*/x/a/b/c", fired ) );
+        digester.addRule( "root/x/a/b", new RecordingRule( "root/x/a/b", fired ) );
+
+        digester.parse( new StringReader( "<root><a><b/></a><b/><x><a><b><c/></b></a><y><a><b/></a></y></x></root>" ) );
+
+        final List<String> expected = new ArrayList<String>();
+        expected.add( "root/a=root/a" );
+        expected.add( "root/a/b=*/a/b" );
+        expected.add( "root/b=*/b" );
+        expected.add( "root/x/a/b=root/x/a/b" );
+        expected.add( "root/x/a/b/c=*/x/a/b/c" );
+        expected.add( "root/x/y/a/b=*/a/b" );
+        assertEquals( expected, fired );
+
+        for ( final String firing : expected )
+        {
+            final String match = firing.substring( 0, firing.indexOf( '=' ) );
+            final List<Rule> rules = digester.getRules().match( null, match, null, null );
+            assertEquals( match, 1, rules.size() );
+            assertEquals( firing, match + "=" + ( (RecordingRule) rules.get( 0 ) ).identifier );
+        }
+    }
+
+    /**
+     * When no rule of the exact pattern matches the namespace of an element, the longest tail pattern applies.
+     */
+    @Test
+    public void testNamespaceFallbackToTailPattern()
+    {
+        final Rules rules = digester.getRules();
+        rules.setNamespaceURI( "euclidean" );
+        digester.addRule( "alpha/beta", new TestRule( "Euclidean-Exact" ) );
+        rules.setNamespaceURI( "hyperbolic" );
+        digester.addRule( "*/beta", new TestRule( "Hyperbolic-Tail" ) );
+        rules.setNamespaceURI( null );
+
+        assertEquals( "Euclidean-Exact",
+                      ( (TestRule) rules.match( "euclidean", "alpha/beta", null, null ).get( 0 ) ).getIdentifier() );
+        assertEquals( "Hyperbolic-Tail",
+                      ( (TestRule) rules.match( "hyperbolic", "alpha/beta", null, null ).get( 0 ) ).getIdentifier() );
+        assertEquals( 0, rules.match( "elliptic", "alpha/beta", null, null ).size() );
+        assertEquals( "Euclidean-Exact",
+                      ( (TestRule) rules.match( null, "alpha/beta", null, null ).get( 0 ) ).getIdentifier() );
+    }
+
+    /**
+     * Rules added after the state machine has been compiled must be matched too.
+     */
+    @Test
+    public void testAddAfterCompilation()
+    {
+        final Rules rules = digester.getRules();
+        digester.addRule( "a/b", new TestRule( "a/b" ) );
+        assertEquals( 1, rules.match( null, "a/b", null, null ).size() );
+        assertEquals( 0, rules.match( null, "a/b/c", null, null ).size() );
+
+        final IncrementalRules incrementalRules = (IncrementalRules) rules;
+        final MatchState a = incrementalRules.getChildState( incrementalRules.getRootState(), "a" );
+        final MatchState ab = incrementalRules.getChildState( a, "b" );
+        digester.addRule( "*/c", new TestRule( "*/c" ) );
+        assertNull( "States of a stale state machine must not be advanced", incrementalRules.getChildState( ab, "c" ) );
+        assertEquals( 1, rules.match( null, "a/b/c", null, null ).size() );
+        assertEquals( "*/c", ( (TestRule) rules.match( null, "a/b/c", null, null ).get( 0 ) ).getIdentifier() );
+    }
+
+    /**
+     * States must tell whether a registered pattern can match below them.
+     */
+    @Test
+    public void testCanMatchDescendants()
+    {
+        final IncrementalRules rules = (IncrementalRules) digester.getRules();
+        digester.addRule( "feed/record", new TestRule( "feed/record" ) );
+        digester.addRule( "feed/record/id", new TestRule( "feed/record/id" ) );
+
+        MatchState feed = rules.getChildState( rules.getRootState(), "feed" );
+        assertTrue( rules.getRootState().canMatchDescendants() );
+        assertTrue( feed.canMatchDescendants() );
+        assertTrue( rules.getChildState( feed, "record" ).canMatchDescendants() );
+        assertFalse( rules.getChildState( rules.getChildState( feed, "record" ), "id" ).canMatchDescendants() );
+        assertFalse( rules.getChildState( feed, "audit" ).canMatchDescendants() );
+        assertFalse( rules.getChildState( rules.getRootState(), "other" ).canMatchDescendants() );
+
+        // a tail pattern may match anywhere
+        digester.addRule( "*/note", new TestRule( "*/note" ) );
+        feed = rules.getChildState( rules.getRootState(), "feed" );
+        assertTrue( rules.getChildState( feed, "audit" ).canMatchDescendants() );
+        assertTrue( rules.getChildState( rules.getRootState(), "other" ).canMatchDescendants() );
+    }
+
+    /**
+     * Skipping the subtrees no rule can match must not change the result of the parse, neither through SAX nor StAX.
+     */
+    @Test
+    public void testSkipUnmatchedSubtrees()
+        throws Exception
+    {
+        digester.addObjectCreate( "feed", ArrayList.class );
+        digester.addObjectCreate( "feed/record", AlphaBean.class );
+        digester.addCallMethod( "feed/record", "setName", 0 );
+        digester.addSetNext( "feed/record", "add" );
+        // takes control of the events of a subtree no rule matches
+        digester.addRule( "feed/extensions", new NodeCreateRule() );
+        digester.addSetNext( "feed/extensions", "add" );
+
+        final String xml = "<feed><audit><record>hidden</record></audit>"
+            + "<record>o<audit><record>hidden</record>hidden</audit>ne</record>"
+            + "<extensions><record>kept</record></extensions><record>two</record></feed>";
+
+        final List<?> parsed = digester.parse( new StringReader( xml ) );
+        assertSkippedFeed( parsed );
+
+        digester.reset();
+        final List<?> pulled =
+            digester.parse( XMLInputFactory.newInstance().createXMLStreamReader( new StringReader( xml ) ) );
+        assertSkippedFeed( pulled );
+    }
+
+    /**
+     * The children of an element matched by no pattern are not skipped when a rule of the element replaces the rules
+     * matching them, as SetNestedPropertiesRule does.
+     */
+    @Test
+    public void testNestedPropertiesOfLeafPattern()
+        throws Exception
+    {
+        digester.addObjectCreate( "feed/record", AlphaBean.class );
+        digester.addSetNestedProperties( "feed/record" );
+        digester.addSetNext( "feed/record", "add" );
+
+        final String xml = "<feed><record><name>one</name></record></feed>";
+
+        digester.push( new ArrayList<Object>() );
+        final List<?> parsed = digester.parse( new StringReader( xml ) );
+        assertEquals( 1, parsed.size() );
+        assertEquals( "one", ( (AlphaBean) parsed.get( 0 ) ).getName() );
+
+        digester.reset();
+        digester.push( new ArrayList<Object>() );
+        final List<?> pulled =
+            digester.parse( XMLInputFactory.newInstance().createXMLStreamReader( new StringReader( xml ) ) );
+        assertEquals( 1, pulled.size() );
+        assertEquals( "one", ( (AlphaBean) pulled.get( 0 ) ).getName() );
+    }
+
+    private static void assertSkippedFeed( final List<?> feed )
+    {
+        assertEquals( 3, feed.size() );
+        assertEquals( "one", ( (AlphaBean) feed.get( 0 ) ).getName() );
+        assertEquals( "kept", ( (Element) feed.get( 1 ) ).getFirstChild().getTextContent() );
+        assertEquals( "two", ( (AlphaBean) feed.get( 2 ) ).getName() );
+    }
+
+    private static final class RecordingRule
+        extends Rule
+    {
+
+        private final String identifier;
+
+        private final List<String> fired;
+
+        RecordingRule( final String identifier, final List<String> fired )
+        {
+            this.identifier = identifier;
+            this.fired = fired;
+        }
+
+        @Override
+        public void begin( final String namespace, final String name, final Attributes attributes )
+        {
+            fired.add( getDigester().getMatch() + "=" + identifier );
+        }
+
+    }
+
+}
@@ -0,0 +1,234 @@
+package org.apache.commons.digester3;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+/**
+ * Test case for the parse of StAX readers by the {@link Digester}.
+ */
+public class XMLStreamDriverTestCase
+{
+
+    @Test
+    public void testParse()
+        throws Exception
+    {
+        final Digester digester = new Digester();
+        digester.addObjectCreate( "employee", Employee.class );
+        digester.addSetProperties( "employee" );
+        digester.addObjectCreate( "employee/address", Address.class );
+        digester.addSetProperties( "employee/address" );
+        digester.addSetNext( "employee/address", "addAddress" );
+
+        final XMLStreamReader reader =
+            XMLInputFactory.newInstance().createXMLStreamReader( getClass().getResourceAsStream( "Test1.xml" ) );
+        final Employee employee = digester.parse( reader );
+
+        assertNotNull( employee );
+        assertEquals( "First Name", employee.getFirstName() );
+        assertEquals( "Last Name", employee.getLastName() );
+        assertEquals( "Home Street", employee.getAddress( "home" ).getStreet() );
+        assertEquals( "Office City", employee.getAddress( "office" ).getCity() );
+    }
+
+    @Test
+    public void testParseBodyText()
+        throws Exception
+    {
+        final Digester digester = new Digester();
+        digester.addObjectCreate( "employee", Employee.class );
+        digester.addBeanPropertySetter( "employee/first", "firstName" );
+        digester.addBeanPropertySetter( "employee/last", "lastName" );
+
+        final Employee employee = digester.parse( newReader( "<employee><!-- names -->"
+            + "<first>First &amp; Only</first><last><![CDATA[<Last>]]></last></employee>" ) );
+
+        assertEquals( "First & Only", employee.getFirstName() );
+        assertEquals( "<Last>", employee.getLastName() );
+    }
+
+    @Test
+    public void testParseNamespaceAware()
+        throws Exception
+    {
+        final Digester digester = new Digester();
+        digester.setNamespaceAware( true );
+        digester.addRuleSet( new TestRuleSet( null, "http://commons.apache.org/digester/Foo" ) );
+
+        final XMLStreamReader reader =
+            XMLInputFactory.newInstance().createXMLStreamReader( getClass().getResourceAsStream( "Test3.xml" ) );
+        final Employee employee = digester.parse( reader );
+
+        assertEquals( "First Name", employee.getFirstName() );
+        assertEquals( "Last Name", employee.getLastName() );
+        assertNull( employee.getAddress( "home" ) );
+    }
+
+    @Test
+    public void testIterate()
+        throws Exception
+    {
+        final Digester digester = new Digester();
+        digester.addObjectCreate( "catalog", ArrayList.class );
+        digester.addObjectCreate( "catalog/item", AlphaBean.class );
+        digester.addSetProperties( "catalog/item" );
+        digester.addSetNext( "catalog/item", "add" );
+
+        final XMLStreamReader reader =
+            newReader( "<catalog><item name='one'/><item name='two'/><item name='three'/></catalog>" );
+        final Iterator<AlphaBean> items = digester.iterate( reader, "catalog/item", AlphaBean.class );
+
+        assertTrue( items.hasNext() );
+        assertEquals( "one", items.next().getName() );
+        // the following items have not been pulled yet
+        final ArrayList<?> catalog = digester.peek();
+        assertEquals( 1, catalog.size() );
+
+        assertEquals( "two", items.next().getName() );
+        assertEquals( "three", items.next().getName() );
+        assertFalse( items.hasNext() );
+        assertEquals( 3, catalog.size() );
+        assertEquals( catalog, digester.getRoot() );
+    }
+
+    @Test
+    public void testIterateAgain()
+        throws Exception
+    {
+        final Digester digester = new Digester();
+        digester.addObjectCreate( "catalog/item", AlphaBean.class );
+        digester.addSetProperties( "catalog/item" );
+
+        for ( int i = 0; i < 2; i++ )
+        {
+            final XMLStreamReader reader = newReader( "<catalog><item name='one'/></catalog>" );
+            final Iterator<AlphaBean> items = digester.iterate( reader, "catalog/item", AlphaBean.class );
+            assertEquals( "one", items.next().getName() );
+            assertFalse( items.hasNext() );
+        }
+        // the objects are collected without registering any rule
+        assertEquals( 2, digester.getRules().match( null, "catalog/item", null, null ).size() );
+    }
+
+    @Test
+    public void testIterateWildcardRules()
+        throws Exception
+    {
+        final Digester digester = new Digester();
+        digester.addObjectCreate( "catalog", ArrayList.class );
+        digester.addObjectCreate( "*/item", AlphaBean.class );
+        digester.addSetProperties( "*/item" );
+        digester.addSetNext( "*/item", "add" );
+
+        final XMLStreamReader reader = newReader( "<catalog><item name='one'/><item name='two'/></catalog>" );
+        final Iterator<AlphaBean> items = digester.iterate( reader, "catalog/item", AlphaBean.class );
+
+        assertEquals( "one", items.next().getName() );
+        assertEquals( "two", items.next().getName() );
+        assertFalse( items.hasNext() );
+        assertEquals( 4, digester.getRules().rules().size() );
+    }
+
+    @Test
+    public void testIterationEnds()
+        throws Exception
+    {
+        final int[] cleanups = new int[1];
+        final Digester digester = new Digester()
+        {
+            @Override
+            protected void cleanup()
+            {
+                cleanups[0]++;
+                super.cleanup();
+            }
+        };
+        digester.addObjectCreate( "catalog/item", AlphaBean.class );
+        digester.addSetProperties( "catalog/item" );
+        digester.addObjectCreate( "catalog/other", AlphaBean.class );
+        digester.addSetProperties( "catalog/other" );
+
+        // exhausted
+        Iterator<AlphaBean> items =
+            digester.iterate( newReader( "<catalog><item name='one'/></catalog>" ), "catalog/item", AlphaBean.class );
+        assertEquals( "one", items.next().getName() );
+        assertFalse( items.hasNext() );
+        assertEquals( 1, cleanups[0] );
+
+        // dropped before its end, and ended by the next iteration
+        items = digester.iterate( newReader( "<catalog><item name='one'/><item name='two'/></catalog>" ),
+                                  "catalog/item", AlphaBean.class );
+        assertEquals( "one", items.next().getName() );
+        final Iterator<AlphaBean> others =
+            digester.iterate( newReader( "<catalog><item name='three'/><other name='four'/></catalog>" ),
+                              "catalog/other", AlphaBean.class );
+        assertEquals( 2, cleanups[0] );
+        assertEquals( "four", others.next().getName() );
+        assertFalse( others.hasNext() );
+        assertEquals( 3, cleanups[0] );
+        // the objects of the next iteration are no longer collected by the dropped one
+        assertFalse( items.hasNext() );
+    }
+
+    @Test
+    public void testIterateMalformedDocument()
+        throws Exception
+    {
+        final Digester digester = new Digester();
+        digester.addObjectCreate( "catalog/item", AlphaBean.class );
+
+        final Iterator<AlphaBean> items =
+            digester.iterate( newReader( "<catalog><item></catalog>" ), "catalog/item", AlphaBean.class );
+        try
+        {
+            items.hasNext();
+            fail( "Malformed document should have been reported" );
+        }
+        catch ( final IllegalStateException e )
+        {
+            assertTrue( e.getCause() instanceof SAXException );
+        }
+        assertFalse( items.hasNext() );
+    }
+
+    private static XMLStreamReader newReader( final String xml )
+        throws XMLStreamException
+    {
+        return XMLInputFactory.newInstance().createXMLStreamReader( new StringReader( xml ) );
+    }
+
+}
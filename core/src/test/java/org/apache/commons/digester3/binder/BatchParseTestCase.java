@@ -0,0 +1,214 @@
+package org.apache.commons.digester3.binder;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.apache.commons.digester3.binder.DigesterLoader.newLoader;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.commons.digester3.Digester;
+import org.apache.commons.digester3.Employee;
+import org.apache.commons.digester3.ObjectConsumer;
+import org.apache.commons.digester3.Rule;
+import org.junit.After;
+import org.junit.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+
+public final class BatchParseTestCase
+{
+
+    private final List<Path> files = new ArrayList<Path>();
+
+    private final Set<Digester> digesters = Collections.synchronizedSet( new HashSet<Digester>() );
+
+    @After
+    public void tearDown()
+        throws IOException
+    {
+        for ( final Path file : files )
+        {
+            Files.deleteIfExists( file );
+        }
+    }
+
+    private DigesterLoader loader()
+    {
+        return newLoader( new AbstractRulesModule()
+        {
+
+            @Override
+            protected void configure()
+            {
+                forPattern( "employee" ).createObject().ofType( Employee.class )
+                    .then()
+                    .setProperties()
+                    .then()
+                    .addRule( new Rule()
+                    {
+
+                        @Override
+                        public void begin( final String namespace, final String name, final Attributes attributes )
+                        {
+                            digesters.add( getDigester() );
+                        }
+
+                    } );
+            }
+
+        } );
+    }
+
+    private Path write( final String xml )
+        throws IOException
+    {
+        final Path file = File.createTempFile( "employee", ".xml" ).toPath();
+        files.add( file );
+        Files.write( file, xml.getBytes( "UTF-8" ) );
+        return file;
+    }
+
+    private List<Path> employees( final int count )
+        throws IOException
+    {
+        final List<Path> batch = new ArrayList<Path>();
+        for ( int i = 0; i < count; i++ )
+        {
+            batch.add( write( "<employee firstName='Employee " + i + "'/>" ) );
+        }
+        return batch;
+    }
+
+    @Test
+    public void resultsFollowTheBatchOrder()
+        throws Exception
+    {
+        final List<Path> batch = employees( 100 );
+        final List<ParseResult<Employee>> results = loader().parseAll( batch, 4 );
+
+        assertEquals( 100, results.size() );
+        for ( int i = 0; i < 100; i++ )
+        {
+            final ParseResult<Employee> result = results.get( i );
+            assertSame( batch.get( i ), result.getPath() );
+            assertTrue( result.isSuccessful() );
+            assertNull( result.getFailure() );
+            assertEquals( "Employee " + i, result.getResult().getFirstName() );
+        }
+        // one Digester per worker, reused for all of its files
+        assertTrue( digesters.size() <= 4 );
+    }
+
+    @Test
+    public void failuresDoNotAbortTheBatch()
+        throws Exception
+    {
+        final List<Path> batch = employees( 10 );
+        final Path malformed = write( "<employee firstName='x' firstName='y'/>" );
+        batch.add( 3, malformed );
+        final Path missing = malformed.resolveSibling( malformed.getFileName() + ".missing" );
+        batch.add( 7, missing );
+
+        final List<ParseResult<Employee>> results = loader().parseAll( batch, 3 );
+
+        assertEquals( 12, results.size() );
+        for ( final ParseResult<Employee> result : results )
+        {
+            if ( result.getPath() == malformed )
+            {
+                assertFalse( result.isSuccessful() );
+                assertTrue( result.getFailure() instanceof SAXException );
+                assertNull( result.getResult() );
+            }
+            else if ( result.getPath() == missing )
+            {
+                assertFalse( result.isSuccessful() );
+                assertTrue( result.getFailure() instanceof IOException );
+            }
+            else
+            {
+                assertTrue( result.isSuccessful() );
+                assertTrue( result.getResult().getFirstName().startsWith( "Employee " ) );
+            }
+        }
+    }
+
+    @Test
+    public void outcomesAreStreamedToTheCallingThread()
+        throws Exception
+    {
+        final Thread caller = Thread.currentThread();
+        final Set<String> names = new HashSet<String>();
+        loader().parseAll( employees( 50 ), 4, new ObjectConsumer<ParseResult<Employee>>()
+        {
+
+            @Override
+            public void accept( final ParseResult<Employee> result )
+            {
+                assertSame( caller, Thread.currentThread() );
+                names.add( result.getResult().getFirstName() );
+            }
+
+        } );
+
+        assertEquals( 50, names.size() );
+    }
+
+    @Test
+    public void consumerFailureAbortsTheBatch()
+        throws Exception
+    {
+        final IllegalStateException failure = new IllegalStateException( "stop" );
+        try
+        {
+            loader().parseAll( employees( 20 ), 2, new ObjectConsumer<ParseResult<Employee>>()
+            {
+
+                @Override
+                public void accept( final ParseResult<Employee> result )
+                {
+                    throw failure;
+                }
+
+            } );
+            fail( "The consumer failure should have been reported" );
+        }
+        catch ( final ExecutionException e )
+        {
+            assertSame( failure, e.getCause() );
+        }
+    }
+
+}
@@ -0,0 +1,192 @@
+package org.apache.commons.digester3.binder;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.apache.commons.digester3.binder.DigesterLoader.newLoader;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.digester3.Address;
+import org.apache.commons.digester3.Digester;
+import org.apache.commons.digester3.Employee;
+import org.apache.commons.digester3.ObjectConsumer;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public final class DigesterPoolTestCase
+{
+
+    private final DigesterLoader loader = newLoader( new AbstractRulesModule()
+    {
+
+        @Override
+        protected void configure()
+        {
+            forPattern( "employee" ).createObject().ofType( Employee.class )
+                .then()
+                .setProperties();
+            forPattern( "employee/address" ).createObject().ofType( Address.class )
+                .then()
+                .setProperties()
+                .then()
+                .setNext( "addAddress" );
+        }
+
+    } );
+
+    private static String employee( final String firstName, final String city )
+    {
+        return "<employee firstName='" + firstName + "'><address type='home' city='" + city + "'/></employee>";
+    }
+
+    @Test
+    public void borrowedDigesterIsResetOnRelease()
+        throws Exception
+    {
+        final DigesterPool pool = loader.newPool( 2 );
+
+        final Digester digester = pool.borrow();
+        try
+        {
+            digester.parse( new StringReader( "<employee firstName='Broken'><address type='home'>" ) );
+            fail( "Truncated document should not be parsed" );
+        }
+        catch ( final SAXException e )
+        {
+            // expected
+        }
+        pool.release( digester );
+
+        final Digester reused = pool.borrow();
+        assertSame( digester, reused );
+        assertNull( reused.getRoot() );
+        assertEquals( 0, reused.getCount() );
+
+        final Employee employee = reused.parse( new StringReader( employee( "Roger", "London" ) ) );
+        pool.release( reused );
+        assertEquals( "Roger", employee.getFirstName() );
+        assertEquals( "London", employee.getAddress( "home" ).getCity() );
+
+        assertEquals( 1, pool.getMissCount() );
+        assertEquals( 1, pool.getHitCount() );
+        assertEquals( 0, pool.getWaitCount() );
+        assertEquals( 0, pool.getActiveCount() );
+        assertEquals( 1, pool.getIdleCount() );
+    }
+
+    @Test
+    public void registrationsOfABorrowerDoNotLeak()
+        throws Exception
+    {
+        final DigesterPool pool = loader.newPool( 1 );
+
+        final Digester digester = pool.borrow();
+        final int ruleCount = digester.getRules().rules().size();
+        final List<Address> streamed = new ArrayList<Address>();
+        digester.addSetProperties( "employee", "firstName", "lastName" );
+        digester.stream( "employee/address", Address.class, new ObjectConsumer<Address>()
+        {
+
+            @Override
+            public void accept( final Address address )
+            {
+                streamed.add( address );
+            }
+
+        } );
+        final Employee swapped = digester.parse( new StringReader( employee( "Roger", "London" ) ) );
+        assertEquals( "Roger", swapped.getLastName() );
+        assertEquals( 1, streamed.size() );
+        pool.release( digester );
+
+        // the pool holds a single Digester
+        final Digester reused = pool.borrow();
+        assertSame( digester, reused );
+        assertEquals( ruleCount, reused.getRules().rules().size() );
+        final Employee employee = reused.parse( new StringReader( employee( "Roger", "Paris" ) ) );
+        pool.release( reused );
+        assertEquals( "Roger", employee.getFirstName() );
+        assertEquals( new Employee().getLastName(), employee.getLastName() );
+        assertEquals( "Paris", employee.getAddress( "home" ).getCity() );
+        assertEquals( 1, streamed.size() );
+    }
+
+    @Test
+    public void borrowIsBounded()
+        throws Exception
+    {
+        final DigesterPool pool = loader.newPool( 1 );
+
+        final Digester digester = pool.borrow();
+        assertEquals( 1, pool.getActiveCount() );
+        assertNull( pool.borrow( 10, TimeUnit.MILLISECONDS ) );
+        assertEquals( 1, pool.getWaitCount() );
+
+        final Thread releaser = new Thread()
+        {
+
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep( 50 );
+                }
+                catch ( final InterruptedException e )
+                {
+                    // release anyway
+                }
+                pool.release( digester );
+            }
+
+        };
+        releaser.start();
+        assertSame( digester, pool.borrow() );
+        releaser.join();
+
+        assertEquals( 2, pool.getWaitCount() );
+        assertEquals( 1, pool.getMissCount() );
+        assertEquals( 1, pool.getHitCount() );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void releaseForeignDigester()
+    {
+        loader.newPool( 1 ).release( loader.newDigester() );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void releaseTwice()
+        throws Exception
+    {
+        final DigesterPool pool = loader.newPool( 1 );
+        final Digester digester = pool.borrow();
+        pool.release( digester );
+        pool.release( digester );
+    }
+
+}
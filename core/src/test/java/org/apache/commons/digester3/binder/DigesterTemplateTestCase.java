@@ -0,0 +1,136 @@
+package org.apache.commons.digester3.binder;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.apache.commons.digester3.binder.DigesterLoader.newLoader;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.digester3.Address;
+import org.apache.commons.digester3.Employee;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public final class DigesterTemplateTestCase
+{
+
+    private final DigesterTemplate template = newLoader( new AbstractRulesModule()
+    {
+
+        @Override
+        protected void configure()
+        {
+            forPattern( "employee" ).createObject().ofType( Employee.class )
+                .then()
+                .setProperties();
+            forPattern( "employee/address" ).createObject().ofType( Address.class )
+                .then()
+                .setProperties()
+                .then()
+                .setNext( "addAddress" );
+        }
+
+    } ).newTemplate();
+
+    private static String employee( final String firstName, final String city )
+    {
+        return "<employee firstName='" + firstName + "'><address type='home' city='" + city + "'/></employee>";
+    }
+
+    @Test
+    public void reuseContextBetweenParses()
+        throws Exception
+    {
+        final Employee first = template.parse( new StringReader( employee( "Roger", "London" ) ) );
+        final Employee second = template.parse( new StringReader( employee( "Pat", "Paris" ) ) );
+
+        assertNotSame( first, second );
+        assertEquals( "Roger", first.getFirstName() );
+        assertEquals( "London", first.getAddress( "home" ).getCity() );
+        assertEquals( "Pat", second.getFirstName() );
+        assertEquals( "Paris", second.getAddress( "home" ).getCity() );
+    }
+
+    @Test
+    public void recoverAfterFailedParse()
+        throws Exception
+    {
+        try
+        {
+            template.parse( new StringReader( "<employee firstName='Broken'><address type='home'>" ) );
+            fail( "Truncated document should not be parsed" );
+        }
+        catch ( final SAXException e )
+        {
+            // expected
+        }
+
+        final Employee employee = template.parse( new StringReader( employee( "Roger", "London" ) ) );
+        assertEquals( "Roger", employee.getFirstName() );
+        assertEquals( "London", employee.getAddress( "home" ).getCity() );
+    }
+
+    @Test
+    public void parseFromConcurrentThreads()
+        throws Exception
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool( 4 );
+        try
+        {
+            final List<Future<Employee>> results = new ArrayList<Future<Employee>>();
+            for ( int i = 0; i < 100; i++ )
+            {
+                final String name = "employee" + i;
+                results.add( executor.submit( new Callable<Employee>()
+                {
+
+                    @Override
+                    public Employee call()
+                        throws Exception
+                    {
+                        return template.parse( new StringReader( employee( name, "city of " + name ) ) );
+                    }
+
+                } ) );
+            }
+
+            for ( int i = 0; i < results.size(); i++ )
+            {
+                final Employee employee = results.get( i ).get();
+                assertEquals( "employee" + i, employee.getFirstName() );
+                assertEquals( "city of employee" + i, employee.getAddress( "home" ).getCity() );
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,263 @@
+package org.apache.commons.digester3.binder;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.apache.commons.digester3.binder.DigesterLoader.newLoader;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.commons.digester3.Employee;
+import org.apache.commons.digester3.ObjectConsumer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public final class ParallelRecordParserTestCase
+{
+
+    private final List<File> files = new ArrayList<File>();
+
+    private ForkJoinPool pool;
+
+    @Before
+    public void setUp()
+    {
+        pool = new ForkJoinPool( 4 );
+    }
+
+    @After
+    public void tearDown()
+    {
+        pool.shutdownNow();
+        for ( final File file : files )
+        {
+            file.delete();
+        }
+    }
+
+    private static DigesterLoader loader( final String namespaceURI )
+    {
+        return newLoader( new AbstractRulesModule()
+        {
+
+            @Override
+            protected void configure()
+            {
+                forPattern( "staff/employee" ).withNamespaceURI( namespaceURI )
+                    .createObject().ofType( Employee.class )
+                    .then()
+                    .setProperties();
+            }
+
+        } ).setNamespaceAware( namespaceURI != null );
+    }
+
+    private File write( final String xml )
+        throws IOException
+    {
+        final File file = File.createTempFile( "staff", ".xml" );
+        files.add( file );
+        final OutputStream output = new FileOutputStream( file );
+        try
+        {
+            output.write( xml.getBytes( "UTF-8" ) );
+        }
+        finally
+        {
+            output.close();
+        }
+        return file;
+    }
+
+    private static String staff( final String rootName, final String rootAttributes, final String recordName,
+                                 final int count )
+    {
+        final StringBuilder xml = new StringBuilder( "<?xml version='1.0' encoding='UTF-8'?>\n" );
+        xml.append( "<!-- <staff><employee> -->\n" );
+        xml.append( '<' ).append( rootName ).append( rootAttributes ).append( ">\n" );
+        xml.append( "<header><![CDATA[<" ).append( recordName ).append( ">]]></header>\n" );
+        for ( int i = 0; i < count; i++ )
+        {
+            xml.append( "  <" ).append( recordName ).append( " firstName='Employee " ).append( i );
+            xml.append( "' lastName=\"a > b\">" );
+            xml.append( "<?pi <" ).append( recordName ).append( "?>" );
+            xml.append( "<nested><" ).append( recordName ).append( "/></nested>" );
+            xml.append( "</" ).append( recordName ).append( ">\n" );
+        }
+        xml.append( "</" ).append( rootName ).append( ">\n<!-- trailing -->\n" );
+        return xml.toString();
+    }
+
+    @Test
+    public void recordsAreMergedInDocumentOrder()
+        throws Exception
+    {
+        final File file = write( staff( "staff", "", "employee", 1000 ) );
+        final List<Employee> employees =
+            loader( null ).newParallelRecordParser( "staff/employee", Employee.class ).setChunkSize( 512 )
+                .parse( file, pool );
+
+        assertEquals( 1000, employees.size() );
+        for ( int i = 0; i < employees.size(); i++ )
+        {
+            assertEquals( "Employee " + i, employees.get( i ).getFirstName() );
+            assertEquals( "a > b", employees.get( i ).getLastName() );
+        }
+    }
+
+    @Test
+    public void recordsAreStreamedInDocumentOrder()
+        throws Exception
+    {
+        final File file = write( staff( "staff", "", "employee", 1000 ) );
+        final ParallelRecordParser<Employee> parser =
+            loader( null ).newParallelRecordParser( "staff/employee", Employee.class ).setChunkSize( 256 );
+
+        // the parser, and its Digester instances, are reused
+        for ( int run = 0; run < 2; run++ )
+        {
+            final List<String> names = new ArrayList<String>();
+            parser.parse( file, pool, new ObjectConsumer<Employee>()
+            {
+
+                @Override
+                public void accept( final Employee employee )
+                {
+                    names.add( employee.getFirstName() );
+                }
+
+            } );
+
+            assertEquals( 1000, names.size() );
+            for ( int i = 0; i < names.size(); i++ )
+            {
+                assertEquals( "Employee " + i, names.get( i ) );
+            }
+        }
+    }
+
+    @Test
+    public void recordsBoundOnAWildcardPattern()
+        throws Exception
+    {
+        final File file = write( staff( "staff", "", "employee", 100 ) );
+        final List<Employee> employees = newLoader( new AbstractRulesModule()
+        {
+
+            @Override
+            protected void configure()
+            {
+                forPattern( "*/employee" ).createObject().ofType( Employee.class ).then().setProperties();
+            }
+
+        } ).newParallelRecordParser( "staff/employee", Employee.class ).setChunkSize( 256 ).parse( file, pool );
+
+        assertEquals( 100, employees.size() );
+        assertEquals( "Employee 99", employees.get( 99 ).getFirstName() );
+    }
+
+    @Test
+    public void oversizedChunksAreDetected()
+    {
+        final byte[] header = new byte[10];
+        final byte[] footer = new byte[5];
+
+        assertEquals( 115, ParallelRecordParser.documentLength( header, 1000, 1100, footer ) );
+        assertEquals( -1, ParallelRecordParser.documentLength( header, 0, Integer.MAX_VALUE, footer ) );
+        assertEquals( -1, ParallelRecordParser.documentLength( header, 0, 3L * Integer.MAX_VALUE, footer ) );
+    }
+
+    @Test
+    public void namespaceDeclarationsAreReplayed()
+        throws Exception
+    {
+        final File file = write( staff( "s:staff", " xmlns:s='urn:staff'", "s:employee", 100 ) );
+        final List<Employee> employees =
+            loader( "urn:staff" ).newParallelRecordParser( "staff/employee", Employee.class ).setChunkSize( 256 )
+                .parse( file, pool );
+
+        assertEquals( 100, employees.size() );
+        assertEquals( "Employee 99", employees.get( 99 ).getFirstName() );
+    }
+
+    @Test
+    public void emptyDocumentElement()
+        throws Exception
+    {
+        final File file = write( "<?xml version='1.0'?><staff a='/'/>" );
+        final List<Employee> employees =
+            loader( null ).newParallelRecordParser( "staff/employee", Employee.class ).parse( file, pool );
+
+        assertTrue( employees.isEmpty() );
+    }
+
+    @Test
+    public void malformedChunkFailsTheParse()
+        throws Exception
+    {
+        // a duplicated attribute leaves the markup balanced for the splitter, but not for the parser
+        final String xml = staff( "staff", "", "employee", 100 );
+        final File file = write( xml.replace( "Employee 50'", "Employee 50' firstName='x'" ) );
+        try
+        {
+            loader( null ).newParallelRecordParser( "staff/employee", Employee.class ).setChunkSize( 256 )
+                .parse( file, pool );
+            fail( "Malformed record should have been reported" );
+        }
+        catch ( final SAXException e )
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void splitterChunksCoverTheDocumentElementContent()
+        throws Exception
+    {
+        final String xml = "<?xml version='1.0'?>\n<feed xmlns='urn:feed'><record/><record>a</record><other/>"
+            + "<record><record/></record></feed>";
+        final RecordSplitter splitter =
+            new RecordSplitter( new ByteArrayInputStream( xml.getBytes( "UTF-8" ) ), "record", 1 );
+
+        assertEquals( "<?xml version='1.0'?>\n<feed xmlns='urn:feed'>", new String( splitter.getHeader(), "UTF-8" ) );
+        assertEquals( "</feed>", new String( splitter.getFooter(), "UTF-8" ) );
+        final StringBuilder chunks = new StringBuilder();
+        long[] chunk;
+        while ( ( chunk = splitter.next() ) != null )
+        {
+            chunks.append( '|' ).append( xml.substring( (int) chunk[0], (int) chunk[1] ) );
+        }
+        assertEquals( "|<record/>|<record>a</record><other/>|<record><record/></record>", chunks.toString() );
+        assertNull( splitter.next() );
+    }
+
+}